@@ -162,6 +162,19 @@ public class CLI
         return params.outputFolder;
     }
 
+    //----------------//
+    // getSpoolFolder //
+    //----------------//
+    /**
+     * Report the spool folder if present on the CLI, to run as a batch server.
+     *
+     * @return the CLI spool path, or null
+     */
+    public Path getSpoolFolder ()
+    {
+        return params.spoolFolder;
+    }
+
     //-------------//
     // isBatchMode //
     //-------------//
@@ -303,6 +316,10 @@ public class CLI
     private void checkParams ()
             throws CmdLineException
     {
+        if (params.spoolFolder != null) {
+            params.batchMode = true; // Server mode implies batch
+        }
+
         if (params.transcribe) {
             if ((params.step != null) && (params.step != Step.last())) {
                 String msg = "'-transcribe' option not compatible with '-step " + params.step
@@ -386,10 +403,11 @@ public class CLI
         }
 
         @Override
-        protected void processBook (Book book)
+        protected boolean processBook (Book book)
         {
             final Path folder = BookManager.getDefaultBookFolder(book);
             boolean cancelled = false;
+            boolean success = true;
             try {
                 if (!Files.exists(folder)) {
                     Files.createDirectories(folder);
@@ -416,10 +434,8 @@ public class CLI
                 }
                 // Specific step to reach on all sheets in the book?
                 if (params.step != null) {
-                    boolean ok = book.reachBookStep(params.step, params.force, sheetIds);
-
-                    if (!ok) {
-                        return;
+                    if (!book.reachBookStep(params.step, params.force, sheetIds)) {
+                        return false;
                     }
                 }
                 if (params.transcribe) {
@@ -439,12 +455,13 @@ public class CLI
                              SecurityException |
                              InvocationTargetException ex) {
                         logger.warn("Error running {} {}", params.runClass, ex.toString(), ex);
+                        success = false;
                     }
                 }
                 // Book export?
                 if (params.export) {
                     logger.debug("Export book");
-                    book.export();
+                    success &= book.export();
                 }
                 // Book sample?
                 if (params.sample) {
@@ -461,6 +478,8 @@ public class CLI
                     logger.debug("Print book");
                     book.print();
                 }
+
+                return success;
             } catch (ProcessingCancellationException pce) {
                 logger.warn("Cancelled " + book);
                 cancelled = true;
@@ -506,6 +525,9 @@ public class CLI
         /** Radix. */
         private final String radix;
 
+        /** Outcome of latest processing. */
+        private volatile boolean ok;
+
         /**
          * Create a CliTask object.
          *
@@ -532,10 +554,14 @@ public class CLI
             }
 
             // Obtain the book instance
+            ok = false;
+
             final Book book = loadBook(path);
 
             if (book != null) {
-                processBook(book); // Process the book instance
+                ok = processBook(book); // Process the book instance
+            } else {
+                ok = !expectsBook();
             }
 
             return null;
@@ -549,6 +575,29 @@ public class CLI
             return radix;
         }
 
+        /**
+         * Report whether the latest call completed successfully.
+         * <p>
+         * A task may complete without exception, while its processing failed (for example when
+         * the target step could not be reached, or when export failed).
+         *
+         * @return true if OK
+         */
+        public boolean isOk ()
+        {
+            return ok;
+        }
+
+        /**
+         * Report whether {@link #loadBook} is expected to provide a book instance.
+         *
+         * @return true by default, false if a null book is not a failure
+         */
+        protected boolean expectsBook ()
+        {
+            return true;
+        }
+
         /**
          * Getting the book instance.
          *
@@ -561,10 +610,11 @@ public class CLI
          * Processing the book instance.
          *
          * @param book the book to process
+         * @return true if processing was successful
          */
-        protected void processBook (Book book)
+        protected boolean processBook (Book book)
         {
-            // Void by default
+            return true; // Void by default
         }
     }
 
@@ -751,6 +801,11 @@ public class CLI
                 handler = IntArrayOptionHandler.class)
         private ArrayList<Integer> sheets;
 
+        /** Spool folder for server mode. */
+        @Option(name = "-spool", usage = "Run as a server on jobs dropped into spool folder",
+                metaVar = "<spool-folder>")
+        Path spoolFolder;
+
         /** Specific step. */
         @Option(name = "-step", usage = "Define a specific target step")
         Step step;
@@ -868,6 +923,12 @@ public class CLI
             return "Samples \"" + path + "\"";
         }
 
+        @Override
+        protected boolean expectsBook ()
+        {
+            return false;
+        }
+
         @Override
         protected Book loadBook (Path path)
         {
@@ -26,8 +26,10 @@ import org.audiveris.omr.classifier.SampleRepository;
 import org.audiveris.omr.constant.Constant;
 import org.audiveris.omr.constant.ConstantManager;
 import org.audiveris.omr.constant.ConstantSet;
+import org.audiveris.omr.image.TemplateFactory;
 import org.audiveris.omr.log.LogUtil;
 import org.audiveris.omr.sheet.BookManager;
+import org.audiveris.omr.text.OcrUtil;
 import org.audiveris.omr.text.tesseract.TesseractOCR;
 import org.audiveris.omr.ui.MainGui;
 import org.audiveris.omr.ui.symbol.MusicFont;
@@ -149,12 +151,23 @@ public class Main
             // Check MusicFont is loaded
             MusicFont.checkMusicFont();
 
+            // Load in background the note templates used so far
+            TemplateFactory.getInstance().prewarm();
+
             // Run the required tasks, if any (and remember if at least one task failed)
             boolean failure = runBatchTasks();
 
+            // Then serve spooled jobs until stopped?
+            if (cli.getSpoolFolder() != null) {
+                if (!new SpoolServer(WellKnowns.TOOL_NAME, cli.getSpoolFolder()).serve()) {
+                    failure = true;
+                }
+            }
+
             // At this point all tasks have completed (except timeout...)
             // So shutdown gracefully the executors
             boolean timeout = !OmrExecutors.shutdown();
+            OcrUtil.shutdown();
 
             // Save global sample repository if modified
             if (SampleRepository.hasInstance()) {
@@ -283,7 +296,7 @@ public class Main
                 try {
                     logTasks(tasks, true);
 
-                    List<Future<Void>> futures = OmrExecutors.getCachedLowExecutor().invokeAll(
+                    List<Future<Void>> futures = OmrExecutors.getBatchExecutor().invokeAll(
                             tasks);
                     logger.info("Checking {} task(s)", tasks.size());
 
@@ -0,0 +1,478 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                                     S p o o l S e r v e r                                      //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr;
+
+import org.audiveris.omr.CLI.CliTask;
+import org.audiveris.omr.classifier.ShapeClassifier;
+import org.audiveris.omr.constant.Constant;
+import org.audiveris.omr.constant.ConstantSet;
+import org.audiveris.omr.text.tesseract.TesseractOCR;
+import org.audiveris.omr.util.OmrExecutors;
+import org.audiveris.proxymusic.ScorePartwise;
+import org.audiveris.proxymusic.util.Marshalling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class {@code SpoolServer} keeps a warmed-up batch engine resident, processing the jobs
+ * dropped into a spool folder, until a "stop" file is dropped there.
+ * <p>
+ * This avoids paying, for each small job, the JVM startup and the initialization of shape
+ * classifier, OCR engine and MusicXML marshalling context.
+ * <p>
+ * A job is a text file with {@value #JOB_EXTENSION} extension, which contains CLI arguments:
+ * a line starting with '-' is split on white spaces, any other line is taken as a whole (an input
+ * path, perhaps with spaces), empty lines and lines starting with '#' are ignored.
+ * For example:
+ * <pre>
+ * -transcribe -export
+ * -sheets 1 3
+ * /data/scores/my score.png
+ * </pre>
+ * Only book-related options apply (like -step, -transcribe, -export, -sheets, ...), while
+ * application-wide options (like -output, -option) are those of the server command line.
+ * A job file should be written under another name, then renamed, so that it appears at once.
+ * <p>
+ * Layout of the spool folder:
+ * <pre>
+ * spool/
+ *     foo.job          // Job waiting to be processed
+ *     stop             // Request to stop the server, once current jobs are completed
+ *     running/
+ *         bar.job      // Job being processed
+ *     done/
+ *         baz.job      // Job successfully processed
+ *         baz.status   // Its status
+ *     failed/
+ *         qux.job      // Job that failed
+ *         qux.status   // Its status
+ * </pre>
+ * Jobs are processed in name order, with a bounded number of concurrent jobs.
+ * Per-job latency, counts and throughput are logged and written in status files.
+ *
+ * @author Hervé Bitteur
+ */
+public class SpoolServer
+{
+
+    private static final Constants constants = new Constants();
+
+    private static final Logger logger = LoggerFactory.getLogger(SpoolServer.class);
+
+    /** Extension for job files: {@value}. */
+    public static final String JOB_EXTENSION = ".job";
+
+    /** Extension for status files: {@value}. */
+    public static final String STATUS_EXTENSION = ".status";
+
+    /** Name of the file that stops the server: {@value}. */
+    public static final String STOP_NAME = "stop";
+
+    /** Name of the program. */
+    private final String toolName;
+
+    /** Spool folder. */
+    private final Path spool;
+
+    /** Folder of running jobs. */
+    private final Path runningFolder;
+
+    /** Folder of successful jobs. */
+    private final Path doneFolder;
+
+    /** Folder of failed jobs. */
+    private final Path failedFolder;
+
+    /** Slots for concurrent jobs. */
+    private final Semaphore slots;
+
+    /** Maximum number of concurrent jobs. */
+    private final int maxJobs;
+
+    /** Number of successful jobs. */
+    private final AtomicInteger doneCount = new AtomicInteger();
+
+    /** Number of failed jobs. */
+    private final AtomicInteger failedCount = new AtomicInteger();
+
+    /** Cumulated jobs latency, in milliseconds. */
+    private final AtomicLong sumLatency = new AtomicLong();
+
+    /** Server start time. */
+    private long startTime;
+
+    /**
+     * Creates a new {@code SpoolServer} object.
+     *
+     * @param toolName the program name
+     * @param spool    the spool folder
+     */
+    public SpoolServer (String toolName,
+                        Path spool)
+    {
+        this.toolName = toolName;
+        this.spool = spool.toAbsolutePath();
+
+        runningFolder = this.spool.resolve("running");
+        doneFolder = this.spool.resolve("done");
+        failedFolder = this.spool.resolve("failed");
+
+        maxJobs = Math.max(1, constants.maxConcurrentJobs.getValue());
+        slots = new Semaphore(maxJobs);
+    }
+
+    //-------//
+    // serve //
+    //-------//
+    /**
+     * Process spooled jobs, until a stop file is found.
+     *
+     * @return true if no job failed
+     */
+    public boolean serve ()
+    {
+        try {
+            Files.createDirectories(runningFolder);
+            Files.createDirectories(doneFolder);
+            Files.createDirectories(failedFolder);
+        } catch (IOException ex) {
+            logger.warn("Cannot prepare spool folder {} {}", spool, ex.toString(), ex);
+
+            return false;
+        }
+
+        recoverRunningJobs();
+        warmUp();
+
+        startTime = System.currentTimeMillis();
+        logger.info("Serving jobs from {} with {} concurrent job(s)", spool, maxJobs);
+
+        try (WatchService watcher = spool.getFileSystem().newWatchService()) {
+            spool.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+
+            while (!Files.exists(spool.resolve(STOP_NAME))) {
+                try {
+                    for (Path job : getWaitingJobs()) {
+                        slots.acquire(); // Wait for a free slot
+                        submit(job);
+                    }
+                } catch (IOException ex) {
+                    // Transient failure, spool folder will be scanned again after poll period
+                    logger.warn("Error scanning spool folder {} {}", spool, ex.toString(), ex);
+                }
+
+                // Wait for new files (folder is re-scanned anyway)
+                final WatchKey key = watcher.poll(
+                        constants.pollPeriod.getValue(),
+                        TimeUnit.SECONDS);
+
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+
+            logger.info("Stop requested, waiting for running jobs...");
+            slots.acquire(maxJobs);
+            Files.deleteIfExists(spool.resolve(STOP_NAME));
+        } catch (IOException ex) {
+            logger.warn("Error watching spool folder {} {}", spool, ex.toString(), ex);
+        } catch (InterruptedException ex) {
+            logger.warn("Server interrupted, waiting for running jobs...");
+            slots.acquireUninterruptibly(maxJobs); // So that job status files are up to date
+            Thread.currentThread().interrupt();
+        }
+
+        logger.info("Server stopped. {}", getCounters());
+
+        return failedCount.get() == 0;
+    }
+
+    //-------------//
+    // getCounters //
+    //-------------//
+    private String getCounters ()
+    {
+        final int done = doneCount.get();
+        final int failed = failedCount.get();
+        final int jobs = done + failed;
+        final long dur = Math.max(1, System.currentTimeMillis() - startTime);
+
+        return String.format(
+                "jobs:%d failed:%d avg latency:%d ms throughput:%.2f jobs/min",
+                jobs,
+                failed,
+                (jobs > 0) ? (sumLatency.get() / jobs) : 0,
+                (60_000.0 * jobs) / dur);
+    }
+
+    //----------------//
+    // getWaitingJobs //
+    //----------------//
+    /**
+     * Report the job files waiting in spool, in name order.
+     *
+     * @return the waiting job files
+     * @throws IOException if folder cannot be read
+     */
+    private List<Path> getWaitingJobs ()
+            throws IOException
+    {
+        final List<Path> jobs = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                spool,
+                "*" + JOB_EXTENSION)) {
+            for (Path path : stream) {
+                if (Files.isRegularFile(path)) {
+                    jobs.add(path);
+                }
+            }
+        }
+
+        Collections.sort(jobs);
+
+        return jobs;
+    }
+
+    //----------//
+    // readArgs //
+    //----------//
+    /**
+     * Read the CLI arguments from a job file.
+     *
+     * @param job the job file
+     * @return the arguments
+     * @throws IOException if file cannot be read
+     */
+    private String[] readArgs (Path job)
+            throws IOException
+    {
+        final List<String> args = new ArrayList<>();
+
+        for (String line : Files.readAllLines(job, StandardCharsets.UTF_8)) {
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            if (line.startsWith("-")) {
+                Collections.addAll(args, line.split("\\s+"));
+            } else {
+                args.add(line);
+            }
+        }
+
+        return args.toArray(new String[args.size()]);
+    }
+
+    //--------------------//
+    // recoverRunningJobs //
+    //--------------------//
+    /**
+     * Put back into spool the jobs left running by a previous server instance.
+     */
+    private void recoverRunningJobs ()
+    {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                runningFolder,
+                "*" + JOB_EXTENSION)) {
+            for (Path path : stream) {
+                logger.info("Re-spooling interrupted job {}", path.getFileName());
+                Files.move(
+                        path,
+                        spool.resolve(path.getFileName()),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            logger.warn("Error recovering running jobs {}", ex.toString(), ex);
+        }
+    }
+
+    //--------//
+    // runJob //
+    //--------//
+    /**
+     * Process one job.
+     *
+     * @param job the job file, already in running folder
+     */
+    private void runJob (Path job)
+    {
+        final String name = job.getFileName().toString();
+        final String radix = name.substring(0, name.length() - JOB_EXTENSION.length());
+        final long start = System.currentTimeMillis();
+        final Properties status = new Properties();
+        boolean ok = false;
+
+        logger.info("Job {} started", radix);
+
+        try {
+            final CLI cli = new CLI(toolName);
+            cli.parseParameters(readArgs(job));
+
+            final List<CliTask> tasks = cli.getCliTasks();
+            status.setProperty("tasks", Integer.toString(tasks.size()));
+
+            ok = true;
+
+            for (CliTask task : tasks) {
+                task.call();
+
+                if (!task.isOk()) {
+                    logger.warn("Job {} task {} failed", radix, task);
+                    ok = false;
+                }
+            }
+
+            if (!ok) {
+                status.setProperty("error", "processing failed, see book log");
+            }
+        } catch (Throwable ex) {
+            logger.warn("Job {} failed {}", radix, ex.toString(), ex);
+            status.setProperty("error", ex.toString());
+        }
+
+        final long latency = System.currentTimeMillis() - start;
+        sumLatency.addAndGet(latency);
+        (ok ? doneCount : failedCount).incrementAndGet();
+
+        status.setProperty("status", ok ? "OK" : "FAILED");
+        status.setProperty("start", new Date(start).toString());
+        status.setProperty("latency", latency + " ms");
+        status.setProperty("server", getCounters());
+
+        final Path target = ok ? doneFolder : failedFolder;
+
+        try (OutputStream os = Files.newOutputStream(target.resolve(radix + STATUS_EXTENSION))) {
+            status.store(os, "Job " + radix);
+            Files.move(job, target.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            logger.warn("Error writing status of job {} {}", radix, ex.toString(), ex);
+        }
+
+        logger.info("Job {} {} in {} ms. {}", radix, ok ? "done" : "failed", latency, getCounters());
+    }
+
+    //--------//
+    // submit //
+    //--------//
+    /**
+     * Move the job into running folder and submit its processing.
+     * A slot has already been acquired, and will be released at job completion.
+     *
+     * @param job the job file in spool folder
+     */
+    private void submit (Path job)
+    {
+        final Path running;
+
+        try {
+            running = Files.move(
+                    job,
+                    runningFolder.resolve(job.getFileName()),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            logger.warn("Cannot take job {} {}", job, ex.toString());
+            slots.release();
+
+            return;
+        }
+
+        OmrExecutors.getBatchExecutor().submit(new Callable<Void>()
+        {
+            @Override
+            public Void call ()
+            {
+                try {
+                    runJob(running);
+                } finally {
+                    slots.release();
+                }
+
+                return null;
+            }
+        });
+    }
+
+    //--------//
+    // warmUp //
+    //--------//
+    /**
+     * Initialize once for all the costly resources shared by all jobs.
+     */
+    private void warmUp ()
+    {
+        final long start = System.currentTimeMillis();
+
+        try {
+            ShapeClassifier.getInstance();
+            TesseractOCR.getInstance().isAvailable();
+            Marshalling.getContext(ScorePartwise.class);
+        } catch (Exception ex) {
+            logger.warn("Error in server warm-up {}", ex.toString(), ex);
+        }
+
+        logger.info("Server warmed up in {} ms", System.currentTimeMillis() - start);
+    }
+
+    //-----------//
+    // Constants //
+    //-----------//
+    private static class Constants
+            extends ConstantSet
+    {
+
+        private final Constant.Integer maxConcurrentJobs = new Constant.Integer(
+                "jobs",
+                2,
+                "Maximum number of jobs processed concurrently by the server");
+
+        private final Constant.Integer pollPeriod = new Constant.Integer(
+                "seconds",
+                2,
+                "Maximum delay between two scans of spool folder");
+    }
+}
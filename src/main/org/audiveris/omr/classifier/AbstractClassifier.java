@@ -178,8 +178,12 @@ public abstract class AbstractClassifier<M extends Object>
 
         watch.start("browse samples");
 
+        final FeatureCache cache = constants.useFeatureCache.isSet()
+                ? FeatureCache.getInstance(descriptor) : null;
+
         for (Sample sample : samples) {
-            double[] ins = descriptor.getFeatures(sample, sample.getInterline());
+            double[] ins = (cache != null) ? cache.getFeatures(sample)
+                    : descriptor.getFeatures(sample, sample.getInterline());
             inputs[ig] = ins;
 
             double[] des = new double[SHAPE_COUNT];
@@ -190,6 +194,11 @@ public abstract class AbstractClassifier<M extends Object>
             ig++;
         }
 
+        if (cache != null) {
+            watch.start("store cache");
+            cache.store();
+        }
+
         // Build the collection of features from the glyph data
         watch.start("features");
 
@@ -571,6 +580,10 @@ public abstract class AbstractClassifier<M extends Object>
                 false,
                 "Should we print out the stop watch?");
 
+        private final Constant.Boolean useFeatureCache = new Constant.Boolean(
+                true,
+                "Should we persist samples features across trainings?");
+
         private final Scale.AreaFraction minWeight = new Scale.AreaFraction(
                 0.04,
                 "Minimum normalized weight to be considered not a noise");
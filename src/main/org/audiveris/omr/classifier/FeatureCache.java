@@ -0,0 +1,285 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                                     F e a t u r e C a c h e                                    //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.classifier;
+
+import org.audiveris.omr.WellKnowns;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class {@code FeatureCache} keeps the feature vectors computed by a {@link GlyphDescriptor}
+ * for training samples, persisted across sessions in the training folder.
+ * <p>
+ * A cache is specific to a descriptor, and is stored in a file named {@code NAME.features}.
+ * The file records the descriptor version (see {@link GlyphDescriptor#getVersion()}), any other
+ * version leads to a brand new cache.
+ * <p>
+ * Within a cache, features are keyed by sample content (interline and all runs), therefore a
+ * sample modified in any way is no longer found in cache and gets its features recomputed.
+ * Feature extraction during a retraining is thus limited to new or modified samples.
+ * <p>
+ * When stored, the cache keeps only the features used since previous store, that is the features
+ * of the samples involved in last training. Features of samples since modified or deleted are
+ * thus discarded.
+ *
+ * @author Hervé Bitteur
+ */
+public class FeatureCache
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(FeatureCache.class);
+
+    /** File extension for features cache: {@value}. */
+    public static final String FEATURES_EXTENSION = ".features";
+
+    /** Magic number at beginning of file. */
+    private static final int MAGIC = 0x414F4643; // "AOFC"
+
+    /** Current file format. */
+    private static final int FORMAT = 2;
+
+    /** Caches, per descriptor name. */
+    private static final Map<String, FeatureCache> caches = new HashMap<>();
+
+    /** The descriptor which computes features. */
+    private final GlyphDescriptor descriptor;
+
+    /** Path to cache file. */
+    private final Path path;
+
+    /** Features, per sample key. */
+    private final Map<Long, double[]> map = new HashMap<>();
+
+    /** Keys of features used since last store. */
+    private final Set<Long> used = new HashSet<>();
+
+    /** Number of features retrieved from cache since last store. */
+    private int hits;
+
+    /** Number of features computed since last store. */
+    private int misses;
+
+    /**
+     * Creates a new {@code FeatureCache} object.
+     *
+     * @param descriptor the related glyph descriptor
+     */
+    private FeatureCache (GlyphDescriptor descriptor)
+    {
+        this.descriptor = descriptor;
+        path = WellKnowns.TRAIN_FOLDER.resolve(descriptor.getName() + FEATURES_EXTENSION);
+        load();
+    }
+
+    //-------------//
+    // getFeatures //
+    //-------------//
+    /**
+     * Report the features of the provided sample, computing and caching them if needed.
+     *
+     * @param sample the sample to describe
+     * @return a copy of the sample features, which the caller is free to modify
+     */
+    public synchronized double[] getFeatures (Sample sample)
+    {
+        final Long key = getKey(sample);
+        double[] features = map.get(key);
+        used.add(key);
+
+        if (features == null) {
+            features = descriptor.getFeatures(sample, sample.getInterline());
+            map.put(key, features);
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return features.clone();
+    }
+
+    //-------//
+    // store //
+    //-------//
+    /**
+     * Store the cache content to disk, limited to the features used since last store,
+     * if any feature was added or discarded.
+     */
+    public synchronized void store ()
+    {
+        final int size = map.size();
+        map.keySet().retainAll(used);
+        used.clear();
+
+        final int discarded = size - map.size();
+        logger.info("{} hits:{} misses:{} discarded:{}", this, hits, misses, discarded);
+
+        if ((misses == 0) && (discarded == 0)) {
+            hits = 0;
+
+            return;
+        }
+
+        final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try {
+            Files.createDirectories(path.getParent());
+
+            try (DataOutputStream dos = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+                dos.writeInt(MAGIC);
+                dos.writeInt(FORMAT);
+                dos.writeUTF(descriptor.getVersion());
+                dos.writeInt(descriptor.length());
+                dos.writeInt(map.size());
+
+                for (Map.Entry<Long, double[]> entry : map.entrySet()) {
+                    dos.writeLong(entry.getKey());
+
+                    for (double val : entry.getValue()) {
+                        dos.writeDouble(val);
+                    }
+                }
+
+                dos.flush();
+            }
+
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Stored {} features vectors into {}", map.size(), path);
+            hits = misses = 0;
+        } catch (IOException ex) {
+            logger.warn("Error storing {} {}", path, ex.toString(), ex);
+        }
+    }
+
+    //----------//
+    // toString //
+    //----------//
+    @Override
+    public String toString ()
+    {
+        return getClass().getSimpleName() + "{" + path.getFileName() + " size:" + map.size() + "}";
+    }
+
+    //-------------//
+    // getInstance //
+    //-------------//
+    /**
+     * Report the cache dedicated to the provided descriptor.
+     *
+     * @param descriptor the glyph descriptor
+     * @return the related cache, loaded from disk if available and of current version
+     */
+    public static synchronized FeatureCache getInstance (GlyphDescriptor descriptor)
+    {
+        final String name = descriptor.getName();
+        FeatureCache cache = caches.get(name);
+
+        if (cache == null) {
+            caches.put(name, cache = new FeatureCache(descriptor));
+        }
+
+        return cache;
+    }
+
+    //--------//
+    // getKey //
+    //--------//
+    /**
+     * Compute the key of a sample, based on all data used for features computation.
+     *
+     * @param sample the sample
+     * @return the sample key
+     */
+    private static long getKey (Sample sample)
+    {
+        final long hash = sample.getRunTable().persistentLongHashCode();
+
+        return (hash ^ sample.getInterline()) * 0x100000001b3L;
+    }
+
+    //------//
+    // load //
+    //------//
+    private void load ()
+    {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            if ((dis.readInt() != MAGIC) || (dis.readInt() != FORMAT)) {
+                logger.info("Ignoring obsolete {}", path);
+
+                return;
+            }
+
+            final String version = dis.readUTF();
+
+            if (!version.equals(descriptor.getVersion())) {
+                logger.info("Ignoring {} with obsolete descriptor version {}", path, version);
+
+                return;
+            }
+
+            final int length = dis.readInt();
+
+            if (length != descriptor.length()) {
+                logger.info("Ignoring {} with wrong features length {}", path, length);
+
+                return;
+            }
+
+            final int count = dis.readInt();
+
+            for (int i = 0; i < count; i++) {
+                final long key = dis.readLong();
+                final double[] features = new double[length];
+
+                for (int j = 0; j < length; j++) {
+                    features[j] = dis.readDouble();
+                }
+
+                map.put(key, features);
+            }
+
+            logger.info("Loaded {} features vectors from {}", count, path);
+        } catch (IOException ex) {
+            logger.warn("Error loading {} {}", path, ex.toString(), ex);
+            map.clear();
+        }
+    }
+}
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
 
 /**
@@ -130,6 +131,23 @@ public abstract class GlyphDescriptor
         return name;
     }
 
+    /**
+     * Report the version of this descriptor features.
+     * <p>
+     * Features computed by another program build, or with another set of features, cannot be
+     * reused. The version thus combines program version and build with features length and
+     * labels, so that any persisted features (see {@link FeatureCache}) get invalidated.
+     *
+     * @return the features version
+     */
+    public String getVersion ()
+    {
+        final String[] labels = getFeatureLabels();
+
+        return WellKnowns.TOOL_REF + "/" + WellKnowns.TOOL_BUILD + "/" + length() + "/"
+               + Integer.toHexString((labels != null) ? Arrays.hashCode(labels) : 0);
+    }
+
     /**
      * Report the number of features provided.
      *
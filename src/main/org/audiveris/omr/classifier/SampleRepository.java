@@ -62,6 +62,7 @@ import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.EventObject;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -158,6 +159,9 @@ public class SampleRepository
     /** File path for images material: {@value}. */
     private final Path imagesFile;
 
+    /** File path for binary samples store. */
+    private final Path storeFile;
+
     /** To handle save on close. */
     private Application.ExitListener exitListener;
 
@@ -187,6 +191,7 @@ public class SampleRepository
         bookRadix = prefix.isEmpty() ? "" : prefix.substring(0, prefix.length() - 1);
         this.samplesFile = samplesFile;
         this.imagesFile = samplesFile.resolveSibling(prefix + IMAGES_FILE_NAME);
+        this.storeFile = samplesFile.resolveSibling(prefix + SampleStore.STORE_FILE_NAME);
 
         // Set application exit listener
         if (OMR.gui != null) {
@@ -614,6 +619,22 @@ public class SampleRepository
         return sheetContainer.getAllDescriptors();
     }
 
+    //------------------//
+    // exportRepository //
+    //------------------//
+    /**
+     * Write the whole repository to the samples archive (zip format), regardless of the
+     * modified status of its sheets.
+     * <p>
+     * This is meant for a repository loaded from its binary store, whose archive is missing or is
+     * to be regenerated.
+     */
+    public void exportRepository ()
+    {
+        setModified(true);
+        storeRepository();
+    }
+
     //---------------//
     // getAllSamples //
     //---------------//
@@ -1055,7 +1076,10 @@ public class SampleRepository
         final StopWatch watch = new StopWatch("Loading repository");
 
         try {
-            if (Files.exists(samplesFile)) {
+            if (useStore() && SampleStore.isUpToDate(storeFile, samplesFile)
+                && loadStore(loadListener, watch)) {
+                logger.debug("{} loaded from {}", this, storeFile);
+            } else if (Files.exists(samplesFile)) {
                 watch.start("open samples.zip");
 
                 final Path samplesRoot = ZipFileSystem.open(samplesFile);
@@ -1093,6 +1117,12 @@ public class SampleRepository
                 }
 
                 samplesRoot.getFileSystem().close();
+
+                // Import zip content into binary store, for faster loading next time
+                if (useStore()) {
+                    watch.start("storeSamples");
+                    storeSamples();
+                }
             } else {
                 logger.info(
                         "No {} in folder {}",
@@ -1342,11 +1372,49 @@ public class SampleRepository
 
             setModified(false);
             logger.info("{} stored to {}", this, samplesFile);
+
+            if (useStore()) {
+                storeSamples();
+            }
         } catch (IOException ex) {
             logger.warn("Error storing " + this + " to " + samplesFile + " " + ex, ex);
         }
     }
 
+    //--------------//
+    // storeSamples //
+    //--------------//
+    /**
+     * Write the concrete samples of this repository into its binary store.
+     */
+    public void storeSamples ()
+    {
+        final Map<Descriptor, List<Sample>> sheetMap = new LinkedHashMap<>();
+
+        for (Descriptor descriptor : sheetContainer.getAllDescriptors()) {
+            if (!isSymbols(descriptor.getName())) {
+                final SampleSheet sampleSheet = nameMap.get(descriptor.getName());
+                final List<Sample> samples = new ArrayList<>();
+
+                if (sampleSheet != null) {
+                    for (Sample sample : sampleSheet.getAllSamples()) {
+                        if (!sample.isSymbol()) {
+                            samples.add(sample);
+                        }
+                    }
+                }
+
+                sheetMap.put(descriptor, samples);
+            }
+        }
+
+        try {
+            SampleStore.write(storeFile, samplesFile, sheetMap);
+        } catch (IOException ex) {
+            logger.warn("Error storing " + this + " to " + storeFile + " " + ex, ex);
+        }
+    }
+
     //----------//
     // toString //
     //----------//
@@ -1555,6 +1623,76 @@ public class SampleRepository
         }
     }
 
+    //-----------//
+    // loadStore //
+    //-----------//
+    /**
+     * Populate the repository from its binary store.
+     *
+     * @param loadListener load listener, or null
+     * @param watch        the stop watch in use
+     * @return true if successful, false if store could not be used
+     */
+    private boolean loadStore (LoadListener loadListener,
+                               StopWatch watch)
+    {
+        watch.start("open store");
+
+        try (SampleStore store = SampleStore.open(storeFile)) {
+            watch.start("loadContainer");
+
+            final SheetContainer container = new SheetContainer();
+
+            for (Descriptor desc : store.getDescriptors()) {
+                container.addDescriptor(desc);
+            }
+
+            sheetContainer = container;
+
+            if (loadListener != null) {
+                loadListener.totalSheets(container.getDescriptorCount());
+            }
+
+            watch.start("loadSamples");
+
+            for (Descriptor desc : store.getDescriptors()) {
+                nameMap.put(desc.getName(), new SampleSheet(desc));
+            }
+
+            // Stream samples shape by shape (shapes no longer defined are skipped)
+            for (Shape shape : store.getShapes()) {
+                for (int i : store.getIndices(shape)) {
+                    final Sample sample = store.getSample(i);
+                    final SampleSheet sampleSheet = nameMap.get(store.getDescriptor(i).getName());
+                    sampleSheet.privateAddSample(sample);
+                    sampleMap.put(sample, sampleSheet);
+                }
+            }
+
+            if (loadListener != null) {
+                for (Descriptor desc : store.getDescriptors()) {
+                    loadListener.loadedSheet(nameMap.get(desc.getName()));
+                }
+            }
+
+            watch.start("buildSymbols");
+            buildSymbols();
+
+            setModified(false);
+
+            return true;
+        } catch (IOException |
+                 RuntimeException ex) {
+            // A corrupted store may fail in decoding as well
+            logger.warn("Could not use {}, falling back to {}", storeFile, samplesFile, ex);
+            nameMap.clear();
+            sampleMap.clear();
+            sheetContainer = new SheetContainer();
+
+            return false;
+        }
+    }
+
     //------------//
     // loadTribes //
     //------------//
@@ -1702,6 +1840,20 @@ public class SampleRepository
         return SYMBOLS.equals(name);
     }
 
+    //----------//
+    // useStore //
+    //----------//
+    /**
+     * Tell whether the binary samples store is used.
+     * Tribes are not part of the store, hence their use disables the store.
+     *
+     * @return true if store is to be used
+     */
+    private static boolean useStore ()
+    {
+        return constants.useSampleStore.isSet() && !USE_TRIBES;
+    }
+
     //------------------//
     // repositoryExists //
     //------------------//
@@ -1896,5 +2048,9 @@ public class SampleRepository
         private final Constant.Boolean useTribes = new Constant.Boolean(
                 false,
                 "Should we support tribes?");
+
+        private final Constant.Boolean useSampleStore = new Constant.Boolean(
+                true,
+                "Should we load and save samples via the binary store as well?");
     }
 }
@@ -0,0 +1,575 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                                      S a m p l e S t o r e                                     //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.classifier;
+
+import org.audiveris.omr.classifier.SheetContainer.Descriptor;
+import org.audiveris.omr.glyph.Shape;
+import org.audiveris.omr.run.RunTable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class {@code SampleStore} is a compact, indexed binary image of the samples contained in a
+ * {@link SampleRepository}, meant for fast random access and fast streaming.
+ * <p>
+ * The store is a single file, read at once into memory when opened, organized as follows:
+ * <ol>
+ * <li>Header: magic number, format version, then size and modification time of the samples
+ * archive the store was derived from.</li>
+ * <li>Sample records: for each sample, its sheet, shape, id, interline, pitch, location and
+ * run table (in {@link RunTable#writeBinary} format).</li>
+ * <li>Index: table of shape names, table of sheet descriptors, then for each sample its record
+ * offset, sheet index and shape index.</li>
+ * <li>Trailer: offset of the index and magic number again.</li>
+ * </ol>
+ * The index is read at opening time, while sample records are decoded only on demand.
+ * Samples can be streamed shape by shape, using {@link #getShapes} and {@link #getIndices}.
+ * <p>
+ * The file is not kept open (nor mapped) after opening, so that it can be replaced at any time.
+ * <p>
+ * Feature vectors are not part of the store, they are persisted by {@link FeatureCache}.
+ * <p>
+ * The store is just a derived form of the samples archive: it is built from a loaded repository
+ * (import of zip format) and a repository can be populated from it then stored back to zip format
+ * (export). Font-based symbol samples are never stored, since they are rebuilt on each load.
+ *
+ * @author Hervé Bitteur
+ */
+public class SampleStore
+        implements Closeable
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(SampleStore.class);
+
+    /** File name for samples store: {@value}. */
+    public static final String STORE_FILE_NAME = "samples.store";
+
+    /** Magic number, as found at beginning and end of a store file. */
+    private static final int MAGIC = 0x414F5353; // "AOSS"
+
+    /** Current format version. Any other version is considered obsolete. */
+    private static final int VERSION = 3;
+
+    /** Size of header in bytes: magic + version + archive size + archive time. */
+    private static final int HEADER_SIZE = 24;
+
+    /** Size of trailer in bytes: index offset + magic. */
+    private static final int TRAILER_SIZE = 8;
+
+    /** Path to store file. */
+    private final Path path;
+
+    /** Content of the whole file. */
+    private final ByteBuffer buffer;
+
+    /** Shapes, as referred to by samples. */
+    private final List<Shape> shapes = new ArrayList<>();
+
+    /** Sheet descriptors, as referred to by samples. */
+    private final List<Descriptor> descriptors = new ArrayList<>();
+
+    /** Offset of each sample record. */
+    private final int[] offsets;
+
+    /** Sheet index of each sample. */
+    private final int[] sheetIndices;
+
+    /** Shape index of each sample. */
+    private final int[] shapeIndices;
+
+    /** Samples indices, per shape. */
+    private final EnumMap<Shape, int[]> shapeMap = new EnumMap<>(Shape.class);
+
+    /**
+     * Creates a new {@code SampleStore} object on an existing file.
+     *
+     * @param path path to store file
+     * @throws IOException if file cannot be read or is not a valid store
+     */
+    private SampleStore (Path path)
+            throws IOException
+    {
+        this.path = path;
+
+        // Whole content is read, all samples being decoded anyway when the repository is loaded
+        buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+
+        final ByteBuffer buf = buffer.duplicate();
+
+        if ((buf.limit() < (HEADER_SIZE + TRAILER_SIZE)) || (buf.getInt(0) != MAGIC)
+            || (buf.getInt(buf.limit() - 4) != MAGIC)) {
+            throw new IOException("Not a sample store " + path);
+        }
+
+        final int version = buf.getInt(4);
+
+        if (version != VERSION) {
+            throw new IOException("Obsolete sample store version " + version + " in " + path);
+        }
+
+        // Index
+        buf.position(buf.getInt(buf.limit() - TRAILER_SIZE));
+
+        final int shapeCount = buf.getInt();
+
+        for (int i = 0; i < shapeCount; i++) {
+            final String name = readString(buf);
+
+            try {
+                shapes.add(Shape.valueOf(name));
+            } catch (IllegalArgumentException ex) {
+                logger.warn("Unknown shape {} in {}", name, path);
+                shapes.add(null);
+            }
+        }
+
+        final int sheetCount = buf.getInt();
+
+        for (int i = 0; i < sheetCount; i++) {
+            final String name = readString(buf);
+            final Integer hash = (buf.get() != 0) ? buf.getInt() : null;
+            final int aliasCount = buf.getInt();
+            final List<String> aliases = new ArrayList<>();
+
+            for (int j = 0; j < aliasCount; j++) {
+                aliases.add(readString(buf));
+            }
+
+            descriptors.add(new Descriptor(name, hash, aliases));
+        }
+
+        final int sampleCount = buf.getInt();
+        offsets = new int[sampleCount];
+        sheetIndices = new int[sampleCount];
+        shapeIndices = new int[sampleCount];
+
+        final int[] shapeCounts = new int[shapeCount];
+
+        for (int i = 0; i < sampleCount; i++) {
+            offsets[i] = buf.getInt();
+            sheetIndices[i] = buf.getInt();
+            shapeIndices[i] = buf.getInt();
+
+            if ((shapeIndices[i] < 0) || (shapeIndices[i] >= shapeCount)
+                || (sheetIndices[i] < 0) || (sheetIndices[i] >= sheetCount)) {
+                throw new IOException("Corrupted index in " + path);
+            }
+
+            shapeCounts[shapeIndices[i]]++;
+        }
+
+        // Per-shape index, in sample order
+        final int[][] perShape = new int[shapeCount][];
+
+        for (int s = 0; s < shapeCount; s++) {
+            perShape[s] = new int[shapeCounts[s]];
+        }
+
+        final int[] fill = new int[shapeCount];
+
+        for (int i = 0; i < sampleCount; i++) {
+            final int s = shapeIndices[i];
+            perShape[s][fill[s]++] = i;
+        }
+
+        for (int s = 0; s < shapeCount; s++) {
+            final Shape shape = shapes.get(s);
+
+            if ((shape != null) && (perShape[s].length > 0)) {
+                shapeMap.put(shape, perShape[s]);
+            }
+        }
+
+        logger.debug("Opened {}", this);
+    }
+
+    //-------//
+    // close //
+    //-------//
+    @Override
+    public void close ()
+    {
+        // The file is no longer open, nothing to close explicitly
+    }
+
+    //----------------//
+    // getDescriptors //
+    //----------------//
+    /**
+     * Report the sheet descriptors referred to by the stored samples.
+     *
+     * @return the unmodifiable list of sheet descriptors
+     */
+    public List<Descriptor> getDescriptors ()
+    {
+        return Collections.unmodifiableList(descriptors);
+    }
+
+    //------------//
+    // getIndices //
+    //------------//
+    /**
+     * Report the indices of samples of a given shape, in store order.
+     * <p>
+     * Each sample can then be decoded only when reached, by {@link #getSample(int)}.
+     *
+     * @param shape the desired shape
+     * @return the (copied) sequence of indices, perhaps empty
+     */
+    public int[] getIndices (Shape shape)
+    {
+        final int[] indices = shapeMap.get(shape);
+
+        return (indices != null) ? indices.clone() : new int[0];
+    }
+
+    //-----------//
+    // getSample //
+    //-----------//
+    /**
+     * Decode the sample at provided index.
+     *
+     * @param index sample index in store
+     * @return the decoded sample
+     */
+    public Sample getSample (int index)
+    {
+        final ByteBuffer buf = buffer.duplicate();
+        buf.position(offsets[index]);
+
+        final int id = buf.getInt();
+        final int interline = buf.getInt();
+        final int left = buf.getInt();
+        final int top = buf.getInt();
+        final Double pitch = (buf.get() != 0) ? buf.getDouble() : null;
+        final RunTable runTable = RunTable.readBinary(buf);
+
+        return new Sample(left, top, runTable, interline, id, getShape(index), pitch);
+    }
+
+    //----------------//
+    // getSampleCount //
+    //----------------//
+    /**
+     * Report the total number of samples in store.
+     *
+     * @return samples count
+     */
+    public int getSampleCount ()
+    {
+        return offsets.length;
+    }
+
+    //----------//
+    // getShape //
+    //----------//
+    /**
+     * Report the shape of sample at provided index, without decoding the sample.
+     *
+     * @param index sample index in store
+     * @return the sample shape (null if unknown in current Shape definition)
+     */
+    public Shape getShape (int index)
+    {
+        return shapes.get(shapeIndices[index]);
+    }
+
+    //-----------//
+    // getShapes //
+    //-----------//
+    /**
+     * Report the shapes for which samples are available.
+     * Shapes no longer defined are not reported.
+     *
+     * @return the shapes with samples, in shape order
+     */
+    public Collection<Shape> getShapes ()
+    {
+        return Collections.unmodifiableSet(shapeMap.keySet());
+    }
+
+    //---------------//
+    // getDescriptor //
+    //---------------//
+    /**
+     * Report the sheet descriptor of sample at provided index.
+     *
+     * @param index sample index in store
+     * @return the sheet descriptor
+     */
+    public Descriptor getDescriptor (int index)
+    {
+        return descriptors.get(sheetIndices[index]);
+    }
+
+    //----------//
+    // toString //
+    //----------//
+    @Override
+    public String toString ()
+    {
+        StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+        sb.append("{");
+        sb.append(path);
+        sb.append(" sheets:").append(descriptors.size());
+        sb.append(" samples:").append(offsets.length);
+        sb.append("}");
+
+        return sb.toString();
+    }
+
+    //------------//
+    // isUpToDate //
+    //------------//
+    /**
+     * Tell whether a store file exists, with current format, and was derived from the current
+     * samples file.
+     * <p>
+     * The size and modification time of samples file, as recorded in store header, must be
+     * identical to the current ones.
+     *
+     * @param storePath   path to store file
+     * @param samplesFile path to samples archive, if any
+     * @return true if store is available and up to date
+     */
+    public static boolean isUpToDate (Path storePath,
+                                      Path samplesFile)
+    {
+        if (!Files.exists(storePath)) {
+            return false;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(storePath)))) {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+                return false;
+            }
+
+            final long samplesSize = in.readLong();
+            final long samplesTime = in.readLong();
+
+            if (!Files.exists(samplesFile)) {
+                return true;
+            }
+
+            return (samplesSize == Files.size(samplesFile))
+                   && (samplesTime == Files.getLastModifiedTime(samplesFile).toMillis());
+        } catch (IOException ex) {
+            logger.warn("Error checking {} {}", storePath, ex.toString(), ex);
+
+            return false;
+        }
+    }
+
+    //------//
+    // open //
+    //------//
+    /**
+     * Open an existing store file.
+     *
+     * @param path path to store file
+     * @return the opened store
+     * @throws IOException if file cannot be read or has an obsolete format
+     */
+    public static SampleStore open (Path path)
+            throws IOException
+    {
+        return new SampleStore(path);
+    }
+
+    //-------//
+    // write //
+    //-------//
+    /**
+     * Write a store file from the provided samples.
+     * <p>
+     * The file is first written to a temporary file, which then replaces the target file.
+     *
+     * @param path        path to target store file
+     * @param samplesFile path to the samples archive the samples come from, if any
+     * @param sheetMap    the samples to store, gathered by sheet
+     * @throws IOException on IO error
+     */
+    public static void write (Path path,
+                              Path samplesFile,
+                              Map<Descriptor, List<Sample>> sheetMap)
+            throws IOException
+    {
+        final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        final List<Descriptor> sheets = new ArrayList<>(sheetMap.keySet());
+        final List<Sample> samples = new ArrayList<>();
+        final List<Integer> sampleSheets = new ArrayList<>();
+        final List<Shape> shapes = new ArrayList<>();
+        final Map<Shape, Integer> shapeIndices = new HashMap<>();
+
+        for (int s = 0; s < sheets.size(); s++) {
+            for (Sample sample : sheetMap.get(sheets.get(s))) {
+                samples.add(sample);
+                sampleSheets.add(s);
+
+                if (!shapeIndices.containsKey(sample.getShape())) {
+                    shapeIndices.put(sample.getShape(), shapes.size());
+                    shapes.add(sample.getShape());
+                }
+            }
+        }
+
+        Files.createDirectories(path.toAbsolutePath().getParent());
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+            // Header
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            if ((samplesFile != null) && Files.exists(samplesFile)) {
+                out.writeLong(Files.size(samplesFile));
+                out.writeLong(Files.getLastModifiedTime(samplesFile).toMillis());
+            } else {
+                out.writeLong(-1);
+                out.writeLong(-1);
+            }
+
+            // Sample records
+            final int[] offsets = new int[samples.size()];
+
+            for (int i = 0; i < samples.size(); i++) {
+                final Sample sample = samples.get(i);
+                offsets[i] = checkedSize(out);
+                out.writeInt(sample.getId());
+                out.writeInt(sample.getInterline());
+                out.writeInt(sample.getLeft());
+                out.writeInt(sample.getTop());
+
+                final Double pitch = sample.getPitch();
+                out.writeBoolean(pitch != null);
+
+                if (pitch != null) {
+                    out.writeDouble(pitch);
+                }
+
+                sample.getRunTable().writeBinary(out);
+            }
+
+            // Index
+            final int indexOffset = checkedSize(out);
+            out.writeInt(shapes.size());
+
+            for (Shape shape : shapes) {
+                writeString(out, shape.name());
+            }
+
+            out.writeInt(sheets.size());
+
+            for (Descriptor sheet : sheets) {
+                writeString(out, sheet.getName());
+
+                final Integer hash = sheet.getHash();
+                out.writeBoolean(hash != null);
+
+                if (hash != null) {
+                    out.writeInt(hash);
+                }
+
+                out.writeInt(sheet.getAliases().size());
+
+                for (String alias : sheet.getAliases()) {
+                    writeString(out, alias);
+                }
+            }
+
+            out.writeInt(samples.size());
+
+            for (int i = 0; i < samples.size(); i++) {
+                out.writeInt(offsets[i]);
+                out.writeInt(sampleSheets.get(i));
+                out.writeInt(shapeIndices.get(samples.get(i).getShape()));
+            }
+
+            // Trailer
+            out.writeInt(indexOffset);
+            out.writeInt(MAGIC);
+            out.flush();
+        }
+
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Stored {} samples from {} sheets into {}", samples.size(), sheets.size(), path);
+    }
+
+    //-------------//
+    // checkedSize //
+    //-------------//
+    private static int checkedSize (DataOutputStream out)
+            throws IOException
+    {
+        final int size = out.size();
+
+        if (size == Integer.MAX_VALUE) {
+            throw new IOException("Sample store exceeds 2GB");
+        }
+
+        return size;
+    }
+
+    //------------//
+    // readString //
+    //------------//
+    private static String readString (ByteBuffer buf)
+    {
+        final byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //-------------//
+    // writeString //
+    //-------------//
+    private static void writeString (DataOutputStream out,
+                                     String str)
+            throws IOException
+    {
+        final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
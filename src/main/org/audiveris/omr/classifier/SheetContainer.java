@@ -598,6 +598,16 @@ public class SheetContainer
             return sb.toString();
         }
 
+        /**
+         * Report the hash code of related image run table.
+         *
+         * @return image hash code, or null
+         */
+        public Integer getHash ()
+        {
+            return hash;
+        }
+
         /**
          * Report the sheet name.
          *
@@ -35,6 +35,7 @@ import org.audiveris.omr.sheet.grid.BarFilamentFactory;
 import org.audiveris.omr.sheet.grid.StaffFilament;
 import org.audiveris.omr.util.Dumping;
 import org.audiveris.omr.util.Entities;
+import org.audiveris.omr.util.ForkedTasks;
 import org.audiveris.omr.util.StopWatch;
 
 import org.slf4j.Logger;
@@ -50,11 +51,13 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Class {@code FilamentFactory} builds filaments (long series of sections) out of a
@@ -83,6 +86,9 @@ import java.util.Set;
  * Customization: Default parameters values are defined via a ConstantSet.
  * Before launching filaments retrieval by {@link #retrieveFilaments}, parameters can be modified
  * individually by calling proper setXXX() methods.
+ * <p>
+ * Retrieval can also be performed by bands, processed in parallel, see
+ * {@link #retrieveFilaments(Collection, int, int)}.
  *
  * @param <F> precise filament type
  * @author Hervé Bitteur
@@ -115,6 +121,9 @@ public class FilamentFactory<F extends Filament>
     /** Fat sections. unknown/true/false */
     private final Map<Section, Boolean> fatSections = new HashMap<>();
 
+    /** Should created filaments be registered in index right away? */
+    private final boolean registering;
+
     /**
      * Create a factory of filaments.
      *
@@ -143,6 +152,23 @@ public class FilamentFactory<F extends Filament>
 
         params = new Parameters();
         params.initialize();
+        registering = true;
+    }
+
+    /**
+     * Create a band factory, with the same parameters as the provided factory.
+     * Filaments created by a band factory are not registered.
+     *
+     * @param parent the factory to copy
+     */
+    private FilamentFactory (FilamentFactory<F> parent)
+    {
+        scale = parent.scale;
+        index = parent.index;
+        orientation = parent.orientation;
+        filamentConstructor = parent.filamentConstructor;
+        params = parent.params;
+        registering = false;
     }
 
     //------//
@@ -274,6 +300,166 @@ public class FilamentFactory<F extends Filament>
         }
     }
 
+    //-------------------//
+    // retrieveFilaments //
+    //-------------------//
+    /**
+     * Aggregate the long and thin sections into filaments, by bands processed in parallel.
+     * <p>
+     * Bands are taken along the position axis (horizontal bands for horizontal filaments).
+     * A section is given to every band it intersects, each band being extended by bandMargin on
+     * both sides, and each band is processed by its own factory as in
+     * {@link #retrieveFilaments(Collection)}.
+     * <p>
+     * Band results are then stitched:
+     * <ol>
+     * <li>Filaments that share sections, because they were retrieved in overlapping bands, are
+     * merged.</li>
+     * <li>Short sections left over by all bands go through a global expansion, as in the
+     * sequential processing, since a band may miss sections located beyond its margin.</li>
+     * <li>Filaments that lie close to a band limit go through a final merge, to connect portions
+     * of a line retrieved in different bands.</li>
+     * </ol>
+     * Resulting filaments are registered at the end, in a deterministic order.
+     *
+     * @param source     the collection of input sections
+     * @param bandHeight band height (positive), along the position axis
+     * @param bandMargin band extension on each side, along the position axis
+     * @return the collection of retrieved filaments
+     */
+    public List<F> retrieveFilaments (Collection<Section> source,
+                                      int bandHeight,
+                                      int bandMargin)
+    {
+        StopWatch watch = new StopWatch("FilamentsFactory bands " + orientation);
+
+        try {
+            // Position range of sections
+            watch.start("dispatch");
+
+            int posMin = Integer.MAX_VALUE;
+            int posMax = Integer.MIN_VALUE;
+
+            for (Section section : source) {
+                final Rectangle bounds = orientation.oriented(section.getBounds());
+                posMin = Math.min(posMin, bounds.y);
+                posMax = Math.max(posMax, (bounds.y + bounds.height) - 1);
+            }
+
+            final int bandCount = (posMax < posMin) ? 1 : (((posMax - posMin) / bandHeight) + 1);
+
+            if (bandCount == 1) {
+                return retrieveFilaments(source);
+            }
+
+            // Dispatch sections into (overlapping) bands
+            final List<List<Section>> bands = new ArrayList<>(bandCount);
+
+            for (int i = 0; i < bandCount; i++) {
+                bands.add(new ArrayList<Section>());
+            }
+
+            for (Section section : source) {
+                final Rectangle bounds = orientation.oriented(section.getBounds());
+                final int first = (bounds.y - bandMargin - posMin) / bandHeight;
+                final int last = (((bounds.y + bounds.height) - 1 + bandMargin) - posMin)
+                                 / bandHeight;
+
+                for (int i = Math.max(0, first); i <= Math.min(bandCount - 1, last); i++) {
+                    bands.get(i).add(section);
+                }
+            }
+
+            // Process bands in parallel
+            watch.start("bands");
+
+            final List<Callable<List<F>>> tasks = new ArrayList<>(bandCount);
+
+            for (final List<Section> band : bands) {
+                tasks.add(new Callable<List<F>>()
+                {
+                    @Override
+                    public List<F> call ()
+                    {
+                        final List<F> bandFilaments = new FilamentFactory<>(
+                                FilamentFactory.this).retrieveFilaments(band);
+
+                        if (bandFilaments == null) {
+                            throw new IllegalStateException("Band filaments not retrieved");
+                        }
+
+                        return bandFilaments;
+                    }
+                });
+            }
+
+            final List<List<F>> results = ForkedTasks.invokeAllUnchecked(tasks);
+
+            // Merge filaments sharing sections
+            watch.start("mergeBandResults");
+
+            final List<F> filaments = mergeBandResults(results);
+
+            // Expand with short sections left over by all bands
+            watch.start("expandFilaments");
+
+            for (F fil : filaments) {
+                for (Section section : fil.getMembers()) {
+                    setProcessed(section);
+                }
+            }
+
+            expandFilaments(filaments, source);
+
+            // Merge filaments across band limits
+            watch.start("mergeFilaments across bands");
+
+            final List<F> limitFilaments = new ArrayList<>();
+
+            for (F fil : filaments) {
+                final Rectangle bounds = orientation.oriented(fil.getBounds());
+
+                for (int i = 1; i < bandCount; i++) {
+                    final int limit = posMin + (i * bandHeight);
+
+                    if ((bounds.y <= (limit + bandMargin))
+                            && (((bounds.y + bounds.height) - 1) >= (limit - bandMargin))) {
+                        limitFilaments.add(fil);
+
+                        break;
+                    }
+                }
+            }
+
+            mergeFilaments(limitFilaments);
+            removeMergedFilaments(filaments);
+
+            if (constants.checkBands.isSet()) {
+                watch.start("checkBands");
+                checkBands(filaments, source);
+            }
+
+            // Register
+            Collections.sort(filaments, Compounds.byReverseLength(orientation));
+
+            for (F fil : filaments) {
+                index.register(fil);
+            }
+
+            logger.debug("{} filaments retrieved in {} bands.", filaments.size(), bandCount);
+
+            return filaments;
+        } catch (Exception ex) {
+            logger.warn("FilamentsFactory cannot retrieveFilaments by bands", ex);
+
+            return null;
+        } finally {
+            if (constants.printWatch.isSet()) {
+                watch.print();
+            }
+        }
+    }
+
     //----------------------//
     // retrieveLineFilament //
     //----------------------//
@@ -682,6 +868,65 @@ public class FilamentFactory<F extends Filament>
         }
     }
 
+    //------------//
+    // checkBands //
+    //------------//
+    /**
+     * Check that filaments retrieved by bands are the same as those retrieved on the whole
+     * source at once, by comparing their sets of member sections.
+     * <p>
+     * This check is meant for debugging, every difference is logged.
+     *
+     * @param bandFilaments the filaments retrieved by bands
+     * @param source        the collection of input sections
+     */
+    private void checkBands (List<F> bandFilaments,
+                            Collection<Section> source)
+    {
+        // Whole retrieval by a non-registering factory, input sections are not modified
+        final List<F> wholeFilaments = new FilamentFactory<>(this).retrieveFilaments(source);
+
+        if (wholeFilaments == null) {
+            logger.warn("checkBands: whole filaments not retrieved");
+
+            return;
+        }
+
+        final Set<Set<Section>> bandSets = new HashSet<>();
+
+        for (F fil : bandFilaments) {
+            bandSets.add(new HashSet<>(fil.getMembers()));
+        }
+
+        final Set<Set<Section>> wholeSets = new HashSet<>();
+
+        for (F fil : wholeFilaments) {
+            wholeSets.add(new HashSet<>(fil.getMembers()));
+        }
+
+        int diffs = 0;
+
+        for (F fil : bandFilaments) {
+            if (!wholeSets.contains(new HashSet<>(fil.getMembers()))) {
+                logger.info("checkBands: band only {}", fil);
+                diffs++;
+            }
+        }
+
+        for (F fil : wholeFilaments) {
+            if (!bandSets.contains(new HashSet<>(fil.getMembers()))) {
+                logger.info("checkBands: whole only {}", fil);
+                diffs++;
+            }
+        }
+
+        logger.info(
+                "checkBands: {} band filaments, {} whole filaments, {} differences",
+                bandFilaments.size(),
+                wholeFilaments.size(),
+                diffs);
+    }
+
     //---------//
     // contact //
     //---------//
@@ -717,7 +962,9 @@ public class FilamentFactory<F extends Filament>
                 fil.addSection(section);
                 setProcessed(section);
 
-                index.register(fil);
+                if (registering) {
+                    index.register(fil);
+                }
             }
 
             return fil;
@@ -888,6 +1135,67 @@ public class FilamentFactory<F extends Filament>
         }
     }
 
+    //------------------//
+    // mergeBandResults //
+    //------------------//
+    /**
+     * Gather the filaments retrieved by bands, merging the filaments that share
+     * sections.
+     * <p>
+     * A section located in the overlap of two bands may be used by a filament in each band.
+     * Since a section can belong to one line only, these filaments are merged.
+     *
+     * @param results filaments retrieved, band by band
+     * @return the merged filaments
+     */
+    private List<F> mergeBandResults (List<List<F>> results)
+    {
+        final List<F> filaments = new ArrayList<>();
+        final Map<Section, F> owners = new HashMap<>();
+
+        for (List<F> bandFilaments : results) {
+            for (F fil : bandFilaments) {
+                // Filaments already owning some of fil sections
+                final Set<F> hosts = new LinkedHashSet<>();
+
+                for (Section section : fil.getMembers()) {
+                    final F owner = owners.get(section);
+
+                    if (owner != null) {
+                        @SuppressWarnings("unchecked")
+                        final F ancestor = (F) owner.getAncestor();
+                        hosts.add(ancestor);
+                    }
+                }
+
+                if (hosts.isEmpty()) {
+                    filaments.add(fil);
+
+                    for (Section section : fil.getMembers()) {
+                        owners.put(section, fil);
+                    }
+                } else {
+                    final Iterator<F> it = hosts.iterator();
+                    final F host = it.next();
+
+                    while (it.hasNext()) {
+                        host.stealSections(it.next());
+                    }
+
+                    host.stealSections(fil);
+
+                    for (Section section : fil.getMembers()) {
+                        owners.put(section, host);
+                    }
+                }
+            }
+        }
+
+        removeMergedFilaments(filaments);
+
+        return filaments;
+    }
+
     //----------------//
     // mergeFilaments //
     //----------------//
@@ -1133,6 +1441,10 @@ public class FilamentFactory<F extends Filament>
                 false,
                 "Should we print out the factory parameters?");
 
+        private final Constant.Boolean checkBands = new Constant.Boolean(
+                false,
+                "(debug) Should we compare filaments retrieved by bands with whole retrieval?");
+
         private final Constant.Double maxGapSlope = new Constant.Double(
                 "tangent",
                 0.5,
@@ -0,0 +1,318 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                               E u c l i d e a n D i s t a n c e                                //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.image;
+
+import ij.process.ByteProcessor;
+
+import static org.audiveris.omr.image.ChamferDistance.VALUE_TARGET;
+import static org.audiveris.omr.image.ChamferDistance.VALUE_UNKNOWN;
+import org.audiveris.omr.util.ForkedTasks;
+import org.audiveris.omr.util.OmrExecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Class {@code EuclideanDistance} computes the exact Euclidean distance transform to
+ * foreground pixels, as a separable transform.
+ * <p>
+ * <ol>
+ * <li>The row pass computes, for each pixel, the horizontal distance to the nearest foreground
+ * pixel in the same row.</li>
+ * <li>The column pass computes, for each pixel, the lower envelope of the parabolas defined by the
+ * row distances of the same column (Felzenszwalb &amp; Huttenlocher algorithm).</li>
+ * </ol>
+ * Each pass processes its rows (or columns) independently, hence in parallel.
+ * <p>
+ * Output values are consistent with {@link ChamferDistance}: {@link ChamferDistance#VALUE_TARGET}
+ * on foreground, the rounded distance multiplied by the normalizer elsewhere,
+ * {@link ChamferDistance#VALUE_UNKNOWN} where no foreground pixel exists at all.
+ * Values are limited to {@link Short#MAX_VALUE}.
+ *
+ * @author Hervé Bitteur
+ */
+public class EuclideanDistance
+{
+
+    /** Default normalizer, consistent with chamfer3 mask. */
+    public static final int DEFAULT_NORMALIZER = ChamferDistance.chamfer3[0][2];
+
+    /** Multiplier applied to distance values. */
+    private final int normalizer;
+
+    /**
+     * Creates a new {@code EuclideanDistance} object, with default normalizer.
+     */
+    public EuclideanDistance ()
+    {
+        this(DEFAULT_NORMALIZER);
+    }
+
+    /**
+     * Creates a new {@code EuclideanDistance} object.
+     *
+     * @param normalizer multiplier applied to distance values
+     */
+    public EuclideanDistance (int normalizer)
+    {
+        this.normalizer = normalizer;
+    }
+
+    //---------------//
+    // computeToFore //
+    //---------------//
+    /**
+     * Compute the distance transform to foreground pixels of the whole input image.
+     *
+     * @param input the input image, where foreground pixels are taken as reference pixels
+     * @return the distance transform table
+     */
+    public DistanceTable computeToFore (ByteProcessor input)
+    {
+        final DistanceTable output = new DistanceTable.Short(
+                input.getWidth(),
+                input.getHeight(),
+                normalizer);
+        computeToFore(input, output, 0, input.getHeight() - 1);
+
+        return output;
+    }
+
+    //---------------//
+    // computeToFore //
+    //---------------//
+    /**
+     * Compute the distance transform to foreground pixels, within a horizontal band only.
+     * <p>
+     * Only foreground pixels located within the band are considered, and only the output rows
+     * of the band are written.
+     *
+     * @param input  the input image, where foreground pixels are taken as reference pixels
+     * @param output the output table, of same dimension as input
+     * @param yMin   first row of band
+     * @param yMax   last row of band
+     */
+    public void computeToFore (final ByteProcessor input,
+                               final DistanceTable output,
+                               final int yMin,
+                               final int yMax)
+    {
+        final int width = input.getWidth();
+        final int chunks = Math.max(1, 2 * OmrExecutors.getNumberOfCpus());
+
+        // Row pass
+        final int rowChunk = Math.max(1, ((yMax - yMin + 1) + chunks - 1) / chunks);
+        final List<Callable<Void>> rowTasks = new ArrayList<>();
+
+        for (int y = yMin; y <= yMax; y += rowChunk) {
+            final int y1 = y;
+            final int y2 = Math.min(yMax, (y + rowChunk) - 1);
+            rowTasks.add(new Callable<Void>()
+            {
+                @Override
+                public Void call ()
+                {
+                    for (int y = y1; y <= y2; y++) {
+                        processRow(input, output, y);
+                    }
+
+                    return null;
+                }
+            });
+        }
+
+        ForkedTasks.invokeAllUnchecked(rowTasks);
+
+        // Column pass
+        final int colChunk = Math.max(1, (width + chunks - 1) / chunks);
+        final List<Callable<Void>> colTasks = new ArrayList<>();
+
+        for (int x = 0; x < width; x += colChunk) {
+            final int x1 = x;
+            final int x2 = Math.min(width - 1, (x + colChunk) - 1);
+            colTasks.add(new Callable<Void>()
+            {
+                @Override
+                public Void call ()
+                {
+                    final Envelope envelope = new Envelope(yMax - yMin + 1);
+
+                    for (int x = x1; x <= x2; x++) {
+                        processColumn(output, x, yMin, envelope);
+                    }
+
+                    return null;
+                }
+            });
+        }
+
+        ForkedTasks.invokeAllUnchecked(colTasks);
+    }
+
+    //---------------//
+    // processColumn //
+    //---------------//
+    /**
+     * Compute the final values of one column, from the row distances stored in output.
+     */
+    private void processColumn (DistanceTable output,
+                                int x,
+                                int yMin,
+                                Envelope env)
+    {
+        final int n = env.f.length;
+
+        // Squared horizontal distances, or infinity
+        for (int i = 0; i < n; i++) {
+            final int g = output.getValue(x, yMin + i);
+            env.f[i] = (g == VALUE_UNKNOWN) ? Double.POSITIVE_INFINITY : ((double) g * g);
+        }
+
+        // Lower envelope of parabolas
+        int k = -1;
+
+        for (int q = 0; q < n; q++) {
+            if (env.f[q] == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+
+            if (k < 0) {
+                k = 0;
+                env.v[0] = q;
+                env.z[0] = Double.NEGATIVE_INFINITY;
+                env.z[1] = Double.POSITIVE_INFINITY;
+
+                continue;
+            }
+
+            double s = env.intersection(q, env.v[k]);
+
+            while (s <= env.z[k]) {
+                k--;
+                s = env.intersection(q, env.v[k]);
+            }
+
+            k++;
+            env.v[k] = q;
+            env.z[k] = s;
+            env.z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+
+        if (k < 0) {
+            return; // No foreground pixel in band, row values are already unknown
+        }
+
+        // Read the envelope
+        k = 0;
+
+        for (int q = 0; q < n; q++) {
+            while (env.z[k + 1] < q) {
+                k++;
+            }
+
+            final int p = env.v[k];
+            final double d2 = ((double) (q - p) * (q - p)) + env.f[p];
+            final int val = (d2 == 0) ? VALUE_TARGET
+                    : (int) Math.min(Short.MAX_VALUE, Math.rint(normalizer * Math.sqrt(d2)));
+            output.setValue(x, yMin + q, val);
+        }
+    }
+
+    //------------//
+    // processRow //
+    //------------//
+    /**
+     * Store in output the horizontal distance of each row pixel to the nearest foreground
+     * pixel in the same row, or VALUE_UNKNOWN if row has no foreground pixel.
+     */
+    private void processRow (ByteProcessor input,
+                             DistanceTable output,
+                             int y)
+    {
+        final int width = input.getWidth();
+        final int none = Integer.MAX_VALUE / 2;
+        int last = -none; // Abscissa of last foreground pixel seen
+
+        // Left to right
+        for (int x = 0; x < width; x++) {
+            if (input.get(x, y) == 0) {
+                last = x;
+            }
+
+            final int d = x - last;
+            output.setValue(x, y, (d >= none) ? VALUE_UNKNOWN : d);
+        }
+
+        // Right to left
+        last = width + none;
+
+        for (int x = width - 1; x >= 0; x--) {
+            if (input.get(x, y) == 0) {
+                last = x;
+            }
+
+            final int d = last - x;
+
+            if (d < none) {
+                final int current = output.getValue(x, y);
+
+                if ((current == VALUE_UNKNOWN) || (d < current)) {
+                    output.setValue(x, y, d);
+                }
+            }
+        }
+    }
+
+    //----------//
+    // Envelope //
+    //----------//
+    /**
+     * Working arrays for one column.
+     */
+    private static class Envelope
+    {
+
+        /** Squared row distances. */
+        final double[] f;
+
+        /** Locations of parabolas in lower envelope. */
+        final int[] v;
+
+        /** Boundaries between parabolas. */
+        final double[] z;
+
+        Envelope (int n)
+        {
+            f = new double[n];
+            v = new int[n];
+            z = new double[n + 1];
+        }
+
+        /** Abscissa of intersection between parabolas rooted at q and p. */
+        double intersection (int q,
+                             int p)
+        {
+            return ((f[q] + ((double) q * q)) - (f[p] + ((double) p * p))) / (2.0 * (q - p));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                                 P a c k e d D i s t a n c e s                                  //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.image;
+
+/**
+ * Class {@code PackedDistances} is a bit-packed view of a {@link DistanceTable}, meant for
+ * fast template matching.
+ * <p>
+ * Template matching only needs to know, for each location, whether the distance is known (not
+ * {@link ChamferDistance#VALUE_UNKNOWN}) and whether it is zero (foreground).
+ * These two bit planes are stored row by row, 64 locations per long word, location x being bit
+ * (x % 64) of word (x / 64).
+ * <p>
+ * The view is a snapshot: later modifications of the distance table are not reflected.
+ *
+ * @author Hervé Bitteur
+ */
+public class PackedDistances
+{
+
+    /** Underlying distance table. */
+    private final DistanceTable table;
+
+    /** Table width. */
+    private final int width;
+
+    /** Table height. */
+    private final int height;
+
+    /** Number of long words per row. */
+    private final int wordsPerRow;
+
+    /** Plane of foreground locations (distance == 0). */
+    private final long[] fore;
+
+    /** Plane of known locations (distance != VALUE_UNKNOWN). */
+    private final long[] known;
+
+    /**
+     * Creates a new {@code PackedDistances} object.
+     *
+     * @param table the distance table to pack
+     */
+    public PackedDistances (DistanceTable table)
+    {
+        this.table = table;
+
+        width = table.getWidth();
+        height = table.getHeight();
+        wordsPerRow = Math.max(1, (width + 63) >>> 6);
+        fore = new long[wordsPerRow * height];
+        known = new long[wordsPerRow * height];
+
+        for (int y = 0; y < height; y++) {
+            final int base = y * wordsPerRow;
+
+            for (int x = 0; x < width; x++) {
+                final int val = table.getValue(x, y);
+
+                if (val != ChamferDistance.VALUE_UNKNOWN) {
+                    final int index = base + (x >>> 6);
+                    final long bit = 1L << (x & 63);
+                    known[index] |= bit;
+
+                    if (val == 0) {
+                        fore[index] |= bit;
+                    }
+                }
+            }
+        }
+    }
+
+    //---------//
+    // getFore //
+    //---------//
+    /**
+     * Report the foreground bits of locations x..x+w-1 on row y.
+     *
+     * @param x abscissa of first location, perhaps out of table
+     * @param y row ordinate, perhaps out of table
+     * @param w number of locations (1..64)
+     * @return the bits, location x being bit 0, out-of-table locations being 0
+     */
+    public long getFore (int x,
+                         int y,
+                         int w)
+    {
+        return window(fore, x, y, w);
+    }
+
+    //-----------//
+    // getHeight //
+    //-----------//
+    /**
+     * @return the table height
+     */
+    public int getHeight ()
+    {
+        return height;
+    }
+
+    //----------//
+    // getKnown //
+    //----------//
+    /**
+     * Report the known bits of locations x..x+w-1 on row y.
+     *
+     * @param x abscissa of first location, perhaps out of table
+     * @param y row ordinate, perhaps out of table
+     * @param w number of locations (1..64)
+     * @return the bits, location x being bit 0, out-of-table locations being 0
+     */
+    public long getKnown (int x,
+                          int y,
+                          int w)
+    {
+        return window(known, x, y, w);
+    }
+
+    //----------//
+    // getTable //
+    //----------//
+    /**
+     * @return the underlying distance table
+     */
+    public DistanceTable getTable ()
+    {
+        return table;
+    }
+
+    //----------//
+    // getWidth //
+    //----------//
+    /**
+     * @return the table width
+     */
+    public int getWidth ()
+    {
+        return width;
+    }
+
+    //--------//
+    // window //
+    //--------//
+    private long window (long[] plane,
+                         int x,
+                         int y,
+                         int w)
+    {
+        if ((y < 0) || (y >= height) || (x >= width) || (x <= -w)) {
+            return 0;
+        }
+
+        final int base = y * wordsPerRow;
+        final long bits;
+
+        if (x >= 0) {
+            final int wi = x >>> 6;
+            final int bi = x & 63;
+            long lo = plane[base + wi] >>> bi;
+
+            if ((bi != 0) && ((wi + 1) < wordsPerRow)) {
+                lo |= (plane[base + wi + 1] << (64 - bi));
+            }
+
+            bits = lo;
+        } else {
+            bits = plane[base] << -x;
+        }
+
+        return (w == 64) ? bits : (bits & ((1L << w) - 1));
+    }
+}
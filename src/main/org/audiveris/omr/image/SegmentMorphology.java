@@ -0,0 +1,458 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                               S e g m e n t M o r p h o l o g y                                //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.image;
+
+import ij.process.ByteProcessor;
+
+import org.audiveris.omr.util.ForkedTasks;
+import org.audiveris.omr.util.OmrExecutors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Class {@code SegmentMorphology} performs gray level morphology with a flat structure
+ * element, decomposed into horizontal segments.
+ * <p>
+ * Each row of the structure element is made of one or several horizontal segments (just one for
+ * a disk or a line).
+ * The extremum (min or max) over a segment is computed for all pixels of an image row by the
+ * van Herk / Gil-Werman algorithm, at a cost independent of segment length.
+ * Segments with the same horizontal span (such as the upper and lower rows of a disk) share
+ * their computation.
+ * The extremum over the whole structure element is then the extremum over its segments, each
+ * applied to the image row shifted by the segment ordinate.
+ * <p>
+ * Output is identical to {@link MorphoProcessor} legacy processing: pixels out of image are
+ * considered as 0 for a dilation and as 255 for an erosion.
+ * Image rows are processed by stripes, in parallel, with no per-pixel allocation.
+ *
+ * @author Hervé Bitteur
+ */
+public class SegmentMorphology
+{
+
+    /** Horizontal segments of the structure element: {dy, dxMin, dxMax}. */
+    private final int[][] segments;
+
+    /** Distinct horizontal spans of segments: {dxMin, dxMax}. */
+    private final int[][] spans;
+
+    /** Index in spans, for each segment. */
+    private final int[] segmentSpans;
+
+    /** Minimum segment ordinate. */
+    private final int dyMin;
+
+    /** Maximum segment ordinate. */
+    private final int dyMax;
+
+    /** Maximum segment length. */
+    private final int maxLength;
+
+    /**
+     * Creates a new {@code SegmentMorphology} object.
+     *
+     * @param se the structure element, assumed to be flat
+     * @see #isFlat(StructureElement)
+     */
+    public SegmentMorphology (StructureElement se)
+    {
+        segments = buildSegments(se.getVect());
+        segmentSpans = new int[segments.length];
+
+        final List<int[]> spanList = new ArrayList<>();
+        int yMin = 0;
+        int yMax = 0;
+        int max = 1;
+
+        for (int i = 0; i < segments.length; i++) {
+            final int[] seg = segments[i];
+            yMin = Math.min(yMin, seg[0]);
+            yMax = Math.max(yMax, seg[0]);
+            max = Math.max(max, (seg[2] - seg[1]) + 1);
+
+            int s = 0;
+
+            while ((s < spanList.size())
+                   && ((spanList.get(s)[0] != seg[1]) || (spanList.get(s)[1] != seg[2]))) {
+                s++;
+            }
+
+            if (s == spanList.size()) {
+                spanList.add(new int[]{seg[1], seg[2]});
+            }
+
+            segmentSpans[i] = s;
+        }
+
+        spans = spanList.toArray(new int[spanList.size()][]);
+        dyMin = yMin;
+        dyMax = yMax;
+        maxLength = max;
+    }
+
+    //--------//
+    // isFlat //
+    //--------//
+    /**
+     * Report whether the provided structure element is flat (all its values being 255),
+     * and can thus be processed by this class.
+     *
+     * @param se the structure element to check
+     * @return true if flat
+     */
+    public static boolean isFlat (StructureElement se)
+    {
+        for (int[] v : se.getVect()) {
+            if (v[2] != 255) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    //-------//
+    // close //
+    //-------//
+    /**
+     * Perform dilation followed by erosion.
+     *
+     * @param ip the image to process in place
+     */
+    public void close (ByteProcessor ip)
+    {
+        dilate(ip);
+        erode(ip);
+    }
+
+    //--------//
+    // dilate //
+    //--------//
+    /**
+     * Perform gray level dilation.
+     *
+     * @param ip the image to process in place
+     */
+    public void dilate (ByteProcessor ip)
+    {
+        process(ip, true);
+    }
+
+    //-------//
+    // erode //
+    //-------//
+    /**
+     * Perform gray level erosion.
+     *
+     * @param ip the image to process in place
+     */
+    public void erode (ByteProcessor ip)
+    {
+        process(ip, false);
+    }
+
+    //------//
+    // open //
+    //------//
+    /**
+     * Perform erosion followed by dilation.
+     *
+     * @param ip the image to process in place
+     */
+    public void open (ByteProcessor ip)
+    {
+        erode(ip);
+        dilate(ip);
+    }
+
+    //---------------//
+    // buildSegments //
+    //---------------//
+    /**
+     * Decompose the structure element points into maximal horizontal segments.
+     */
+    private static int[][] buildSegments (int[][] vect)
+    {
+        // Sort points by row then by column
+        final int[][] points = vect.clone();
+        Arrays.sort(points, new Comparator<int[]>()
+            {
+                @Override
+                public int compare (int[] p1,
+                                    int[] p2)
+                {
+                    if (p1[0] != p2[0]) {
+                        return Integer.compare(p1[0], p2[0]);
+                    }
+
+                    return Integer.compare(p1[1], p2[1]);
+                }
+            });
+
+        final List<int[]> list = new ArrayList<>();
+        int[] current = null;
+
+        for (int[] p : points) {
+            if ((current != null) && (current[0] == p[0]) && (p[1] <= (current[2] + 1))) {
+                current[2] = Math.max(current[2], p[1]);
+            } else {
+                current = new int[]{p[0], p[1], p[1]};
+                list.add(current);
+            }
+        }
+
+        return list.toArray(new int[list.size()][]);
+    }
+
+    //---------//
+    // process //
+    //---------//
+    /**
+     * Process the whole image.
+     * <p>
+     * Erosion is performed as the dilation of the inverted image, since min(a, b) is
+     * 255 - max(255 - a, 255 - b) and since the neutral values 255 and 0 correspond.
+     */
+    private void process (ByteProcessor ip,
+                          final boolean dilation)
+    {
+        final int width = ip.getWidth();
+        final int height = ip.getHeight();
+        final byte[] pixels = (byte[]) ip.getPixels();
+        final byte[] source = pixels.clone();
+
+        if (!dilation) {
+            for (int i = 0; i < source.length; i++) {
+                source[i] = (byte) (255 - (source[i] & 0xFF));
+            }
+        }
+
+        final int chunks = Math.max(1, 2 * OmrExecutors.getNumberOfCpus());
+        final int rowChunk = Math.max(1, (height + chunks - 1) / chunks);
+        final List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int y = 0; y < height; y += rowChunk) {
+            final int y1 = y;
+            final int y2 = Math.min(height - 1, (y + rowChunk) - 1);
+            tasks.add(new Callable<Void>()
+            {
+                @Override
+                public Void call ()
+                {
+                    new Stripe(width, height).process(source, pixels, y1, y2, !dilation);
+
+                    return null;
+                }
+            });
+        }
+
+        ForkedTasks.invokeAllUnchecked(tasks);
+    }
+
+    //--------//
+    // Stripe //
+    //--------//
+    /**
+     * Working buffers for the processing of a stripe of rows.
+     * <p>
+     * The running max of a given span on a given image row is needed by several output rows
+     * (and by several segments for a symmetric structure element), it is thus kept in a cache
+     * that holds the last (dyMax - dyMin + 1) rows for each span.
+     */
+    private class Stripe
+    {
+
+        final int width;
+
+        final int height;
+
+        /** Padded image row. */
+        final int[] padded;
+
+        /** Running max from block start. */
+        final int[] forward;
+
+        /** Running max to block end. */
+        final int[] backward;
+
+        /** Max over structure element, for current output row. */
+        final int[] result;
+
+        /** Number of cached rows per span. */
+        final int ring;
+
+        /** Cached running max rows, per span. */
+        final byte[][] cache;
+
+        /** Image row held by each cache slot, per span. */
+        final int[][] cachedRows;
+
+        Stripe (int width,
+                int height)
+        {
+            this.width = width;
+            this.height = height;
+
+            final int length = (width + maxLength) - 1;
+            padded = new int[length];
+            forward = new int[length];
+            backward = new int[length];
+            result = new int[width];
+
+            ring = (dyMax - dyMin) + 1;
+            cache = new byte[spans.length][ring * width];
+            cachedRows = new int[spans.length][ring];
+
+            for (int[] rows : cachedRows) {
+                Arrays.fill(rows, -1);
+            }
+        }
+
+        /**
+         * Process output rows y1..y2.
+         *
+         * @param source the source pixels
+         * @param target the target pixels
+         * @param y1     first output row
+         * @param y2     last output row
+         * @param invert true to invert values written
+         */
+        void process (byte[] source,
+                      byte[] target,
+                      int y1,
+                      int y2,
+                      boolean invert)
+        {
+            for (int y = y1; y <= y2; y++) {
+                Arrays.fill(result, 0); // Neutral value for max
+
+                for (int i = 0; i < segments.length; i++) {
+                    final int yy = y + segments[i][0];
+
+                    if ((yy >= 0) && (yy < height)) {
+                        final int s = segmentSpans[i];
+                        final byte[] row = cache[s];
+                        final int offset = getRow(source, s, yy);
+
+                        for (int x = 0; x < width; x++) {
+                            result[x] = Math.max(result[x], row[offset + x] & 0xFF);
+                        }
+                    }
+                }
+
+                final int base = y * width;
+
+                for (int x = 0; x < width; x++) {
+                    target[base + x] = (byte) (invert ? (255 - result[x]) : result[x]);
+                }
+            }
+        }
+
+        /**
+         * Make sure running max of span s on image row yy is available in cache.
+         *
+         * @return offset of the row in span cache
+         */
+        private int getRow (byte[] source,
+                            int s,
+                            int yy)
+        {
+            final int slot = yy % ring;
+            final int offset = slot * width;
+
+            if (cachedRows[s][slot] != yy) {
+                computeRow(source, yy, spans[s][0], spans[s][1], cache[s], offset);
+                cachedRows[s][slot] = yy;
+            }
+
+            return offset;
+        }
+
+        /**
+         * Compute for each pixel x of image row yy, the max over [x+dxMin..x+dxMax].
+         */
+        private void computeRow (byte[] source,
+                                 int yy,
+                                 int dxMin,
+                                 int dxMax,
+                                 byte[] dest,
+                                 int offset)
+        {
+            final int len = (dxMax - dxMin) + 1;
+            final int n = (width + len) - 1;
+            final int base = yy * width;
+
+            // padded[k] = source pixel at abscissa k + dxMin, or 0 if out of image
+            int k = 0;
+
+            for (; (k < n) && ((k + dxMin) < 0); k++) {
+                padded[k] = 0;
+            }
+
+            for (; (k < n) && ((k + dxMin) < width); k++) {
+                padded[k] = source[base + k + dxMin] & 0xFF;
+            }
+
+            for (; k < n; k++) {
+                padded[k] = 0;
+            }
+
+            if (len == 1) {
+                for (int x = 0; x < width; x++) {
+                    dest[offset + x] = (byte) padded[x];
+                }
+
+                return;
+            }
+
+            // Running max within each block of len values, forward and backward
+            for (int start = 0; start < n; start += len) {
+                final int end = Math.min(n, start + len) - 1;
+                int max = padded[start];
+                forward[start] = max;
+
+                for (int i = start + 1; i <= end; i++) {
+                    max = Math.max(max, padded[i]);
+                    forward[i] = max;
+                }
+
+                max = padded[end];
+                backward[end] = max;
+
+                for (int i = end - 1; i >= start; i--) {
+                    max = Math.max(max, padded[i]);
+                    backward[i] = max;
+                }
+            }
+
+            // Window [x..x+len-1] spans at most two blocks
+            for (int x = 0; x < width; x++) {
+                dest[offset + x] = (byte) Math.max(backward[x], forward[(x + len) - 1]);
+            }
+        }
+    }
+}
@@ -117,6 +117,24 @@ public class ShapeDescriptor
         template = createTemplate(shape, pointSize);
     }
 
+    /**
+     * Creates a new ShapeDescriptor object from an already built template.
+     *
+     * @param template the template, as restored from disk cache
+     * @param width    symbol width
+     * @param height   symbol height
+     */
+    ShapeDescriptor (Template template,
+                     int width,
+                     int height)
+    {
+        this.shape = template.getShape();
+        this.pointSize = template.getPointSize();
+        this.template = template;
+        this.width = width;
+        this.height = height;
+    }
+
     //----------//
     // evaluate //
     //----------//
@@ -137,6 +155,72 @@ public class ShapeDescriptor
         return template.evaluate(x, y, anchor, distances);
     }
 
+    //----------//
+    // evaluate //
+    //----------//
+    /**
+     * Same as {@link #evaluate(int, int, Anchor, DistanceTable)}, abandoned as soon as the
+     * distance is known to exceed maxDistance.
+     *
+     * @param x           location abscissa
+     * @param y           location ordinate
+     * @param anchor      location WRT template
+     * @param distances   table of distances
+     * @param maxDistance maximum acceptable distance
+     * @return the distance found, or {@link Template#ABANDONED}
+     */
+    public double evaluate (int x,
+                            int y,
+                            Anchor anchor,
+                            DistanceTable distances,
+                            double maxDistance)
+    {
+        return template.evaluate(x, y, anchor, distances, maxDistance);
+    }
+
+    //----------//
+    // evaluate //
+    //----------//
+    /**
+     * Same as {@link #evaluate(int, int, Anchor, DistanceTable)}, on packed distances.
+     *
+     * @param x      location abscissa
+     * @param y      location ordinate
+     * @param anchor location WRT template
+     * @param packed packed table of distances
+     * @return the best distance found
+     */
+    public double evaluate (int x,
+                            int y,
+                            Anchor anchor,
+                            PackedDistances packed)
+    {
+        return template.evaluate(x, y, anchor, packed);
+    }
+
+    //----------//
+    // evaluate //
+    //----------//
+    /**
+     * Same as {@link #evaluate(int, int, Anchor, PackedDistances)}, abandoned as soon as the
+     * distance is known to exceed maxDistance.
+     *
+     * @param x           location abscissa
+     * @param y           location ordinate
+     * @param anchor      location WRT template
+     * @param packed      packed table of distances
+     * @param maxDistance maximum acceptable distance
+     * @return the distance found, or {@link Template#ABANDONED}
+     */
+    public double evaluate (int x,
+                            int y,
+                            Anchor anchor,
+                            PackedDistances packed,
+                            double maxDistance)
+    {
+        return template.evaluate(x, y, anchor, packed, maxDistance);
+    }
+
     //--------------//
     // evaluateHole //
     //--------------//
@@ -157,6 +241,26 @@ public class ShapeDescriptor
         return template.evaluateHole(x, y, anchor, distances);
     }
 
+    //--------------//
+    // evaluateHole //
+    //--------------//
+    /**
+     * Same as {@link #evaluateHole(int, int, Anchor, DistanceTable)}, on packed distances.
+     *
+     * @param x      location abscissa
+     * @param y      location ordinate
+     * @param anchor location WRT template
+     * @param packed packed table of distances
+     * @return the ratio of actual white pixels in expected hole
+     */
+    public double evaluateHole (int x,
+                                int y,
+                                Anchor anchor,
+                                PackedDistances packed)
+    {
+        return template.evaluateHole(x, y, anchor, packed);
+    }
+
     //-----------//
     // getBounds //
     //-----------//
@@ -425,7 +529,7 @@ public class ShapeDescriptor
         MusicFont font = MusicFont.getPointFont(pointSize, interline);
 
         // Get symbol image painted on template rectangle
-        final TemplateSymbol symbol = new TemplateSymbol(shape, getCode(shape));
+        final TemplateSymbol symbol = createSymbol(shape);
         final BufferedImage img = symbol.buildImage(font);
         width = img.getWidth();
         height = img.getHeight();
@@ -838,6 +942,34 @@ public class ShapeDescriptor
         return trimmed;
     }
 
+    //--------------//
+    // createSymbol //
+    //--------------//
+    /**
+     * Create the template symbol for provided shape.
+     *
+     * @param shape the template shape
+     * @return the symbol to draw the template
+     */
+    static TemplateSymbol createSymbol (Shape shape)
+    {
+        return new TemplateSymbol(shape, getCode(shape));
+    }
+
+    //--------------//
+    // getSignature //
+    //--------------//
+    /**
+     * Report a signature of the parameters templates are built upon.
+     *
+     * @return the parameters signature
+     */
+    static String getSignature ()
+    {
+        return constants.stemDx.getValue() + "/" + constants.stemDy.getValue() + "/"
+                       + Template.smallRatio;
+    }
+
     //---------//
     // getCode //
     //---------//
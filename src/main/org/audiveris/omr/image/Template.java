@@ -48,7 +48,9 @@ import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
@@ -84,6 +86,39 @@ public class Template
     /** Ratio applied to small symbols (cue / grace). */
     public static final double smallRatio = constants.smallRatio.getValue();
 
+    /** Result of an evaluation abandoned as soon as it could not meet its bound. */
+    public static final double ABANDONED = Double.POSITIVE_INFINITY;
+
+    /** Indices of key point kinds, in rest counts. */
+    private static final int FORE = 0;
+
+    private static final int BACK = 1;
+
+    private static final int HOLE = 2;
+
+    /**
+     * Evaluation order of key points: foreground points first, since they are the most
+     * likely to mismatch on a wrong location, then hole points, then background points by
+     * increasing distance to symbol.
+     */
+    private static final Comparator<PixelDistance> byDiscrimination
+            = new Comparator<PixelDistance>()
+    {
+        @Override
+        public int compare (PixelDistance p1,
+                            PixelDistance p2)
+        {
+            final int k1 = kindOf(p1);
+            final int k2 = kindOf(p2);
+
+            if (k1 != k2) {
+                return Integer.compare(rankOf(k1), rankOf(k2));
+            }
+
+            return Double.compare(Math.abs(p1.d), Math.abs(p2.d));
+        }
+    };
+
     /** Template shape. */
     private final Shape shape;
 
@@ -112,6 +147,29 @@ public class Template
      */
     private final Map<Anchor, Point> offsets = new EnumMap<>(Anchor.class);
 
+    /**
+     * Bit masks of key points, per template row, for packed evaluation.
+     * Bit i of a row mask stands for abscissa i in template.
+     * These masks are null if the template is too wide to fit in 64 bits.
+     */
+    private final long[] foreMasks;
+
+    private final long[] backMasks;
+
+    private final long[] holeMasks;
+
+    /** Key points in evaluation order. */
+    private final PixelDistance[] evalOrder;
+
+    /** Count of key points per kind, from a given index in evalOrder to the end. */
+    private final int[][] pointRests;
+
+    /** Template rows in packed evaluation order. */
+    private final int[] rowOrder;
+
+    /** Count of key points per kind, from a given index in rowOrder to the end. */
+    private final int[][] rowRests;
+
     /**
      * Creates a new Template object with a provided set of points.
      *
@@ -138,6 +196,74 @@ public class Template
         this.width = width;
         this.height = height;
         this.symbolBounds = symbolBounds;
+
+        if (isPackable()) {
+            foreMasks = new long[height];
+            backMasks = new long[height];
+            holeMasks = new long[height];
+
+            for (PixelDistance pix : keyPoints) {
+                final long bit = 1L << pix.x;
+
+                if (pix.d == 0) {
+                    foreMasks[pix.y] |= bit;
+                } else if (pix.d > 0) {
+                    backMasks[pix.y] |= bit;
+                } else {
+                    holeMasks[pix.y] |= bit;
+                }
+            }
+        } else {
+            foreMasks = backMasks = holeMasks = null;
+        }
+
+        // Evaluation order of key points
+        evalOrder = keyPoints.toArray(new PixelDistance[keyPoints.size()]);
+        Arrays.sort(evalOrder, byDiscrimination);
+        pointRests = new int[3][evalOrder.length + 1];
+
+        for (int i = evalOrder.length - 1; i >= 0; i--) {
+            for (int k = 0; k < 3; k++) {
+                pointRests[k][i] = pointRests[k][i + 1];
+            }
+
+            pointRests[kindOf(evalOrder[i])][i]++;
+        }
+
+        // Evaluation order of rows, by decreasing count of foreground points
+        if (foreMasks != null) {
+            final Integer[] rows = new Integer[height];
+
+            for (int row = 0; row < height; row++) {
+                rows[row] = row;
+            }
+
+            Arrays.sort(rows, new Comparator<Integer>()
+                    {
+                        @Override
+                        public int compare (Integer r1,
+                                            Integer r2)
+                        {
+                            return Integer.compare(
+                                    Long.bitCount(foreMasks[r2]),
+                                    Long.bitCount(foreMasks[r1]));
+                        }
+                    });
+
+            rowOrder = new int[height];
+            rowRests = new int[3][height + 1];
+
+            for (int i = height - 1; i >= 0; i--) {
+                final int row = rows[i];
+                rowOrder[i] = row;
+                rowRests[FORE][i] = rowRests[FORE][i + 1] + Long.bitCount(foreMasks[row]);
+                rowRests[BACK][i] = rowRests[BACK][i + 1] + Long.bitCount(backMasks[row]);
+                rowRests[HOLE][i] = rowRests[HOLE][i + 1] + Long.bitCount(holeMasks[row]);
+            }
+        } else {
+            rowOrder = null;
+            rowRests = null;
+        }
     }
 
     //-----------//
@@ -310,6 +436,33 @@ public class Template
                             int y,
                             Anchor anchor,
                             DistanceTable distances)
+    {
+        return evaluate(x, y, anchor, distances, Double.POSITIVE_INFINITY);
+    }
+
+    //----------//
+    // evaluate //
+    //----------//
+    /**
+     * Evaluate this template at location (x,y) in provided distances table, abandoning as
+     * soon as the result is known to exceed the provided maximum distance.
+     * <p>
+     * Key points are visited in discrimination order. After each mismatch, a lower bound of the
+     * final result is computed, assuming all remaining points will be known and matching.
+     * If this bound exceeds maxDistance, evaluation stops.
+     *
+     * @param x           location abscissa
+     * @param y           location ordinate
+     * @param anchor      the anchor kind to use for (x,y), null for upper left
+     * @param distances   the distance table to search
+     * @param maxDistance maximum acceptable distance
+     * @return the weighted average distance computed on all key positions, or {@link #ABANDONED}
+     */
+    public double evaluate (int x,
+                            int y,
+                            Anchor anchor,
+                            DistanceTable distances,
+                            double maxDistance)
     {
         final Point ul = upperLeft(x, y, anchor);
 
@@ -323,7 +476,8 @@ public class Template
         double weights = 0; // Sum of weights
         double total = 0; // Sum of weighted distances
 
-        for (PixelDistance pix : keyPoints) {
+        for (int i = 0; i < evalOrder.length; i++) {
+            final PixelDistance pix = evalOrder[i];
             int nx = ul.x + pix.x;
             int ny = ul.y + pix.y;
 
@@ -344,14 +498,140 @@ public class Template
 
                     total += (weight * dist);
                     weights += weight;
+
+                    if (dist != 0) {
+                        // Lower bound, should all remaining points be known and matching
+                        final double rest = restWeight(pointRests, i + 1);
+
+                        if (total > (maxDistance * (weights + rest))) {
+                            return ABANDONED;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (weights == 0) {
+            return Double.MAX_VALUE; // Safer
+        }
+
+        return total / weights;
+    }
+
+    //----------//
+    // evaluate //
+    //----------//
+    /**
+     * Evaluate this template at location (x,y) in provided packed distances.
+     * <p>
+     * This gives the same result as {@link #evaluate(int, int, Anchor, DistanceTable)}, but
+     * works on whole template rows: mismatches are counted by bit-wise operations on the template
+     * masks and the packed table.
+     *
+     * @param x      location abscissa
+     * @param y      location ordinate
+     * @param anchor the anchor kind to use for (x,y), null for upper left
+     * @param packed the packed distances to search
+     * @return the weighted average distance computed on all key positions
+     */
+    public double evaluate (int x,
+                            int y,
+                            Anchor anchor,
+                            PackedDistances packed)
+    {
+        return evaluate(x, y, anchor, packed, Double.POSITIVE_INFINITY);
+    }
+
+    //----------//
+    // evaluate //
+    //----------//
+    /**
+     * Evaluate this template at location (x,y) in provided packed distances, abandoning as
+     * soon as the result is known to exceed the provided maximum distance.
+     * <p>
+     * Rows are visited by decreasing count of foreground points, and the lower bound is checked
+     * after each row.
+     *
+     * @param x           location abscissa
+     * @param y           location ordinate
+     * @param anchor      the anchor kind to use for (x,y), null for upper left
+     * @param packed      the packed distances to search
+     * @param maxDistance maximum acceptable distance
+     * @return the weighted average distance computed on all key positions, or {@link #ABANDONED}
+     */
+    public double evaluate (int x,
+                            int y,
+                            Anchor anchor,
+                            PackedDistances packed,
+                            double maxDistance)
+    {
+        if (foreMasks == null) {
+            return evaluate(x, y, anchor, packed.getTable(), maxDistance);
+        }
+
+        final double foreWeight = constants.foreWeight.getValue();
+        final double backWeight = constants.backWeight.getValue();
+        final double holeWeight = constants.holeWeight.getValue();
+
+        final Point ul = upperLeft(x, y, anchor);
+        int foreCount = 0; // Known fore points
+        int foreMiss = 0; // Known fore points, actually white
+        int backCount = 0; // Known back points
+        int backMiss = 0; // Known back points, actually black
+        int holeCount = 0; // Known hole points
+        int holeMiss = 0; // Known hole points, actually black
+
+        for (int i = 0; i < height; i++) {
+            final int row = rowOrder[i];
+
+            if ((foreMasks[row] | backMasks[row] | holeMasks[row]) == 0) {
+                continue;
+            }
+
+            final int ny = ul.y + row;
+            final long known = packed.getKnown(ul.x, ny, width);
+
+            if (known == 0) {
+                continue;
+            }
+
+            final long black = packed.getFore(ul.x, ny, width);
+            final long fore = foreMasks[row] & known;
+            final long back = backMasks[row] & known;
+            final long hole = holeMasks[row] & known;
+
+            foreCount += Long.bitCount(fore);
+            foreMiss += Long.bitCount(fore & ~black);
+            backCount += Long.bitCount(back);
+            backMiss += Long.bitCount(back & black);
+            holeCount += Long.bitCount(hole);
+            holeMiss += Long.bitCount(hole & black);
+
+            if ((i + 1) < height) {
+                final double misses = (foreWeight * foreMiss) + (backWeight * backMiss)
+                                              + (holeWeight * holeMiss);
+
+                if (misses > 0) {
+                    final double counts = (foreWeight * foreCount) + (backWeight * backCount)
+                                                  + (holeWeight * holeCount);
+
+                    if (misses > (maxDistance * (counts + restWeight(rowRests, i + 1)))) {
+                        return ABANDONED;
+                    }
                 }
             }
         }
 
+        final double weights = (foreWeight * foreCount) + (backWeight * backCount)
+                                       + (holeWeight * holeCount);
+
         if (weights == 0) {
             return Double.MAX_VALUE; // Safer
         }
 
+        final double total = (foreWeight * foreMiss) + (backWeight * backMiss)
+                                     + (holeWeight * holeMiss);
+
         return total / weights;
     }
 
@@ -410,6 +690,50 @@ public class Template
         }
     }
 
+    //--------------//
+    // evaluateHole //
+    //--------------//
+    /**
+     * Evaluate hole of this template at location (x,y) in provided packed distances.
+     *
+     * @param x      location abscissa
+     * @param y      location ordinate
+     * @param anchor the anchor kind to use for (x,y), null for upper left
+     * @param packed the packed distances to search
+     * @return the ratio of actual white pixels over expected ones
+     */
+    public double evaluateHole (int x,
+                                int y,
+                                Anchor anchor,
+                                PackedDistances packed)
+    {
+        if (holeMasks == null) {
+            return evaluateHole(x, y, anchor, packed.getTable());
+        }
+
+        final Point ul = upperLeft(x, y, anchor);
+        int expectedHoles = 0; // Expected number of white pixels in hole
+        int actualHoles = 0; // Actual number of white pixels in hole
+
+        for (int row = 0; row < height; row++) {
+            if (holeMasks[row] == 0) {
+                continue;
+            }
+
+            final int ny = ul.y + row;
+            final long hole = holeMasks[row] & packed.getKnown(ul.x, ny, width);
+
+            expectedHoles += Long.bitCount(hole);
+            actualHoles += Long.bitCount(hole & ~packed.getFore(ul.x, ny, width));
+        }
+
+        if (expectedHoles == 0) {
+            return 0;
+        } else {
+            return (double) actualHoles / expectedHoles;
+        }
+    }
+
     //-----------//
     // getBounds //
     //-----------//
@@ -566,6 +890,19 @@ public class Template
         return offset;
     }
 
+    //------------//
+    // getOffsets //
+    //------------//
+    /**
+     * Report all defined anchor offsets.
+     *
+     * @return the offsets, per anchor
+     */
+    Map<Anchor, Point> getOffsets ()
+    {
+        return Collections.unmodifiableMap(offsets);
+    }
+
     //--------------//
     // getPointSize //
     //--------------//
@@ -675,6 +1012,57 @@ public class Template
         return sb.toString();
     }
 
+    //------------//
+    // restWeight //
+    //------------//
+    /**
+     * Report the maximum weight of key points still to be visited.
+     *
+     * @param rests rest counts per kind
+     * @param index index of first point (or row) to be visited
+     * @return the sum of weights of all points from index on
+     */
+    private double restWeight (int[][] rests,
+                               int index)
+    {
+        return (constants.foreWeight.getValue() * rests[FORE][index])
+               + (constants.backWeight.getValue() * rests[BACK][index])
+               + (constants.holeWeight.getValue() * rests[HOLE][index]);
+    }
+
+    //------------//
+    // isPackable //
+    //------------//
+    /**
+     * Check whether key points can be represented as one 64-bit mask per row.
+     * This requires the template to be at most 64 pixels wide, with at most one key point per
+     * location.
+     */
+    private boolean isPackable ()
+    {
+        if ((width <= 0) || (width > 64) || (height <= 0)) {
+            return false;
+        }
+
+        final long[] seen = new long[height];
+
+        for (PixelDistance pix : keyPoints) {
+            if ((pix.x < 0) || (pix.x >= width) || (pix.y < 0) || (pix.y >= height)) {
+                return false;
+            }
+
+            final long bit = 1L << pix.x;
+
+            if ((seen[pix.y] & bit) != 0) {
+                return false;
+            }
+
+            seen[pix.y] |= bit;
+        }
+
+        return true;
+    }
+
     //-----------//
     // upperLeft //
     //-----------//
@@ -697,6 +1085,22 @@ public class Template
         return new Point(x, y);
     }
 
+    //--------//
+    // kindOf //
+    //--------//
+    private static int kindOf (PixelDistance pix)
+    {
+        return (pix.d == 0) ? FORE : ((pix.d > 0) ? BACK : HOLE);
+    }
+
+    //--------//
+    // rankOf //
+    //--------//
+    private static int rankOf (int kind)
+    {
+        return (kind == FORE) ? 0 : ((kind == HOLE) ? 1 : 2);
+    }
+
     //----------//
     // impactOf //
     //----------//
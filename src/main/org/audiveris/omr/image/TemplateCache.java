@@ -0,0 +1,403 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                                   T e m p l a t e C a c h e                                    //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.image;
+
+import org.audiveris.omr.WellKnowns;
+import org.audiveris.omr.constant.Constant;
+import org.audiveris.omr.constant.ConstantSet;
+import org.audiveris.omr.glyph.Shape;
+import org.audiveris.omr.image.Anchored.Anchor;
+import org.audiveris.omr.ui.symbol.MusicFont;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Class {@code TemplateCache} stores template catalogs on disk, so that templates are
+ * built only once per point size, rather than once per point size in every JVM.
+ * <p>
+ * The cache folder is located in {@link WellKnowns#TEMP_FOLDER}, and its name includes a format
+ * version, the music font name, the program version and a hash of all the parameters templates
+ * depend upon (set of shapes, anchor constants, small heads ratio, program build).
+ * Hence, any change in these parameters simply leads to a new folder.
+ * <p>
+ * Within the cache folder, there is one binary file per point size.
+ * Large files are memory-mapped rather than read.
+ * Any failure in reading or writing the cache is logged and otherwise ignored: templates are then
+ * simply built from the music font.
+ *
+ * @author Hervé Bitteur
+ */
+public abstract class TemplateCache
+{
+
+    private static final Constants constants = new Constants();
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateCache.class);
+
+    /** Version of file format. */
+    private static final int VERSION = 1;
+
+    /** File magic number. */
+    private static final int MAGIC = 0x544D504C; // "TMPL"
+
+    /** File name prefix. */
+    private static final String PREFIX = "catalog-";
+
+    /** File name extension. */
+    private static final String EXT = ".bin";
+
+    /** Not meant to be instantiated. */
+    private TemplateCache ()
+    {
+    }
+
+    //-----------//
+    // isEnabled //
+    //-----------//
+    /**
+     * Report whether the disk cache is used.
+     *
+     * @return true if so
+     */
+    public static boolean isEnabled ()
+    {
+        return constants.useCache.isSet();
+    }
+
+    //----------------//
+    // getCachedSizes //
+    //----------------//
+    /**
+     * Report the point sizes for which a catalog is available on disk.
+     *
+     * @param shapes the shapes of a catalog
+     * @return the point sizes found, perhaps empty
+     */
+    public static List<Integer> getCachedSizes (Collection<Shape> shapes)
+    {
+        final List<Integer> sizes = new ArrayList<>();
+        final Path folder = getFolder(shapes);
+
+        if (!Files.isDirectory(folder)) {
+            return sizes;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, PREFIX + "*" + EXT)) {
+            for (Path path : stream) {
+                final String name = path.getFileName().toString();
+
+                try {
+                    sizes.add(
+                            Integer.parseInt(
+                                    name.substring(PREFIX.length(), name.length() - EXT.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException ex) {
+            logger.warn("Error browsing template cache {} {}", folder, ex.toString());
+        }
+
+        return sizes;
+    }
+
+    //------//
+    // load //
+    //------//
+    /**
+     * Load from disk the descriptors of a catalog.
+     *
+     * @param pointSize the catalog point size
+     * @param shapes    the shapes of the catalog
+     * @return the descriptors, or null if not available
+     */
+    public static Map<Shape, ShapeDescriptor> load (int pointSize,
+                                                    Collection<Shape> shapes)
+    {
+        final Path path = getFolder(shapes).resolve(PREFIX + pointSize + EXT);
+
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final ByteBuffer buf;
+
+            if (size >= (constants.mappingThreshold.getValue() * 1024L)) {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buf = ByteBuffer.allocate((int) size);
+
+                while (buf.hasRemaining() && (channel.read(buf) >= 0)) {
+                }
+
+                buf.flip();
+            }
+
+            final Map<Shape, ShapeDescriptor> descriptors = read(buf, pointSize);
+
+            if (!descriptors.keySet().containsAll(shapes)) {
+                logger.info("Incomplete template cache {}", path);
+
+                return null;
+            }
+
+            logger.debug("Templates for point size {} loaded from {}", pointSize, path);
+
+            return descriptors;
+        } catch (Exception ex) {
+            logger.warn("Could not load template cache {} {}", path, ex.toString());
+
+            return null;
+        }
+    }
+
+    //-------//
+    // store //
+    //-------//
+    /**
+     * Store on disk the descriptors of a catalog.
+     *
+     * @param pointSize   the catalog point size
+     * @param shapes      the shapes of the catalog
+     * @param descriptors the descriptors to store
+     */
+    public static void store (int pointSize,
+                              Collection<Shape> shapes,
+                              Map<Shape, ShapeDescriptor> descriptors)
+    {
+        final Path folder = getFolder(shapes);
+        final Path path = folder.resolve(PREFIX + pointSize + EXT);
+
+        try {
+            Files.createDirectories(folder);
+
+            // Write to a temporary file, then rename, so that readers never see a partial file
+            final Path tmp = Files.createTempFile(folder, PREFIX, ".tmp");
+
+            try (OutputStream os = Files.newOutputStream(tmp);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                write(out, pointSize, descriptors);
+            }
+
+            Files.move(
+                    tmp,
+                    path,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Templates for point size {} stored in {}", pointSize, path);
+        } catch (Exception ex) {
+            logger.warn("Could not store template cache {} {}", path, ex.toString());
+        }
+    }
+
+    //-----------//
+    // getFolder //
+    //-----------//
+    private static Path getFolder (Collection<Shape> shapes)
+    {
+        final StringBuilder sb = new StringBuilder();
+
+        for (Shape shape : shapes) {
+            sb.append(shape).append(',');
+        }
+
+        sb.append(ShapeDescriptor.getSignature()).append(',').append(WellKnowns.TOOL_BUILD);
+
+        final String name = String.format(
+                "v%d-%s-%s-%08x",
+                VERSION,
+                MusicFont.FONT_NAME,
+                WellKnowns.TOOL_REF,
+                sb.toString().hashCode());
+
+        return WellKnowns.TEMP_FOLDER.resolve("templates").resolve(name);
+    }
+
+    //------//
+    // read //
+    //------//
+    private static Map<Shape, ShapeDescriptor> read (ByteBuffer buf,
+                                                     int pointSize)
+            throws IOException
+    {
+        if ((buf.getInt() != MAGIC) || (buf.getInt() != VERSION) || (buf.getInt() != pointSize)) {
+            throw new IOException("Invalid header");
+        }
+
+        final Map<Shape, ShapeDescriptor> descriptors = new EnumMap<>(Shape.class);
+
+        for (int count = buf.getInt(); count > 0; count--) {
+            final Shape shape = Shape.valueOf(readName(buf));
+            final int descWidth = buf.getInt();
+            final int descHeight = buf.getInt();
+            final int width = buf.getInt();
+            final int height = buf.getInt();
+            final Rectangle symbolBounds = new Rectangle(
+                    buf.getInt(),
+                    buf.getInt(),
+                    buf.getInt(),
+                    buf.getInt());
+
+            final Map<Anchor, Point> anchors = new EnumMap<>(Anchor.class);
+
+            for (int n = buf.getInt(); n > 0; n--) {
+                final Anchor anchor = Anchor.valueOf(readName(buf));
+                anchors.put(anchor, new Point(buf.getInt(), buf.getInt()));
+            }
+
+            final int nb = buf.getInt();
+            final List<PixelDistance> keyPoints = new ArrayList<>(nb);
+
+            for (int n = 0; n < nb; n++) {
+                keyPoints.add(new PixelDistance(buf.getInt(), buf.getInt(), buf.getDouble()));
+            }
+
+            final Template template = new Template(
+                    shape,
+                    pointSize,
+                    ShapeDescriptor.createSymbol(shape),
+                    width,
+                    height,
+                    keyPoints,
+                    symbolBounds);
+
+            for (Entry<Anchor, Point> entry : anchors.entrySet()) {
+                final Point offset = entry.getValue();
+                template.addAnchor(entry.getKey(), offset.x, offset.y);
+            }
+
+            descriptors.put(shape, new ShapeDescriptor(template, descWidth, descHeight));
+        }
+
+        return descriptors;
+    }
+
+    //----------//
+    // readName //
+    //----------//
+    private static String readName (ByteBuffer buf)
+    {
+        final byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //-------//
+    // write //
+    //-------//
+    private static void write (DataOutputStream out,
+                               int pointSize,
+                               Map<Shape, ShapeDescriptor> descriptors)
+            throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(pointSize);
+        out.writeInt(descriptors.size());
+
+        for (ShapeDescriptor desc : descriptors.values()) {
+            final Template template = desc.getTemplate();
+            writeName(out, desc.getShape().name());
+            out.writeInt(desc.getWidth());
+            out.writeInt(desc.getHeight());
+            out.writeInt(template.getWidth());
+            out.writeInt(template.getHeight());
+
+            final Rectangle bounds = template.getSymbolBounds();
+            out.writeInt(bounds.x);
+            out.writeInt(bounds.y);
+            out.writeInt(bounds.width);
+            out.writeInt(bounds.height);
+
+            final Map<Anchor, Point> anchors = template.getOffsets();
+            out.writeInt(anchors.size());
+
+            for (Entry<Anchor, Point> entry : anchors.entrySet()) {
+                writeName(out, entry.getKey().name());
+                out.writeInt(entry.getValue().x);
+                out.writeInt(entry.getValue().y);
+            }
+
+            final List<PixelDistance> keyPoints = template.getKeyPoints();
+            out.writeInt(keyPoints.size());
+
+            for (PixelDistance pix : keyPoints) {
+                out.writeInt(pix.x);
+                out.writeInt(pix.y);
+                out.writeDouble(pix.d);
+            }
+        }
+    }
+
+    //-----------//
+    // writeName //
+    //-----------//
+    private static void writeName (DataOutputStream out,
+                                   String name)
+            throws IOException
+    {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    //-----------//
+    // Constants //
+    //-----------//
+    private static class Constants
+            extends ConstantSet
+    {
+
+        private final Constant.Boolean useCache = new Constant.Boolean(
+                true,
+                "Should we keep template catalogs in a disk cache?");
+
+        private final Constant.Integer mappingThreshold = new Constant.Integer(
+                "KiloBytes",
+                512,
+                "Minimum size of a cached catalog to be memory-mapped rather than read");
+    }
+}
@@ -24,16 +24,28 @@ package org.audiveris.omr.image;
 import org.audiveris.omr.glyph.Shape;
 import org.audiveris.omr.glyph.ShapeSet;
 
+import org.audiveris.omr.step.ProcessingCancellationException;
+import org.audiveris.omr.util.OmrExecutors;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.EnumMap;
-import java.util.HashMap;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Class {@code TemplateFactory} builds needed instances of {@link Template} class
  * and keeps a catalog per desired point size and shape.
+ * <p>
+ * Catalogs are built lazily, each one only once even when requested concurrently, and kept in a
+ * disk cache (see {@link TemplateCache}) for later JVMs.
  *
  * @author Hervé Bitteur
  */
@@ -45,15 +57,15 @@ public class TemplateFactory
     /** Singleton. */
     private static final TemplateFactory INSTANCE = new TemplateFactory();
 
-    /** Catalog of all templates already allocated, mapped by point size. */
-    private final Map<Integer, Catalog> allSizes;
+    /** Catalog of all templates already allocated (or being allocated), mapped by point size. */
+    private final ConcurrentMap<Integer, FutureTask<Catalog>> allSizes;
 
     /**
      * (Private) Creates the singleton object.
      */
     private TemplateFactory ()
     {
-        allSizes = new HashMap<>();
+        allSizes = new ConcurrentHashMap<>();
     }
 
     //------------//
@@ -65,21 +77,77 @@ public class TemplateFactory
      * @param pointSize provided point size
      * @return the catalog of all templates for the point size value
      */
-    public Catalog getCatalog (int pointSize)
+    public Catalog getCatalog (final int pointSize)
     {
-        Catalog catalog = allSizes.get(pointSize);
-
-        if (catalog == null) {
-            synchronized (allSizes) {
-                catalog = allSizes.get(pointSize);
+        FutureTask<Catalog> task = allSizes.get(pointSize);
 
-                if (catalog == null) {
-                    allSizes.put(pointSize, catalog = new Catalog(pointSize));
+        if (task == null) {
+            final FutureTask<Catalog> newTask = new FutureTask<>(new Callable<Catalog>()
+            {
+                @Override
+                public Catalog call ()
+                {
+                    return new Catalog(pointSize);
                 }
+            });
+
+            task = allSizes.putIfAbsent(pointSize, newTask);
+
+            if (task == null) {
+                task = newTask;
+                task.run(); // Build in calling thread, other callers wait for it
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            throw new ProcessingCancellationException(ex);
+        } catch (ExecutionException ex) {
+            allSizes.remove(pointSize, task); // To allow a new attempt
+
+            final Throwable cause = ex.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    //---------//
+    // prewarm //
+    //---------//
+    /**
+     * Load in background all catalogs available in disk cache, since they correspond to
+     * the point sizes used so far.
+     * <p>
+     * This is meant to be called at startup, to save catalog building or loading from the
+     * processing of the first sheets.
+     */
+    public void prewarm ()
+    {
+        if (!TemplateCache.isEnabled()) {
+            return;
         }
 
-        return catalog;
+        final List<Integer> sizes = TemplateCache.getCachedSizes(Catalog.getShapes());
+        logger.debug("Prewarming templates for point sizes {}", sizes);
+
+        for (final Integer pointSize : sizes) {
+            OmrExecutors.getLowExecutor().submit(new Callable<Void>()
+            {
+                @Override
+                public Void call ()
+                        throws Exception
+                {
+                    getCatalog(pointSize);
+
+                    return null;
+                }
+            });
+        }
     }
 
     //-------------//
@@ -151,14 +219,43 @@ public class TemplateFactory
             return descriptor.getTemplate();
         }
 
+        //-----------//
+        // getShapes //
+        //-----------//
+        /**
+         * Report the shapes handled by any catalog.
+         *
+         * @return the catalog shapes
+         */
+        static EnumSet<Shape> getShapes ()
+        {
+            return ShapeSet.getTemplateNotes(null);
+        }
+
         //-------------------//
         // buildAllTemplates //
         //-------------------//
         private void buildAllTemplates ()
         {
-            for (Shape shape : ShapeSet.getTemplateNotes(null)) {
+            final EnumSet<Shape> shapes = getShapes();
+
+            if (TemplateCache.isEnabled()) {
+                final Map<Shape, ShapeDescriptor> cached = TemplateCache.load(pointSize, shapes);
+
+                if (cached != null) {
+                    descriptors.putAll(cached);
+
+                    return;
+                }
+            }
+
+            for (Shape shape : shapes) {
                 descriptors.put(shape, new ShapeDescriptor(shape, pointSize));
             }
+
+            if (TemplateCache.isEnabled()) {
+                TemplateCache.store(pointSize, shapes, descriptors);
+            }
         }
     }
 }
@@ -404,6 +404,28 @@ public class IntegerFunction
         return zeroSeries;
     }
 
+    //---------//
+    // include //
+    //---------//
+    /**
+     * Add the values of another function, defined on the same x domain.
+     * <p>
+     * This allows to populate separate functions in parallel, and then to merge them.
+     *
+     * @param that the function to add
+     * @throws IllegalArgumentException if x domains differ
+     */
+    public void include (IntegerFunction that)
+    {
+        if ((that.xMin != xMin) || (that.xMax != xMax)) {
+            throw new IllegalArgumentException("Incompatible function domains");
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] += that.values[i];
+        }
+    }
+
     //-------//
     // print //
     //-------//
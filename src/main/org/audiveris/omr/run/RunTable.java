@@ -23,6 +23,8 @@ package org.audiveris.omr.run;
 
 import ij.process.ByteProcessor;
 
+import org.audiveris.omr.constant.Constant;
+import org.audiveris.omr.constant.ConstantSet;
 import org.audiveris.omr.image.PixelSource;
 import static org.audiveris.omr.image.PixelSource.BACKGROUND;
 import org.audiveris.omr.image.Table;
@@ -33,6 +35,7 @@ import org.audiveris.omr.moments.BasicARTMoments;
 import org.audiveris.omr.moments.GeometricMoments;
 import static org.audiveris.omr.run.Orientation.HORIZONTAL;
 import org.audiveris.omr.util.ByteUtil;
+import org.audiveris.omr.util.IndentingXMLStreamWriter;
 import org.audiveris.omr.util.Predicate;
 
 import org.slf4j.Logger;
@@ -44,11 +47,15 @@ import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import static java.nio.file.StandardOpenOption.CREATE;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -65,7 +72,12 @@ import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlValue;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import org.audiveris.omr.util.Jaxb;
 
 /**
@@ -102,8 +114,16 @@ public class RunTable
         implements Cloneable, PixelSource, Oriented
 {
 
+    private static final Constants constants = new Constants();
+
     private static final Logger logger = LoggerFactory.getLogger(RunTable.class);
 
+    /** XML element for a run table. */
+    private static final String RUN_TABLE = "run-table";
+
+    /** XML element for a sequence of runs. */
+    private static final String RUNS = "runs";
+
     /** Un/marshalling context for use with JAXB. */
     private static volatile JAXBContext jaxbContext;
 
@@ -915,6 +935,27 @@ public class RunTable
         return sequences.length;
     }
 
+    //--------------//
+    // getFootprint //
+    //--------------//
+    /**
+     * Report an estimate of the heap space used by this table.
+     *
+     * @return estimated size in bytes
+     */
+    public long getFootprint ()
+    {
+        long bytes = 32 + (8L * sequences.length);
+
+        for (RunSequence seq : sequences) {
+            if ((seq != null) && (seq.rle != null)) {
+                bytes += 32 + (4L * seq.rle.length);
+            }
+        }
+
+        return bytes;
+    }
+
     //------------------//
     // getTotalRunCount //
     //------------------//
@@ -982,7 +1023,21 @@ public class RunTable
                    JAXBException,
                    XMLStreamException
     {
-        Jaxb.marshal(this, path, getJaxbContext());
+        if (!constants.useStreamingXml.isSet()) {
+            Jaxb.marshal(this, path, getJaxbContext());
+
+            return;
+        }
+
+        try (OutputStream os = Files.newOutputStream(path, CREATE)) {
+            final XMLStreamWriter writer = new IndentingXMLStreamWriter(
+                    XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8"));
+            writer.writeStartDocument("UTF-8", "1.0");
+            writeXml(writer);
+            writer.writeEndDocument();
+            writer.close();
+            os.flush();
+        }
     }
 
     //-----------//
@@ -999,19 +1054,183 @@ public class RunTable
         logger.debug("RunTable unmarshalling {}", path);
 
         try (InputStream is = Files.newInputStream(path, StandardOpenOption.READ)) {
-            Unmarshaller um = getJaxbContext().createUnmarshaller();
-            RunTable runTable = (RunTable) um.unmarshal(is);
+            final RunTable runTable;
+
+            if (constants.useStreamingXml.isSet()) {
+                final XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(
+                        is);
+                reader.nextTag(); // Move to root element
+                runTable = readXml(reader);
+                reader.close();
+            } else {
+                Unmarshaller um = getJaxbContext().createUnmarshaller();
+                runTable = (RunTable) um.unmarshal(is);
+            }
+
             logger.debug("Unmarshalled {}", runTable);
 
             return runTable;
         } catch (IOException |
-                 JAXBException ex) {
+                 JAXBException |
+                 XMLStreamException |
+                 RuntimeException ex) {
             logger.warn("RunTable. Error unmarshalling " + path + " " + ex, ex);
 
             return null;
         }
     }
 
+    //------------//
+    // readBinary //
+    //------------//
+    /**
+     * Read a RunTable from the provided buffer, as written by {@link #writeBinary}.
+     * <p>
+     * The buffer position is advanced past the table data.
+     *
+     * @param buffer the source buffer (perhaps memory-mapped)
+     * @return the decoded run table
+     */
+    public static RunTable readBinary (ByteBuffer buffer)
+    {
+        final Orientation orientation = Orientation.values()[buffer.get()];
+        final int width = buffer.getInt();
+        final int height = buffer.getInt();
+        final RunTable table = new RunTable(orientation, width, height);
+
+        for (int i = 0; i < table.sequences.length; i++) {
+            final int length = buffer.getInt();
+
+            if (length > 0) {
+                final int[] rle = new int[length];
+                buffer.asIntBuffer().get(rle);
+                buffer.position(buffer.position() + (4 * length));
+                table.sequences[i] = new RunSequence(rle);
+            }
+        }
+
+        return table;
+    }
+
+    //-------------//
+    // writeBinary //
+    //-------------//
+    /**
+     * Write this RunTable in a compact binary form, much faster to read back than XML.
+     * <p>
+     * Layout is: orientation ordinal (byte), width (int), height (int), then for each sequence
+     * its RLE length (int, 0 for an empty sequence) followed by the RLE values (int).
+     *
+     * @param out the binary output
+     * @throws IOException on IO error
+     * @see #readBinary(ByteBuffer)
+     */
+    public void writeBinary (DataOutput out)
+            throws IOException
+    {
+        out.writeByte(orientation.ordinal());
+        out.writeInt(width);
+        out.writeInt(height);
+
+        for (RunSequence seq : sequences) {
+            if ((seq == null) || (seq.rle == null)) {
+                out.writeInt(0);
+            } else {
+                out.writeInt(seq.rle.length);
+
+                for (int val : seq.rle) {
+                    out.writeInt(val);
+                }
+            }
+        }
+    }
+
+    //---------//
+    // readXml //
+    //---------//
+    /**
+     * Read a RunTable from the provided XML reader, without JAXB.
+     * <p>
+     * The expected XML is the one produced by JAXB marshalling, that is a run-table element with
+     * orientation, width and height attributes, and one runs element per sequence.
+     *
+     * @param reader the XML reader, positioned on the run-table start element.
+     *               On return, it is positioned on the run-table end element.
+     * @return the decoded run table
+     * @throws XMLStreamException if XML is not compatible
+     */
+    public static RunTable readXml (XMLStreamReader reader)
+            throws XMLStreamException
+    {
+        reader.require(XMLStreamConstants.START_ELEMENT, null, RUN_TABLE);
+
+        final RunTable table = new RunTable(
+                Orientation.valueOf(reader.getAttributeValue(null, "orientation")),
+                Integer.parseInt(reader.getAttributeValue(null, "width")),
+                Integer.parseInt(reader.getAttributeValue(null, "height")));
+        int index = 0;
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            reader.require(XMLStreamConstants.START_ELEMENT, null, RUNS);
+
+            final int[] rle = parseInts(reader.getElementText());
+
+            if (rle.length > 0) {
+                table.sequences[index] = new RunSequence(rle);
+            }
+
+            index++;
+        }
+
+        reader.require(XMLStreamConstants.END_ELEMENT, null, RUN_TABLE);
+
+        return table;
+    }
+
+    //----------//
+    // writeXml //
+    //----------//
+    /**
+     * Write this RunTable to the provided XML writer, without JAXB.
+     * <p>
+     * Output is compatible with JAXB marshalling, see {@link #readXml(XMLStreamReader)}.
+     *
+     * @param writer the XML writer
+     * @throws XMLStreamException if writing fails
+     */
+    public void writeXml (XMLStreamWriter writer)
+            throws XMLStreamException
+    {
+        writer.writeStartElement(RUN_TABLE);
+        writer.writeAttribute("orientation", orientation.name());
+        writer.writeAttribute("width", Integer.toString(width));
+        writer.writeAttribute("height", Integer.toString(height));
+
+        final StringBuilder sb = new StringBuilder();
+
+        for (RunSequence seq : sequences) {
+            writer.writeStartElement(RUNS);
+
+            if ((seq != null) && (seq.rle != null)) {
+                sb.setLength(0);
+
+                for (int i = 0; i < seq.rle.length; i++) {
+                    if (i > 0) {
+                        sb.append(' ');
+                    }
+
+                    sb.append(seq.rle[i]);
+                }
+
+                writer.writeCharacters(sb.toString());
+            }
+
+            writer.writeEndElement();
+        }
+
+        writer.writeEndElement();
+    }
+
     //----------//
     // getWidth //
     //----------//
@@ -1205,6 +1424,36 @@ public class RunTable
         return hash;
     }
 
+    //------------------------//
+    // persistentLongHashCode //
+    //------------------------//
+    /**
+     * Provide a 64-bit hash code value that <b>PERSISTS</b> across application executions and
+     * that depends on every run of the table, so that it can identify the table content.
+     *
+     * @return the persistent content hash code for this run table
+     */
+    public long persistentLongHashCode ()
+    {
+        // FNV-1a on orientation, dimension and all RLE values
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ orientation.ordinal()) * 0x100000001b3L;
+        hash = (hash ^ width) * 0x100000001b3L;
+        hash = (hash ^ height) * 0x100000001b3L;
+
+        for (RunSequence seq : sequences) {
+            if ((seq != null) && (seq.rle != null)) {
+                for (int val : seq.rle) {
+                    hash = (hash ^ val) * 0x100000001b3L;
+                }
+            }
+
+            hash = (hash ^ -1) * 0x100000001b3L; // Sequence separator
+        }
+
+        return hash;
+    }
+
     //-------//
     // purge //
     //-------//
@@ -1705,6 +1954,70 @@ public class RunTable
         }
     }
 
+    //-----------//
+    // parseInts //
+    //-----------//
+    /**
+     * Parse a whitespace-separated list of integers.
+     *
+     * @param text the list text
+     * @return the integer values, perhaps an empty array
+     */
+    private static int[] parseInts (String text)
+    {
+        int[] vals = new int[16];
+        int count = 0;
+        final int length = text.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = text.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+
+                continue;
+            }
+
+            final boolean negative = c == '-';
+
+            if (negative) {
+                i++;
+            }
+
+            int val = 0;
+
+            while ((i < length) && !Character.isWhitespace(c = text.charAt(i))) {
+                if ((c < '0') || (c > '9')) {
+                    throw new NumberFormatException("Illegal run value in " + text);
+                }
+
+                val = (10 * val) + (c - '0');
+                i++;
+            }
+
+            if (count == vals.length) {
+                vals = Arrays.copyOf(vals, 2 * count);
+            }
+
+            vals[count++] = negative ? (-val) : val;
+        }
+
+        return Arrays.copyOf(vals, count);
+    }
+
+    //-----------//
+    // Constants //
+    //-----------//
+    private static class Constants
+            extends ConstantSet
+    {
+
+        private final Constant.Boolean useStreamingXml = new Constant.Boolean(
+                true,
+                "Should we (un)marshal run table files by direct streaming rather than via JAXB?");
+    }
+
     //-------------//
     // RunSequence //
     //-------------//
@@ -74,7 +74,9 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.SortedSet;
@@ -83,7 +85,9 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.ZipOutputStream;
 
 import javax.swing.JFrame;
@@ -132,6 +136,7 @@ import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
  * <li>{@link #setModified}</li>
  * <li>{@link #close}</li>
  * <li>{@link #closeFileSystem}</li>
+ * <li>{@link #closeSheetFolder}</li>
  * <li>{@link #isClosing}</li>
  * <li>{@link #setClosing}</li>
  * <li>{@link #getLock}</li>
@@ -293,6 +298,9 @@ public class Book
     /** Project file lock. */
     private final Lock lock = new ReentrantLock();
 
+    /** Book file access: shared for reading, exclusive for (re-)writing. */
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+
     /** The related file radix (file name without extension). */
     private String radix;
 
@@ -445,6 +453,9 @@ public class Book
             bookBrowser.close();
         }
 
+        // Forget resident sheets
+        SheetResidency.closed(this);
+
         // Remove from OMR instances
         OMR.engine.removeBook(this);
 
@@ -454,6 +465,28 @@ public class Book
         logger.debug("Book closed.");
     }
 
+    //------------------//
+    // closeSheetFolder //
+    //------------------//
+    /**
+     * Close the file system of a sheet folder opened by {@link #openSheetFolder(int)},
+     * unless this folder is a book part on default file system.
+     *
+     * @param path the sheet folder or any path within it
+     * @throws IOException if closing fails
+     */
+    public void closeSheetFolder (Path path)
+            throws IOException
+    {
+        if (path.getFileSystem() != FileSystems.getDefault()) {
+            try {
+                path.getFileSystem().close();
+            } finally {
+                fileLock.readLock().unlock();
+            }
+        }
+    }
+
     //-------------//
     // createStubs //
     //-------------//
@@ -584,9 +617,13 @@ public class Book
      * "xml" depending upon whether compression is used.</li>
      * <li>If we use opus, everything goes into "BOOK.opus.mxl" as a single container file.</li>
      * </ul>
+     *
+     * @return true if all exports succeeded
      */
-    public void export ()
+    public boolean export ()
     {
+        boolean ok = true;
+
         // Make sure material is ready?
         transcribe();
 
@@ -610,6 +647,7 @@ public class Book
                 new OpusExporter(this).export(opusPath, bookName, sig);
             } catch (Exception ex) {
                 logger.warn("Could not export opus " + opusPath, ex);
+                ok = false;
             }
         } else {
             // Export the book as one or several movement files
@@ -622,9 +660,12 @@ public class Book
                     new ScoreExporter(score).export(scorePath, scoreName, sig, compressed);
                 } catch (Exception ex) {
                     logger.warn("Could not export score " + scoreName, ex);
+                    ok = false;
                 }
             }
         }
+
+        return ok;
     }
 
     //----------//
@@ -761,6 +802,22 @@ public class Book
         return path;
     }
 
+    //-------------//
+    // getFileLock //
+    //-------------//
+    /**
+     * Report the lock that protects access to the (zipped) book file.
+     * <p>
+     * Several sheets can read the book file concurrently, while writing the book file (which
+     * rewrites the whole archive) requires exclusive access.
+     *
+     * @return book file read/write lock
+     */
+    public ReadWriteLock getFileLock ()
+    {
+        return fileLock;
+    }
+
     //---------//
     // getLock //
     //---------//
@@ -1258,7 +1315,12 @@ public class Book
     // openSheetFolder //
     //-----------------//
     /**
-     * Open (in the book zipped file) the folder for provided sheet number
+     * Open the folder for provided sheet number, either in book parts if any, or in the book
+     * zipped file.
+     * <p>
+     * The caller is expected to hold the stub {@link SheetStub#getStorageLock() storage lock}.
+     * When IO operations are finished, the folder must be closed via
+     * {@link #closeSheetFolder(java.nio.file.Path)}
      *
      * @param number sheet number (1-based) within the book
      * @return the path to sheet folder
@@ -1267,9 +1329,24 @@ public class Book
     public Path openSheetFolder (int number)
             throws IOException
     {
-        Path root = openBookFile();
+        final Path partsFolder = BookParts.getSheetFolder(
+                (bookPath != null) ? bookPath : BookManager.getDefaultSavePath(this),
+                number);
+
+        if (partsFolder != null) {
+            return partsFolder;
+        }
+
+        fileLock.readLock().lock(); // Released by closeSheetFolder
+
+        try {
+            Path root = openBookFile();
 
-        return root.resolve(INTERNALS_RADIX + number);
+            return root.resolve(INTERNALS_RADIX + number);
+        } catch (IOException | RuntimeException ex) {
+            fileLock.readLock().unlock();
+            throw ex;
+        }
     }
 
     //-------//
@@ -1334,8 +1411,12 @@ public class Book
                 boolean someFailure = false;
                 StepMonitoring.notifyStart();
 
-                if (isMultiSheet() && constants.processAllStubsInParallel.isSet()
+                if (isMultiSheet() && (OMR.gui == null) && constants.pipelineStubs.isSet()
                             && (OmrExecutors.defaultParallelism.getValue() == true)) {
+                    // Process stubs through a bounded pipeline (batch only, sheets get released)
+                    return new StubsPipeline(concernedStubs, target, force).process();
+                } else if (isMultiSheet() && constants.processAllStubsInParallel.isSet()
+                                   && (OmrExecutors.defaultParallelism.getValue() == true)) {
                     // Process all stubs in parallel
                     List<Callable<Boolean>> tasks = new ArrayList<>();
 
@@ -1352,7 +1433,7 @@ public class Book
                                     boolean ok = stub.reachStep(target, force);
 
                                     if (ok && (OMR.gui == null)) {
-                                        stub.swapSheet(); // Save sheet & global book info to disk
+                                        SheetResidency.release(stub);
                                     }
 
                                     return ok;
@@ -1364,7 +1445,7 @@ public class Book
                     }
 
                     try {
-                        List<Future<Boolean>> futures = OmrExecutors.getCachedLowExecutor()
+                        List<Future<Boolean>> futures = OmrExecutors.getBatchExecutor()
                                 .invokeAll(tasks);
 
                         for (Future<Boolean> future : futures) {
@@ -1392,7 +1473,7 @@ public class Book
                         try {
                             if (stub.reachStep(target, force)) {
                                 if (OMR.gui == null) {
-                                    stub.swapSheet(); // Save sheet & global book info to disk
+                                    SheetResidency.release(stub);
                                 }
                             } else {
                                 someFailure = true;
@@ -1415,6 +1496,10 @@ public class Book
 
                 long stopTime = System.currentTimeMillis();
                 logger.debug("End of step set in {} ms.", (stopTime - startTime));
+
+                if (SheetResidency.isEnabled()) {
+                    logger.info("Sheet residency {}", SheetResidency.getMetrics());
+                }
             }
         } catch (ProcessingCancellationException pce) {
             throw pce;
@@ -1523,6 +1608,10 @@ public class Book
     //-------//
     /**
      * Store book to disk.
+     * <p>
+     * Locks are taken in this order: book lock, storage lock of every stub, book file lock.
+     * Sheets to be stored are got (perhaps loaded) beforehand, since loading a sheet needs its
+     * storage lock and then the book file lock.
      *
      * @param bookPath   target path for storing the book
      * @param withBackup if true, rename beforehand any existing target as a backup
@@ -1544,9 +1633,31 @@ public class Book
         }
 
         Path root = null; // Root of the zip file system
+        final List<Lock> storageLocks = new ArrayList<>();
+        boolean fileLocked = false;
 
         try {
             getLock().lock();
+
+            // Get sheets to store, before any storage lock is held
+            final Map<SheetStub, Sheet> sheets = new LinkedHashMap<>();
+
+            for (SheetStub stub : stubs) {
+                if (stub.isModified() || stub.isUpgraded()) {
+                    sheets.put(stub, stub.getSheet());
+                }
+            }
+
+            BookParts.flush(); // Complete pending background writes if any
+
+            for (SheetStub stub : stubs) {
+                final Lock storageLock = stub.getStorageLock();
+                storageLock.lock();
+                storageLocks.add(storageLock);
+            }
+
+            getFileLock().writeLock().lock();
+            fileLocked = true;
             checkRadixChange(bookPath);
             logger.debug("Storing book...");
 
@@ -1559,18 +1670,22 @@ public class Book
                     root = ZipFileSystem.open(bookPath);
                 }
 
+                // Sheets already stored on the fly
+                if (BookParts.compact(bookPath, root)) {
+                    diskWritten = true;
+                }
+
                 if (modified) {
                     storeBookInfo(root); // Book info (book.xml)
                     diskWritten = true;
                 }
 
                 // Contained sheets
-                for (SheetStub stub : stubs) {
-                    if (stub.isModified() || stub.isUpgraded()) {
-                        final Path sheetFolder = root.resolve(INTERNALS_RADIX + stub.getNumber());
-                        stub.getSheet().store(sheetFolder, null);
-                        diskWritten = true;
-                    }
+                for (Map.Entry<SheetStub, Sheet> entry : sheets.entrySet()) {
+                    final int number = entry.getKey().getNumber();
+                    final Path sheetFolder = root.resolve(INTERNALS_RADIX + number);
+                    entry.getValue().store(sheetFolder, null);
+                    diskWritten = true;
                 }
 
                 // Separate repository
@@ -1588,7 +1703,10 @@ public class Book
                 final Path oldRoot = openBookFile(this.bookPath);
 
                 for (SheetStub stub : stubs) {
-                    final Path oldSheetFolder = oldRoot.resolve(INTERNALS_RADIX + stub.getNumber());
+                    final Path oldSheetFolder = getLatestSheetFolder(
+                            oldRoot,
+                            bookPath,
+                            stub.getNumber());
                     final Path sheetFolder = root.resolve(INTERNALS_RADIX + stub.getNumber());
 
                     // By default, copy existing sheet files
@@ -1597,14 +1715,23 @@ public class Book
                     }
 
                     // Update modified sheet files
-                    if (stub.isModified() || stub.isUpgraded()) {
-                        stub.getSheet().store(sheetFolder, oldSheetFolder);
+                    final Sheet sheet = sheets.get(stub);
+
+                    if (sheet != null) {
+                        sheet.store(sheetFolder, oldSheetFolder);
                     }
                 }
 
                 oldRoot.getFileSystem().close(); // Close old book file
+
+                // Parts of old book file now belong to the new book file
+                BookParts.delete(this.bookPath);
             }
 
+            root.getFileSystem().close(); // Rewrite book file
+            root = null;
+            BookParts.delete(bookPath); // Parts now merged into book file
+
             this.bookPath = bookPath;
 
             BookManager.getInstance().getBookHistory().add(bookPath); // Insert in history
@@ -1622,6 +1749,14 @@ public class Book
                 }
             }
 
+            if (fileLocked) {
+                getFileLock().writeLock().unlock();
+            }
+
+            for (int i = storageLocks.size() - 1; i >= 0; i--) {
+                storageLocks.get(i).unlock();
+            }
+
             getLock().unlock();
         }
     }
@@ -2016,6 +2151,35 @@ public class Book
         return least;
     }
 
+    //----------------------//
+    // getLatestSheetFolder //
+    //----------------------//
+    /**
+     * Report the most recent stored version of a sheet folder, looking first in parts of
+     * target book file, then in parts of current book file, and finally in current book file.
+     *
+     * @param oldRoot    root of current book file system
+     * @param targetPath path to target book file
+     * @param number     sheet number
+     * @return the sheet folder to copy from
+     */
+    private Path getLatestSheetFolder (Path oldRoot,
+                                       Path targetPath,
+                                       int number)
+    {
+        Path folder = BookParts.getSheetFolder(targetPath, number);
+
+        if (folder == null) {
+            folder = BookParts.getSheetFolder(bookPath, number);
+        }
+
+        if (folder == null) {
+            folder = oldRoot.resolve(INTERNALS_RADIX + number);
+        }
+
+        return folder;
+    }
+
     //----------//
     // getScore //
     //----------//
@@ -2264,6 +2428,12 @@ public class Book
 
         try {
             logger.info("Loading book {}", bookPath);
+
+            if (BookParts.hasParts(bookPath)) {
+                watch.start("parts");
+                compactParts(bookPath);
+            }
+
             watch.start("book");
 
             // Open book file
@@ -2360,6 +2530,31 @@ public class Book
         return null;
     }
 
+    //--------------//
+    // compactParts //
+    //--------------//
+    /**
+     * Merge into book file the parts left over by a previous session.
+     *
+     * @param bookPath path to book file
+     * @throws IOException if anything goes wrong
+     */
+    private static void compactParts (Path bookPath)
+            throws IOException
+    {
+        logger.info("Merging pending parts into {}", bookPath);
+
+        final Path root = ZipFileSystem.open(bookPath);
+
+        try {
+            BookParts.compact(bookPath, root);
+        } finally {
+            root.getFileSystem().close();
+        }
+
+        BookParts.delete(bookPath);
+    }
+
     //----------------//
     // createBookFile //
     //----------------//
@@ -2422,6 +2617,10 @@ public class Book
                 false,
                 "Should we print out the stop watch for book loading?");
 
+        private final Constant.Boolean pipelineStubs = new Constant.Boolean(
+                true,
+                "Should we process stubs of a book through a bounded pipeline, in batch mode?");
+
         private final Constant.Boolean processAllStubsInParallel = new Constant.Boolean(
                 false,
                 "Should we process all stubs of a book in parallel? (beware of many stubs)");
@@ -0,0 +1,613 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                                       B o o k P a r t s                                        //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.sheet;
+
+import org.audiveris.omr.constant.Constant;
+import org.audiveris.omr.constant.ConstantSet;
+import static org.audiveris.omr.sheet.Sheet.INTERNALS_RADIX;
+import org.audiveris.omr.util.FileUtil;
+import org.audiveris.omr.util.OmrExecutors;
+import org.audiveris.omr.util.ZipFileSystem;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Class {@code BookParts} handles the sheets stored on the fly, while a book is being
+ * processed, as plain files in a "parts" folder located next to the book file.
+ * <p>
+ * Writing into a zipped book file means rewriting the whole archive when the zip file system is
+ * closed, hence storing each sheet in turn would cost a time quadratic in the number of sheets.
+ * Instead, {@link SheetStub#storeSheet()} writes the sheet material (and book.xml) into the parts
+ * folder, the zipped book file being opened only for reading.
+ * <p>
+ * The parts folder is later compacted into the book file, in a single archive rewrite, when the
+ * book is stored via {@link Book#store(java.nio.file.Path, boolean)}.
+ * A parts folder left over (for example by an interrupted batch) is compacted when the book is
+ * loaded.
+ * <p>
+ * Layout of the parts folder, say "Foo.omr.parts" for book file "Foo.omr":
+ * <pre>
+ * Foo.omr.parts/
+ *     book.xml
+ *     sheet#1/
+ *         sheet#1.xml
+ *         BINARY.xml
+ *         ...
+ *     sheet#3/
+ *         ...
+ * </pre>
+ * <p>
+ * Concurrency:
+ * <ul>
+ * <li>Each sheet folder is protected by its stub {@link SheetStub#getStorageLock() storage lock}
+ * rather than by the book lock, so that different sheets can be read and written in parallel.
+ * <li>A storage lock is always taken before the {@link Book#getFileLock() book file lock}, never
+ * the other way round.
+ * <li>Readers locate sheet folders through an immutable snapshot of the sheet numbers present in
+ * parts, replaced (never modified) when a new sheet folder appears.
+ * <li>A sheet being swapped out can be handed to a single background writer thread via
+ * {@link #storeLater}. Pending writes are processed in batches, book.xml being written only
+ * once per batch. Until written, a pending sheet can be {@link #reclaim reclaimed} by its stub.
+ * Once written, the stub is no longer flagged as modified.
+ * </ul>
+ *
+ * @author Hervé Bitteur
+ */
+public abstract class BookParts
+{
+
+    private static final Constants constants = new Constants();
+
+    private static final Logger logger = LoggerFactory.getLogger(BookParts.class);
+
+    /** Suffix appended to book file name to name the parts folder: {@value}. */
+    public static final String PARTS_SUFFIX = ".parts";
+
+    /** Suffix for a sheet folder being initialized. */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** Index of sheet parts, per parts folder. */
+    private static final ConcurrentMap<Path, Index> indexes = new ConcurrentHashMap<>();
+
+    /** Sheets waiting for background storing, per stub. */
+    private static final ConcurrentMap<SheetStub, Pending> pendings = new ConcurrentHashMap<>();
+
+    /** Is a drain task already submitted?. */
+    private static final AtomicBoolean drainSubmitted = new AtomicBoolean();
+
+    /** Task which stores all pending sheets. */
+    private static final Callable<Void> drainTask = new Callable<Void>()
+    {
+        @Override
+        public Void call ()
+                throws Exception
+        {
+            drain();
+
+            return null;
+        }
+    };
+
+    /** Not meant to be instantiated. */
+    private BookParts ()
+    {
+    }
+
+    //---------//
+    // compact //
+    //---------//
+    /**
+     * Copy all the parts, if any, into the provided book file system.
+     * <p>
+     * Any sheet folder present in parts replaces the same sheet folder in book file.
+     * The parts folder itself is not deleted, since the book file system is not yet closed,
+     * see {@link #delete(Path)}.
+     *
+     * @param bookPath path to book file
+     * @param root     root of the (zipped) book file system, opened for writing
+     * @return true if some parts were copied
+     * @throws IOException if anything goes wrong
+     */
+    public static boolean compact (Path bookPath,
+                                   Path root)
+            throws IOException
+    {
+        final Path folder = getFolder(bookPath);
+
+        if ((folder == null) || !Files.isDirectory(folder)) {
+            return false;
+        }
+
+        int count = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path part : stream) {
+                final String name = part.getFileName().toString();
+
+                if (name.equals(Book.BOOK_INTERNALS)) {
+                    Files.copy(
+                            part,
+                            root.resolve(Book.BOOK_INTERNALS),
+                            StandardCopyOption.REPLACE_EXISTING);
+                } else if (name.startsWith(INTERNALS_RADIX) && Files.isDirectory(part)
+                           && !name.endsWith(TMP_SUFFIX)) {
+                    final Path target = root.resolve(name);
+
+                    if (Files.exists(target)) {
+                        FileUtil.deleteDirectory(target);
+                    }
+
+                    FileUtil.copyTree(part, target);
+                    count++;
+                }
+            }
+        }
+
+        logger.info("Compacted {} sheet part(s) from {}", count, folder);
+
+        return true;
+    }
+
+    //--------//
+    // delete //
+    //--------//
+    /**
+     * Delete the parts folder, if any, of the provided book file.
+     *
+     * @param bookPath path to book file
+     */
+    public static void delete (Path bookPath)
+    {
+        final Path folder = getFolder(bookPath);
+
+        if (folder == null) {
+            return;
+        }
+
+        indexes.remove(folder);
+
+        if (Files.exists(folder)) {
+            try {
+                FileUtil.deleteDirectory(folder);
+                logger.debug("Deleted {}", folder);
+            } catch (IOException ex) {
+                logger.warn("Could not delete {} {}", folder, ex.toString(), ex);
+            }
+        }
+    }
+
+    //-----------//
+    // getFolder //
+    //-----------//
+    /**
+     * Report the path to parts folder for the provided book file.
+     *
+     * @param bookPath path to book file
+     * @return path to parts folder, perhaps not existing, or null if bookPath is null
+     */
+    public static Path getFolder (Path bookPath)
+    {
+        if (bookPath == null) {
+            return null;
+        }
+
+        return bookPath.resolveSibling(bookPath.getFileName() + PARTS_SUFFIX);
+    }
+
+    //----------------//
+    // getSheetFolder //
+    //----------------//
+    /**
+     * Report the parts folder of a sheet, if any.
+     *
+     * @param bookPath path to book file
+     * @param number   sheet number within book
+     * @return the existing sheet folder in parts, or null
+     */
+    public static Path getSheetFolder (Path bookPath,
+                                       int number)
+    {
+        final Path folder = getFolder(bookPath);
+
+        if ((folder == null) || !getIndex(folder).numbers.contains(number)) {
+            return null;
+        }
+
+        return folder.resolve(INTERNALS_RADIX + number);
+    }
+
+    //-------//
+    // flush //
+    //-------//
+    /**
+     * Wait until all pending sheets have been stored.
+     */
+    public static void flush ()
+    {
+        if (pendings.isEmpty()) {
+            return;
+        }
+
+        try {
+            OmrExecutors.getWriterExecutor().submit(drainTask).get();
+        } catch (InterruptedException ex) {
+            logger.warn("Interrupted while flushing sheet parts");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            logger.warn("Error flushing sheet parts {}", ex.toString(), ex);
+        }
+    }
+
+    //----------//
+    // hasParts //
+    //----------//
+    /**
+     * Tell whether the provided book file has pending parts.
+     *
+     * @param bookPath path to book file
+     * @return true if a parts folder exists
+     */
+    public static boolean hasParts (Path bookPath)
+    {
+        final Path folder = getFolder(bookPath);
+
+        return (folder != null) && Files.isDirectory(folder);
+    }
+
+    //---------//
+    // reclaim //
+    //---------//
+    /**
+     * Take back the sheet, if any, which is waiting for background storing.
+     * <p>
+     * If the sheet is currently being written, this method waits for write completion.
+     * In any case, the sheet will no longer be written by the background writer.
+     *
+     * @param stub the sheet stub
+     * @return the pending sheet, or null
+     */
+    public static Sheet reclaim (SheetStub stub)
+    {
+        final Pending pending = pendings.get(stub);
+
+        if (pending == null) {
+            return null;
+        }
+
+        final Lock lock = stub.getStorageLock();
+        lock.lock();
+
+        try {
+            pendings.remove(stub, pending);
+            logger.debug("{} reclaimed", pending.sheet);
+
+            return pending.sheet;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //------------//
+    // storeLater //
+    //------------//
+    /**
+     * Hand the provided sheet to the background writer.
+     * <p>
+     * The caller is expected to no longer use this sheet instance, except via {@link #reclaim}.
+     *
+     * @param sheet    the sheet to store
+     * @param bookPath path to book file
+     */
+    public static void storeLater (Sheet sheet,
+                                   Path bookPath)
+    {
+        pendings.put(sheet.getStub(), new Pending(sheet, bookPath));
+
+        if (drainSubmitted.compareAndSet(false, true)) {
+            OmrExecutors.getWriterExecutor().submit(drainTask);
+        }
+    }
+
+    //------------//
+    // storeSheet //
+    //------------//
+    /**
+     * Store the book information and the provided sheet into the parts folder.
+     * <p>
+     * The caller must hold the stub storage lock.
+     *
+     * @param book     the containing book
+     * @param sheet    the sheet to store
+     * @param bookPath path to book file
+     * @throws Exception if anything goes wrong
+     */
+    public static void storeSheet (Book book,
+                                   Sheet sheet,
+                                   Path bookPath)
+            throws Exception
+    {
+        writeSheet(book, sheet, bookPath);
+        writeBookInfo(book, bookPath);
+    }
+
+    //---------------------//
+    // useBackgroundWriter //
+    //---------------------//
+    /**
+     * Tell whether swapped sheets are stored by the background writer.
+     *
+     * @return true if so
+     */
+    public static boolean useBackgroundWriter ()
+    {
+        return useParts() && constants.useBackgroundWriter.isSet();
+    }
+
+    //----------//
+    // useParts //
+    //----------//
+    /**
+     * Tell whether sheets stored on the fly go to parts folder rather than book file.
+     *
+     * @return true if so
+     */
+    public static boolean useParts ()
+    {
+        return constants.useParts.isSet();
+    }
+
+    //-------//
+    // drain //
+    //-------//
+    /**
+     * Store all pending sheets, writing book information once per book.
+     */
+    private static void drain ()
+    {
+        drainSubmitted.set(false);
+
+        final Map<Book, Path> books = new LinkedHashMap<>();
+
+        for (Entry<SheetStub, Pending> entry : pendings.entrySet()) {
+            final SheetStub stub = entry.getKey();
+            final Pending pending = entry.getValue();
+            final Lock lock = stub.getStorageLock();
+            lock.lock();
+
+            try {
+                // Sheet may have been reclaimed meanwhile
+                if (pendings.get(stub) == pending) {
+                    writeSheet(stub.getBook(), pending.sheet, pending.bookPath);
+                    pendings.remove(stub, pending);
+                    books.put(stub.getBook(), pending.bookPath);
+                }
+            } catch (Exception ex) {
+                // Sheet is kept pending, to be reclaimed or written by a later drain
+                logger.warn("Error storing {} {}", pending.sheet, ex.toString(), ex);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        for (Entry<Book, Path> entry : books.entrySet()) {
+            final Book book = entry.getKey();
+
+            try {
+                writeBookInfo(book, entry.getValue());
+            } catch (Exception ex) {
+                logger.warn("Error storing {} info {}", book, ex.toString(), ex);
+            }
+        }
+    }
+
+    //----------//
+    // getIndex //
+    //----------//
+    private static Index getIndex (Path folder)
+    {
+        Index index = indexes.get(folder);
+
+        if (index == null) {
+            final Index newIndex = new Index(folder);
+            index = indexes.putIfAbsent(folder, newIndex);
+
+            if (index == null) {
+                index = newIndex;
+            }
+        }
+
+        return index;
+    }
+
+    //---------------//
+    // writeBookInfo //
+    //---------------//
+    private static void writeBookInfo (Book book,
+                                       Path bookPath)
+            throws Exception
+    {
+        final Path folder = getFolder(bookPath);
+
+        synchronized (getIndex(folder)) {
+            Files.createDirectories(folder);
+            book.storeBookInfo(folder); // Book info (book.xml)
+        }
+    }
+
+    //------------//
+    // writeSheet //
+    //------------//
+    /**
+     * Store the provided sheet into the parts folder.
+     * <p>
+     * The first time a sheet is stored into parts, its existing folder in book file (if any) is
+     * copied beforehand, so that the unmodified tables are kept.
+     */
+    private static void writeSheet (Book book,
+                                    Sheet sheet,
+                                    Path bookPath)
+            throws Exception
+    {
+        final Path folder = getFolder(bookPath);
+        final Index index = getIndex(folder);
+        final int number = sheet.getStub().getNumber();
+        final Path sheetFolder = folder.resolve(INTERNALS_RADIX + number);
+
+        if (!index.numbers.contains(number)) {
+            Files.createDirectories(folder);
+
+            if (Files.exists(bookPath)) {
+                // Initialize sheet part with sheet content from book file (just read)
+                book.getFileLock().readLock().lock();
+
+                try {
+                    final Path root = ZipFileSystem.open(bookPath);
+
+                    try {
+                        final Path oldSheetFolder = root.resolve(INTERNALS_RADIX + number);
+
+                        if (Files.exists(oldSheetFolder)) {
+                            final Path tmpFolder = folder.resolve(
+                                    INTERNALS_RADIX + number + TMP_SUFFIX);
+
+                            if (Files.exists(tmpFolder)) {
+                                FileUtil.deleteDirectory(tmpFolder);
+                            }
+
+                            FileUtil.copyTree(oldSheetFolder, tmpFolder);
+                            Files.move(tmpFolder, sheetFolder, StandardCopyOption.ATOMIC_MOVE);
+                        }
+                    } finally {
+                        root.getFileSystem().close();
+                    }
+                } finally {
+                    book.getFileLock().readLock().unlock();
+                }
+            }
+        }
+
+        if (!sheet.store(sheetFolder, null)) {
+            throw new IOException("Could not store " + sheet);
+        }
+
+        index.add(number);
+    }
+
+    //-----------//
+    // Constants //
+    //-----------//
+    private static class Constants
+            extends ConstantSet
+    {
+
+        private final Constant.Boolean useParts = new Constant.Boolean(
+                true,
+                "Should sheets stored on the fly go to a parts folder, compacted on book store?");
+
+        private final Constant.Boolean useBackgroundWriter = new Constant.Boolean(
+                true,
+                "Should swapped sheets be stored by a background writer thread?");
+    }
+
+    //-------//
+    // Index //
+    //-------//
+    /**
+     * Snapshot of sheet numbers present in a parts folder.
+     */
+    private static class Index
+    {
+
+        /** Immutable set of sheet numbers, replaced on each addition. */
+        private volatile Set<Integer> numbers;
+
+        Index (Path folder)
+        {
+            final Set<Integer> set = new TreeSet<>();
+
+            if (Files.isDirectory(folder)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+                    for (Path part : stream) {
+                        final String name = part.getFileName().toString();
+
+                        if (name.startsWith(INTERNALS_RADIX) && !name.endsWith(TMP_SUFFIX)) {
+                            set.add(Integer.decode(name.substring(INTERNALS_RADIX.length())));
+                        }
+                    }
+                } catch (IOException | NumberFormatException ex) {
+                    logger.warn("Error indexing {} {}", folder, ex.toString(), ex);
+                }
+            }
+
+            numbers = Collections.unmodifiableSet(set);
+        }
+
+        public synchronized void add (int number)
+        {
+            if (!numbers.contains(number)) {
+                final Set<Integer> set = new TreeSet<>(numbers);
+                set.add(number);
+                numbers = Collections.unmodifiableSet(set);
+            }
+        }
+    }
+
+    //---------//
+    // Pending //
+    //---------//
+    /**
+     * A sheet waiting for background storing.
+     */
+    private static class Pending
+    {
+
+        final Sheet sheet;
+
+        final Path bookPath;
+
+        Pending (Sheet sheet,
+                 Path bookPath)
+        {
+            this.sheet = sheet;
+            this.bookPath = bookPath;
+        }
+    }
+}
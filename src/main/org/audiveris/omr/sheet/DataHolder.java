@@ -104,32 +104,39 @@ public class DataHolder<T>
     public T getData ()
     {
         if (data == null) {
-            final Book book = sheet.getStub().getBook();
+            final SheetStub stub = sheet.getStub();
+            final Book book = stub.getBook();
 
             try {
-                book.getLock().lock();
+                stub.getStorageLock().lock();
 
                 if (data == null) {
                     JAXBContext jaxbContext = JAXBContext.newInstance(classe);
                     Unmarshaller um = jaxbContext.createUnmarshaller();
 
                     // Open book file system
-                    Path dataFile = book.openSheetFolder(sheet.getStub().getNumber()).resolve(
-                            pathString);
-                    logger.debug("path: {}", dataFile);
+                    Path dataFolder = book.openSheetFolder(stub.getNumber());
 
-                    try (InputStream is = Files.newInputStream(dataFile, StandardOpenOption.READ)) {
-                        data = (T) um.unmarshal(is);
-                    }
+                    try {
+                        Path dataFile = dataFolder.resolve(pathString);
+                        logger.debug("path: {}", dataFile);
+
+                        try (InputStream is = Files.newInputStream(
+                                dataFile,
+                                StandardOpenOption.READ)) {
+                            data = (T) um.unmarshal(is);
+                        }
 
-                    logger.info("Loaded {}", dataFile);
-                    dataFile.getFileSystem().close(); // Close book file system
+                        logger.info("Loaded {}", dataFile);
+                    } finally {
+                        book.closeSheetFolder(dataFolder); // Close book file system
+                    }
                 }
             } catch (IOException |
                      JAXBException ex) {
                 logger.warn("Error unmarshalling from {}", pathString, ex);
             } finally {
-                book.getLock().unlock();
+                stub.getStorageLock().unlock();
             }
         }
 
@@ -56,6 +56,7 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
 import java.awt.image.SampleModel;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
@@ -382,6 +383,42 @@ public class Picture
         }
     }
 
+    //--------------//
+    // getFootprint //
+    //--------------//
+    /**
+     * Report an estimate of the heap space used by the picture tables and images currently
+     * in memory.
+     *
+     * @return estimated size in bytes
+     */
+    public long getFootprint ()
+    {
+        long bytes = 0;
+
+        for (RunTableHolder holder : tables.values()) {
+            if (holder.hasData()) {
+                bytes += holder.getData(sheet.getStub()).getFootprint();
+            }
+        }
+
+        for (WeakReference<ByteProcessor> ref : sources.values()) {
+            final ByteProcessor source = ref.get();
+
+            if (source != null) {
+                bytes += (long) source.getWidth() * source.getHeight();
+            }
+        }
+
+        if (initialImage != null) {
+            final DataBuffer buffer = initialImage.getRaster().getDataBuffer();
+            bytes += ((long) buffer.getSize() * DataBuffer.getDataTypeSize(buffer.getDataType()))
+                     / 8;
+        }
+
+        return bytes;
+    }
+
     //-----------//
     // getHeight //
     //-----------//
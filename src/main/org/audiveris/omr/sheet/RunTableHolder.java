@@ -83,23 +83,29 @@ public class RunTableHolder
     public RunTable getData (SheetStub stub)
     {
         if (data == null) {
+            final Book book = stub.getBook();
+
             try {
-                stub.getBook().getLock().lock();
+                stub.getStorageLock().lock();
 
                 if (data == null) {
                     // Open book file system
-                    Path dataFolder = stub.getBook().openSheetFolder(stub.getNumber());
-                    Path dataFile = dataFolder.resolve(pathString);
-                    logger.debug("path to file: {}", dataFile);
-                    data = RunTable.unmarshal(dataFile);
-                    dataFile.getFileSystem().close(); // Close book file system
-                    modified = false;
-                    logger.debug("Loaded {}", dataFile);
+                    Path dataFolder = book.openSheetFolder(stub.getNumber());
+
+                    try {
+                        Path dataFile = dataFolder.resolve(pathString);
+                        logger.debug("path to file: {}", dataFile);
+                        data = RunTable.unmarshal(dataFile);
+                        modified = false;
+                        logger.debug("Loaded {}", dataFile);
+                    } finally {
+                        book.closeSheetFolder(dataFolder); // Close book file system
+                    }
                 }
             } catch (IOException ex) {
                 logger.warn("Error unmarshalling from {}", pathString, ex);
             } finally {
-                stub.getBook().getLock().unlock();
+                stub.getStorageLock().unlock();
             }
         }
 
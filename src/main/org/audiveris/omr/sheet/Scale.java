@@ -122,6 +122,10 @@ public class Scale
     @XmlElement(name = "small-staff")
     private Scale smallScale;
 
+    /** How scale was estimated, if known. */
+    @XmlElement(name = "estimation")
+    private Estimation estimation;
+
     /**
      * Create a Scale object, meant for a whole sheet.
      *
@@ -238,6 +242,32 @@ public class Scale
         this.blackHeadScale = blackHeadScale;
     }
 
+    //---------------//
+    // getEstimation //
+    //---------------//
+    /**
+     * Report how the scale was estimated.
+     *
+     * @return the estimation information, perhaps null
+     */
+    public Estimation getEstimation ()
+    {
+        return estimation;
+    }
+
+    //---------------//
+    // setEstimation //
+    //---------------//
+    /**
+     * Remember how the scale was estimated.
+     *
+     * @param estimation the estimation information
+     */
+    public void setEstimation (Estimation estimation)
+    {
+        this.estimation = estimation;
+    }
+
     //---------//
     // getFore //
     //---------//
@@ -820,6 +850,10 @@ public class Scale
             if (musicFontScale != null) {
                 sb.append(" ").append(musicFontScale);
             }
+
+            if (estimation != null) {
+                sb.append(" ").append(estimation);
+            }
         }
 
         if (smallScale != null) {
@@ -1134,6 +1168,127 @@ public class Scale
         }
     }
 
+    //------------//
+    // Estimation //
+    //------------//
+    /**
+     * Class {@code Estimation} records how the scale histograms were populated, either
+     * on all sheet columns or on a sample of them.
+     * <p>
+     * For a sample, the maximum gaps observed between peaks of half samples give an indication
+     * of estimation confidence.
+     */
+    @XmlAccessorType(XmlAccessType.NONE)
+    public static class Estimation
+    {
+
+        /** True if estimated on a sample of columns. */
+        @XmlAttribute(name = "sampled")
+        final boolean sampled;
+
+        /** Number of columns processed. */
+        @XmlAttribute(name = "columns")
+        final int columns;
+
+        /** Maximum gap between sample line thickness peaks, if sampled. */
+        @XmlAttribute(name = "line-gap")
+        final Integer lineGap;
+
+        /** Maximum gap between sample interline peaks, if sampled. */
+        @XmlAttribute(name = "interline-gap")
+        final Integer interlineGap;
+
+        /**
+         * Creates an {@code Estimation} object, for all columns.
+         *
+         * @param columns number of columns processed
+         */
+        public Estimation (int columns)
+        {
+            this.sampled = false;
+            this.columns = columns;
+            this.lineGap = null;
+            this.interlineGap = null;
+        }
+
+        /**
+         * Creates an {@code Estimation} object, for a sample of columns.
+         *
+         * @param columns      number of columns in sample
+         * @param lineGap      maximum gap between line thickness peaks
+         * @param interlineGap maximum gap between interline peaks
+         */
+        public Estimation (int columns,
+                           int lineGap,
+                           int interlineGap)
+        {
+            this.sampled = true;
+            this.columns = columns;
+            this.lineGap = lineGap;
+            this.interlineGap = interlineGap;
+        }
+
+        /**
+         * No-arg constructor needed for JAXB.
+         */
+        private Estimation ()
+        {
+            this.sampled = false;
+            this.columns = 0;
+            this.lineGap = null;
+            this.interlineGap = null;
+        }
+
+        /**
+         * @return the number of columns processed
+         */
+        public int getColumns ()
+        {
+            return columns;
+        }
+
+        /**
+         * @return the interline gap, null if not sampled
+         */
+        public Integer getInterlineGap ()
+        {
+            return interlineGap;
+        }
+
+        /**
+         * @return the line gap, null if not sampled
+         */
+        public Integer getLineGap ()
+        {
+            return lineGap;
+        }
+
+        /**
+         * @return true if estimated on a sample
+         */
+        public boolean isSampled ()
+        {
+            return sampled;
+        }
+
+        @Override
+        public String toString ()
+        {
+            StringBuilder sb = new StringBuilder("estimation(");
+            sb.append(sampled ? "sampled" : "full");
+            sb.append(" columns:").append(columns);
+
+            if (sampled) {
+                sb.append(" lineGap:").append(lineGap);
+                sb.append(" interlineGap:").append(interlineGap);
+            }
+
+            sb.append(')');
+
+            return sb.toString();
+        }
+    }
+
     //----------//
     // Fraction //
     //----------//
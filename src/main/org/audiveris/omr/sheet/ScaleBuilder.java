@@ -21,6 +21,7 @@
 // </editor-fold>
 package org.audiveris.omr.sheet;
 
+import org.audiveris.omr.OMR;
 import static org.audiveris.omr.WellKnowns.LINE_SEPARATOR;
 import org.audiveris.omr.constant.Constant;
 import org.audiveris.omr.constant.ConstantSet;
@@ -31,18 +32,24 @@ import org.audiveris.omr.math.Range;
 import org.audiveris.omr.run.Run;
 import org.audiveris.omr.run.RunTable;
 import org.audiveris.omr.sheet.Scale.BeamScale;
+import org.audiveris.omr.sheet.Scale.Estimation;
 import org.audiveris.omr.sheet.Scale.InterlineScale;
 import org.audiveris.omr.sheet.Scale.LineScale;
 import org.audiveris.omr.step.StepException;
 import org.audiveris.omr.util.ChartPlotter;
+import org.audiveris.omr.util.ForkedTasks;
 import org.audiveris.omr.util.Navigable;
+import org.audiveris.omr.util.OmrExecutors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.Point;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
 
 /**
  * Class {@code ScaleBuilder} computes the global scale of a given sheet by processing
@@ -56,6 +63,12 @@ import java.util.List;
  * And similarly, a second combo peak may indicate a series of staves with a different interline
  * than the main series.
  * <p>
+ * In batch mode, histograms are first estimated on a stratified sample of columns (see
+ * {@link #sampleHistograms}), and computed on all columns only if the sample is not reliable
+ * enough.
+ * In interactive mode, they are always computed on all columns.
+ * The path taken is recorded in the resulting {@link Scale}.
+ * <p>
  * Internally, additional validity checks are performed:
  * <ol>
  * <li>If we cannot retrieve black peak, we decide that the sheet does not contain significant
@@ -150,6 +163,25 @@ public class ScaleBuilder
         return doRetrieveScale(false);
     }
 
+    //------------//
+    // allColumns //
+    //------------//
+    /**
+     * Report the abscissae of all sheet columns.
+     *
+     * @return all columns
+     */
+    private int[] allColumns ()
+    {
+        final int[] columns = new int[binary.getWidth()];
+
+        for (int x = 0; x < columns.length; x++) {
+            columns[x] = x;
+        }
+
+        return columns;
+    }
+
     //-----------------//
     // checkResolution //
     //-----------------//
@@ -281,13 +313,22 @@ public class ScaleBuilder
             throws StepException
     {
         binary = sheet.getPicture().getTable(Picture.TableKey.BINARY);
-        histoKeeper = new HistoKeeper();
+        histoKeeper = ((OMR.gui == null) && constants.useSampling.isSet()) ? sampleHistograms()
+                : null;
 
-        histoKeeper.buildBlacks();
-        histoKeeper.retrieveLinePeak(); // -> blackPeak (or StepException thrown)
+        if (histoKeeper != null) {
+            // Histograms are already populated on sample
+            histoKeeper.retrieveLinePeak(); // -> blackPeak (or StepException thrown)
+            histoKeeper.retrieveInterlinePeaks(); // -> comboPeak (or StepException), comboPeak2?
+        } else {
+            histoKeeper = new HistoKeeper(allColumns());
 
-        histoKeeper.buildCombos();
-        histoKeeper.retrieveInterlinePeaks(); // -> comboPeak (or StepException thrown), comboPeak2?
+            histoKeeper.buildBlacks();
+            histoKeeper.retrieveLinePeak(); // -> blackPeak (or StepException thrown)
+
+            histoKeeper.buildCombos();
+            histoKeeper.retrieveInterlinePeaks(); // -> comboPeak (or StepException), comboPeak2?
+        }
 
         if (dummy) {
             computeBeam(); // Just for the chart
@@ -326,6 +367,9 @@ public class ScaleBuilder
                     smallScale);
         }
 
+        scale.setEstimation(histoKeeper.estimation);
+        logger.debug("Scale estimation: {}", histoKeeper.estimation);
+
         return scale;
     }
 
@@ -348,6 +392,151 @@ public class ScaleBuilder
         return mainCombo;
     }
 
+    //------------------//
+    // sampleHistograms //
+    //------------------//
+    /**
+     * Try to populate histograms on a stratified sample of columns only.
+     * <p>
+     * Sheet width is split into strata of equal width, and one column is randomly picked in each
+     * stratum.
+     * Strata are alternately assigned to two half-samples, whose peaks (main value and range
+     * bounds) must agree with one another and with the peaks of the whole sample, otherwise the
+     * sample is not considered as reliable.
+     * This covers the second interline peak, if any.
+     * The maximum gap between these peaks is kept as a measure of estimation confidence.
+     *
+     * @return the histograms on whole sample, or null if sampling is not relevant or not reliable
+     */
+    private HistoKeeper sampleHistograms ()
+    {
+        final int width = binary.getWidth();
+        final int step = (int) Math.rint(1 / constants.sampleRatio.getValue());
+        final int strata = width / Math.max(1, step);
+
+        if ((step < 2) || (strata < (2 * constants.minHalfSampleColumns.getValue()))) {
+            return null; // Sampling not relevant
+        }
+
+        // Stratified sample, split in two halves
+        final Random random = new Random(width); // Reproducible sample
+        final int[] columns = new int[strata];
+        final int[][] halfColumns = new int[][]{new int[(strata + 1) / 2], new int[strata / 2]};
+
+        for (int s = 0; s < strata; s++) {
+            columns[s] = (s * step) + random.nextInt(step);
+            halfColumns[s % 2][s / 2] = columns[s];
+        }
+
+        final HistoKeeper keeper = new HistoKeeper(columns);
+        final HistoKeeper[] halves = new HistoKeeper[]{
+            new HistoKeeper(halfColumns[0]),
+            new HistoKeeper(halfColumns[1])};
+
+        // Blacks
+        for (HistoKeeper half : halves) {
+            half.buildBlacks();
+
+            if (half.blackFunction.getArea() < constants.minHalfSampleRuns.getValue()) {
+                logger.debug("Scale sample: too few runs");
+
+                return null;
+            }
+
+            keeper.blackFunction.include(half.blackFunction);
+        }
+
+        final Range[] blacks = new Range[]{
+            keeper.findBlackPeak(),
+            halves[0].findBlackPeak(),
+            halves[1].findBlackPeak()};
+        final Integer lineGap = maxGap(blacks);
+
+        if ((lineGap == null) || (lineGap > constants.maxLineGap.getValue())) {
+            logger.debug("Scale sample: unreliable line peaks");
+
+            return null;
+        }
+
+        blackPeak = blacks[0]; // Needed for combos
+
+        // Combos
+        for (HistoKeeper half : halves) {
+            half.buildCombos();
+            keeper.comboFunction.include(half.comboFunction);
+        }
+
+        final List<Range> allCombos = keeper.findComboPeaks();
+        final List<Range> combos0 = halves[0].findComboPeaks();
+        final List<Range> combos1 = halves[1].findComboPeaks();
+
+        if (allCombos.isEmpty() || combos0.isEmpty() || combos1.isEmpty()) {
+            logger.debug("Scale sample: missing interline peak");
+
+            return null;
+        }
+
+        // Halves must agree on the presence of a second interline peak
+        final int count = Math.min(2, allCombos.size());
+
+        if ((Math.min(2, combos0.size()) != count) || (Math.min(2, combos1.size()) != count)) {
+            logger.debug("Scale sample: unreliable second interline peak");
+
+            return null;
+        }
+
+        int interlineGap = 0;
+
+        for (int i = 0; i < count; i++) {
+            interlineGap = Math.max(
+                    interlineGap,
+                    maxGap(new Range[]{allCombos.get(i), combos0.get(i), combos1.get(i)}));
+        }
+
+        if (interlineGap > constants.maxInterlineGap.getValue()) {
+            logger.debug("Scale sample: unreliable interline peaks");
+
+            return null;
+        }
+
+        keeper.estimation = new Estimation(columns.length, lineGap, interlineGap);
+
+        return keeper;
+    }
+
+    //--------//
+    // maxGap //
+    //--------//
+    /**
+     * Report the maximum gap between provided peaks, on their min, main and max values.
+     * <p>
+     * Range bounds are compared as well as main values, since they feed the scale
+     * (for example line thickness min and max).
+     *
+     * @param peaks the peaks to compare
+     * @return the maximum gap, or null if any peak is null
+     */
+    private static Integer maxGap (Range[] peaks)
+    {
+        for (Range peak : peaks) {
+            if (peak == null) {
+                return null;
+            }
+        }
+
+        int gap = 0;
+
+        for (Range peak : peaks) {
+            for (Range other : peaks) {
+                gap = Math.max(gap, Math.abs(peak.min - other.min));
+                gap = Math.max(gap, Math.abs(peak.main - other.main));
+                gap = Math.max(gap, Math.abs(peak.max - other.max));
+            }
+        }
+
+        return gap;
+    }
+
     //-------------//
     // HistoKeeper //
     //-------------//
@@ -359,6 +548,9 @@ public class ScaleBuilder
     private class HistoKeeper
     {
 
+        // Abscissae of columns to process
+        final int[] columns;
+
         // Upper bounds for run lengths (assuming sheet height >= staff height)
         final int maxBlack;
 
@@ -372,8 +564,14 @@ public class ScaleBuilder
 
         final HiLoPeakFinder comboFinder;
 
-        HistoKeeper ()
+        // How histograms were populated
+        Estimation estimation;
+
+        HistoKeeper (int[] columns)
         {
+            this.columns = columns;
+            estimation = new Estimation(columns.length);
+
             // We assume at least one staff in sheet, hence some maximum values for relevant white
             // and black runs.
             maxBlack = binary.getHeight() / 16;
@@ -400,15 +598,21 @@ public class ScaleBuilder
          */
         public void buildBlacks ()
         {
-            for (int x = 0, width = binary.getWidth(); x < width; x++) {
-                for (Iterator<Run> it = binary.iterator(x); it.hasNext();) {
-                    int black = it.next().getLength();
-
-                    if (black <= maxBlack) {
-                        blackFunction.addValue(black, 1);
+            populate(blackFunction, new ColumnScanner()
+            {
+                @Override
+                public void scan (int x,
+                                  IntegerFunction function)
+                {
+                    for (Iterator<Run> it = binary.iterator(x); it.hasNext();) {
+                        int black = it.next().getLength();
+
+                        if (black <= maxBlack) {
+                            function.addValue(black, 1);
+                        }
                     }
                 }
-            }
+            });
 
             if (logger.isDebugEnabled()) {
                 blackFunction.print(System.out);
@@ -429,38 +633,44 @@ public class ScaleBuilder
          */
         public void buildCombos ()
         {
-            for (int x = 0, width = binary.getWidth(); x < width; x++) {
-                int yLast = 0; // Ordinate of first pixel not yet processed
-                int lastBlack = 0; // Length of last valid black run
-
-                for (Iterator<Run> it = binary.iterator(x); it.hasNext();) {
-                    Run run = it.next();
-                    final int y = run.getStart();
-                    final int black = run.getLength();
-
-                    if ((black < blackPeak.min) || (black > blackPeak.max)) {
-                        lastBlack = 0;
-                    } else {
-                        if (y > yLast) {
-                            // Process the white run before this black run
-                            int white = y - yLast;
-
-                            // A white run between valid black runs?: B1, W, B2
-                            // Combo 1 is defined as B1 + W, that is [-----]
-                            // Combo 2 is defined as W + B2, that is     [-----]
-                            // combo1 + combo2 = 2 * (1/2 * B1 + W + 1/2 * B2) = 2 * combo
-                            if ((white <= maxWhite) && (lastBlack != 0)) {
-                                comboFunction.addValue(lastBlack + white, 1); // B1 + W
-                                comboFunction.addValue(white + black, 1); // W + B2
+            populate(comboFunction, new ColumnScanner()
+            {
+                @Override
+                public void scan (int x,
+                                  IntegerFunction function)
+                {
+                    int yLast = 0; // Ordinate of first pixel not yet processed
+                    int lastBlack = 0; // Length of last valid black run
+
+                    for (Iterator<Run> it = binary.iterator(x); it.hasNext();) {
+                        Run run = it.next();
+                        final int y = run.getStart();
+                        final int black = run.getLength();
+
+                        if ((black < blackPeak.min) || (black > blackPeak.max)) {
+                            lastBlack = 0;
+                        } else {
+                            if (y > yLast) {
+                                // Process the white run before this black run
+                                int white = y - yLast;
+
+                                // A white run between valid black runs?: B1, W, B2
+                                // Combo 1 is defined as B1 + W, that is [-----]
+                                // Combo 2 is defined as W + B2, that is     [-----]
+                                // combo1 + combo2 = 2 * (1/2 * B1 + W + 1/2 * B2) = 2 * combo
+                                if ((white <= maxWhite) && (lastBlack != 0)) {
+                                    function.addValue(lastBlack + white, 1); // B1 + W
+                                    function.addValue(white + black, 1); // W + B2
+                                }
                             }
+
+                            lastBlack = black;
                         }
 
-                        lastBlack = black;
+                        yLast = y + black;
                     }
-
-                    yLast = y + black;
                 }
-            }
+            });
 
             if (logger.isDebugEnabled()) {
                 comboFunction.print(System.out);
@@ -518,11 +728,7 @@ public class ScaleBuilder
                 throws StepException
         {
             // Combo peak(s)
-            final int area = comboFunction.getArea();
-            final List<Range> comboPeaks = comboFinder.findPeaks(
-                    1,
-                    (int) Math.rint(area * constants.minDerivativeRatio.getValue()),
-                    constants.minGainRatio.getValue());
+            final List<Range> comboPeaks = findComboPeaks();
 
             if (comboPeaks.isEmpty()) {
                 sheet.getStub().invalidate();
@@ -573,19 +779,15 @@ public class ScaleBuilder
             // Check we have enough foreground material. If not, throw StepException
             checkBlack();
 
-            // Black peaks
-            final int area = blackFunction.getArea();
-            final List<Range> blackPeaks = blackFinder.findPeaks(
-                    1,
-                    (int) Math.rint(area * constants.minDerivativeRatio.getValue()),
-                    constants.minGainRatio.getValue());
+            // Black peak
+            final Range peak = findBlackPeak();
 
-            if (blackPeaks.isEmpty()) {
+            if (peak == null) {
                 sheet.getStub().invalidate();
                 throw new StepException("No significant black lines found");
             }
 
-            blackPeak = blackPeaks.get(0);
+            blackPeak = peak;
             logger.debug("blackPeak: {}", blackPeak);
         }
 
@@ -646,7 +848,7 @@ public class ScaleBuilder
                 throws StepException
         {
             final int blackCount = getBlackCount();
-            final int size = binary.getWidth() * binary.getHeight();
+            final int size = columns.length * binary.getHeight();
             final double blackRatio = (double) blackCount / size;
             logger.debug("blackRatio: {}", blackRatio);
 
@@ -661,6 +863,43 @@ public class ScaleBuilder
             }
         }
 
+        //---------------//
+        // findBlackPeak //
+        //---------------//
+        /**
+         * Find the main peak in black histogram.
+         *
+         * @return the main black peak, or null if none
+         */
+        private Range findBlackPeak ()
+        {
+            final int area = blackFunction.getArea();
+            final List<Range> blackPeaks = blackFinder.findPeaks(
+                    1,
+                    (int) Math.rint(area * constants.minDerivativeRatio.getValue()),
+                    constants.minGainRatio.getValue());
+
+            return blackPeaks.isEmpty() ? null : blackPeaks.get(0);
+        }
+
+        //----------------//
+        // findComboPeaks //
+        //----------------//
+        /**
+         * Find the peaks in combo histogram.
+         *
+         * @return the combo peaks, perhaps empty
+         */
+        private List<Range> findComboPeaks ()
+        {
+            final int area = comboFunction.getArea();
+
+            return comboFinder.findPeaks(
+                    1,
+                    (int) Math.rint(area * constants.minDerivativeRatio.getValue()),
+                    constants.minGainRatio.getValue());
+        }
+
         //---------------//
         // getBlackCount //
         //---------------//
@@ -683,6 +922,71 @@ public class ScaleBuilder
 
             return total;
         }
+
+        //----------//
+        // populate //
+        //----------//
+        /**
+         * Populate the provided function, by scanning all selected columns.
+         * <p>
+         * Columns are processed by chunks in parallel, each chunk populating its own function.
+         * These partial functions are then added to the provided one.
+         *
+         * @param function the function to populate
+         * @param scanner  the scanning of one column
+         */
+        private void populate (final IntegerFunction function,
+                               final ColumnScanner scanner)
+        {
+            final int count = columns.length;
+            final int chunks = Math.max(1, 2 * OmrExecutors.getNumberOfCpus());
+            final int chunk = Math.max(1, (count + chunks - 1) / chunks);
+            final List<Callable<IntegerFunction>> tasks = new ArrayList<>();
+
+            for (int i = 0; i < count; i += chunk) {
+                final int i1 = i;
+                final int i2 = Math.min(count, i + chunk);
+                tasks.add(new Callable<IntegerFunction>()
+                {
+                    @Override
+                    public IntegerFunction call ()
+                    {
+                        final IntegerFunction partial = new IntegerFunction(
+                                function.getXMin(),
+                                function.getXMax());
+
+                        for (int i = i1; i < i2; i++) {
+                            scanner.scan(columns[i], partial);
+                        }
+
+                        return partial;
+                    }
+                });
+            }
+
+            for (IntegerFunction partial : ForkedTasks.invokeAllUnchecked(tasks)) {
+                function.include(partial);
+            }
+        }
+    }
+
+    //---------------//
+    // ColumnScanner //
+    //---------------//
+    /**
+     * Scanning of the runs of one sheet column.
+     */
+    private static interface ColumnScanner
+    {
+
+        /**
+         * Scan column at abscissa x, to populate the provided function.
+         *
+         * @param x        column abscissa
+         * @param function the function to populate
+         */
+        void scan (int x,
+                   IntegerFunction function);
     }
 
     //-----------//
@@ -733,5 +1037,33 @@ public class ScaleBuilder
         private final Constant.Ratio minBlackRatio = new Constant.Ratio(
                 0.001,
                 "Minimum ratio of foreground pixels in image");
+
+        private final Constant.Boolean useSampling = new Constant.Boolean(
+                true,
+                "Should we first estimate histograms on a sample of columns, in batch mode?");
+
+        private final Constant.Ratio sampleRatio = new Constant.Ratio(
+                0.125,
+                "Ratio of sheet columns in sample");
+
+        private final Constant.Integer minHalfSampleColumns = new Constant.Integer(
+                "Columns",
+                150,
+                "Minimum number of columns in each half sample");
+
+        private final Constant.Integer minHalfSampleRuns = new Constant.Integer(
+                "Runs",
+                2000,
+                "Minimum number of black runs in each half sample");
+
+        private final Constant.Integer maxLineGap = new Constant.Integer(
+                "Pixels",
+                0,
+                "Maximum gap between sample line thickness peaks (main, min and max)");
+
+        private final Constant.Integer maxInterlineGap = new Constant.Integer(
+                "Pixels",
+                1,
+                "Maximum gap between sample interline peaks (main, min and max)");
     }
 }
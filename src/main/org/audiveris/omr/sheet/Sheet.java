@@ -74,6 +74,8 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -101,8 +103,10 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.adapters.XmlAdapter;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 import org.audiveris.omr.constant.Constant;
 import org.audiveris.omr.constant.ConstantSet;
@@ -224,6 +228,18 @@ public class Sheet
     /** Un/marshalling context for use with JAXB. */
     private static volatile JAXBContext jaxbContext;
 
+    /** Estimated heap size of a glyph, run table excluded. */
+    private static final long GLYPH_BYTES = 200;
+
+    /** Estimated heap size of an inter, with its graph vertex. */
+    private static final long INTER_BYTES = 400;
+
+    /** Estimated heap size of a relation, with its graph edge. */
+    private static final long RELATION_BYTES = 100;
+
+    /** Factory for XML readers, configured once and shared. */
+    private static volatile XMLInputFactory inputFactory;
+
     // Persistent data
     //----------------
     //
@@ -702,6 +718,45 @@ public class Sheet
         return filamentIndex;
     }
 
+    //--------------//
+    // getFootprint //
+    //--------------//
+    /**
+     * Report an estimate of the heap space used by this sheet.
+     * <p>
+     * This is a rough estimate, based on picture tables and images in memory, glyphs run tables,
+     * and the number of inters and relations in systems.
+     *
+     * @return estimated size in bytes
+     */
+    public long getFootprint ()
+    {
+        long bytes = 0;
+
+        if (picture != null) {
+            bytes += picture.getFootprint();
+        }
+
+        if (glyphIndex != null) {
+            for (Glyph glyph : glyphIndex.getEntities()) {
+                bytes += GLYPH_BYTES + glyph.getRunTable().getFootprint();
+            }
+        }
+
+        if (systemManager != null) {
+            for (SystemInfo system : systemManager.getSystems()) {
+                final SIGraph sig = system.getSig();
+
+                if (sig != null) {
+                    bytes += (INTER_BYTES * sig.vertexSet().size())
+                             + (RELATION_BYTES * sig.edgeSet().size());
+                }
+            }
+        }
+
+        return bytes;
+    }
+
     //---------------//
     // getGlyphIndex //
     //---------------//
@@ -1202,13 +1257,18 @@ public class Sheet
     //-------//
     /**
      * Store sheet internals into book file system.
+     * <p>
+     * Stub modified status is reset only when all sheet internals have been stored.
      *
      * @param sheetFolder    path of sheet folder in (new) book file
      * @param oldSheetFolder path of sheet folder in old book file, if any
+     * @return true if successful
      */
-    public void store (Path sheetFolder,
-                       Path oldSheetFolder)
+    public boolean store (Path sheetFolder,
+                          Path oldSheetFolder)
     {
+        boolean success = true;
+
         // Picture internals, if any
         if (picture != null) {
             try {
@@ -1219,6 +1279,7 @@ public class Sheet
                 picture.store(sheetFolder, oldSheetFolder);
             } catch (IOException ex) {
                 logger.warn("IOException on storing " + this, ex);
+                success = false;
             }
         }
 
@@ -1228,10 +1289,16 @@ public class Sheet
             Files.deleteIfExists(structurePath);
             Files.createDirectories(sheetFolder);
 
-            try (OutputStream os = Files.newOutputStream(structurePath, CREATE);) {
+            try (OutputStream os = new BufferedOutputStream(
+                    Files.newOutputStream(structurePath, CREATE))) {
                 Marshaller m = getJaxbContext().createMarshaller();
-                XMLStreamWriter writer = new IndentingXMLStreamWriter(
-                        XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8"));
+                XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(
+                        os,
+                        "UTF-8");
+
+                if (constants.indentStructure.isSet()) {
+                    writer = new IndentingXMLStreamWriter(writer);
+                }
 
                 if (constants.useMarshalLogger.isSet()) {
                     m.setListener(new Jaxb.MarshalLogger());
@@ -1241,14 +1308,20 @@ public class Sheet
                 os.flush();
             }
 
-            stub.setModified(false);
-            stub.setUpgraded(false);
+            if (success) {
+                stub.setModified(false);
+                stub.setUpgraded(false);
+            }
+
             logger.info("Stored {}", structurePath);
         } catch (IOException |
                  JAXBException |
                  XMLStreamException ex) {
             logger.warn("Error in saving sheet structure " + ex, ex);
+            success = false;
         }
+
+        return success;
     }
 
     //----------//
@@ -1522,12 +1595,36 @@ public class Sheet
             um.setListener(new Jaxb.UnmarshalLogger());
         }
 
-        Sheet sheet = (Sheet) um.unmarshal(in);
+        final Sheet sheet;
+
+        try {
+            // Feeding JAXB with a StAX reader avoids a new SAX parser setup per sheet
+            XMLStreamReader reader = getInputFactory().createXMLStreamReader(
+                    new BufferedInputStream(in));
+            sheet = (Sheet) um.unmarshal(reader);
+            reader.close();
+        } catch (XMLStreamException ex) {
+            throw new JAXBException(ex);
+        }
+
         logger.debug("Sheet unmarshalled");
 
         return sheet;
     }
 
+    //-----------------//
+    // getInputFactory //
+    //-----------------//
+    private static XMLInputFactory getInputFactory ()
+    {
+        // Lazy creation
+        if (inputFactory == null) {
+            inputFactory = XMLInputFactory.newInstance();
+        }
+
+        return inputFactory;
+    }
+
     //----------------//
     // getJaxbContext //
     //----------------//
@@ -1556,6 +1653,10 @@ public class Sheet
         private final Constant.Boolean useUnmarshalLogger = new Constant.Boolean(
                 false,
                 "Should we log every sheet unmarshalling?");
+
+        private final Constant.Boolean indentStructure = new Constant.Boolean(
+                true,
+                "Should we indent sheet structure XML? (false for faster and smaller files)");
     }
 
     //-----------//
@@ -0,0 +1,368 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                                   S h e e t R e s i d e n c y                                  //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.sheet;
+
+import org.audiveris.omr.OMR;
+import org.audiveris.omr.constant.Constant;
+import org.audiveris.omr.constant.ConstantSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class {@code SheetResidency} decides which sheets can stay in memory, in batch mode.
+ * <p>
+ * Formerly, every sheet was swapped out as soon as it had reached the target step, which meant
+ * a costly reload for any later access (book-level steps, export, another target step).
+ * Here, a processed sheet is simply {@link #release released}: it remains resident as long as
+ * the estimated footprint of all resident sheets fits within a memory budget.
+ * Beyond this budget, the least recently used sheets are swapped out.
+ * <p>
+ * The budget is either explicitly specified, or computed as a ratio of JVM max memory.
+ * Sheet footprints are estimates only, see {@link Sheet#getFootprint()}.
+ * <p>
+ * Sheets currently being processed (their stub processing lock is held by another thread) are
+ * never evicted, and their footprint is the one estimated at their latest load or release.
+ *
+ * @author Hervé Bitteur
+ */
+public abstract class SheetResidency
+{
+
+    private static final Constants constants = new Constants();
+
+    private static final Logger logger = LoggerFactory.getLogger(SheetResidency.class);
+
+    /** Resident stubs, with their access information. */
+    private static final ConcurrentMap<SheetStub, Access> residents = new ConcurrentHashMap<>();
+
+    /** Logical clock to order accesses. */
+    private static final AtomicLong clock = new AtomicLong();
+
+    /** Number of sheets loaded into memory. */
+    private static final AtomicInteger loads = new AtomicInteger();
+
+    /** Number of released sheets kept in memory. */
+    private static final AtomicInteger keeps = new AtomicInteger();
+
+    /** Number of sheets evicted from memory. */
+    private static final AtomicInteger evictions = new AtomicInteger();
+
+    /** Comparator by increasing access time. */
+    private static final Comparator<Entry<SheetStub, Access>> byAccess
+            = new Comparator<Entry<SheetStub, Access>>()
+    {
+        @Override
+        public int compare (Entry<SheetStub, Access> e1,
+                            Entry<SheetStub, Access> e2)
+        {
+            return Long.compare(e1.getValue().time, e2.getValue().time);
+        }
+    };
+
+    /** Not meant to be instantiated. */
+    private SheetResidency ()
+    {
+    }
+
+    //--------//
+    // closed //
+    //--------//
+    /**
+     * Forget all resident sheets of a book being closed.
+     *
+     * @param book the closed book
+     */
+    public static void closed (Book book)
+    {
+        for (SheetStub stub : book.getStubs()) {
+            residents.remove(stub);
+        }
+    }
+
+    //---------------//
+    // enforceBudget //
+    //---------------//
+    /**
+     * Swap out the least recently used sheets, until the resident sheets fit in budget.
+     * <p>
+     * Victims are selected under the class monitor, but swapped out (which may imply writing to
+     * disk) outside of it.
+     */
+    public static void enforceBudget ()
+    {
+        enforceBudget(null);
+    }
+
+    //------------//
+    // getMetrics //
+    //------------//
+    /**
+     * Report a summary of residency activity.
+     *
+     * @return metrics as a string
+     */
+    public static String getMetrics ()
+    {
+        long total = 0;
+
+        for (Access access : residents.values()) {
+            total += access.footprint;
+        }
+
+        return String.format(
+                "resident:%d (%d/%d MB) loads:%d keeps:%d evictions:%d",
+                residents.size(),
+                total >> 20,
+                getBudget() >> 20,
+                loads.get(),
+                keeps.get(),
+                evictions.get());
+    }
+
+    //-----------//
+    // isEnabled //
+    //-----------//
+    /**
+     * Report whether sheets residency is managed against a memory budget.
+     *
+     * @return true if so
+     */
+    public static boolean isEnabled ()
+    {
+        return (OMR.gui == null) && constants.useResidency.isSet();
+    }
+
+    //--------//
+    // loaded //
+    //--------//
+    /**
+     * Notify that the sheet of provided stub has just been brought into memory.
+     * <p>
+     * Other sheets are swapped out if needed, so that the resident sheets fit in budget.
+     * The caller should not hold the stub monitor.
+     *
+     * @param stub  the stub whose sheet is now in memory
+     * @param sheet the loaded sheet
+     */
+    public static void loaded (SheetStub stub,
+                               Sheet sheet)
+    {
+        if (isEnabled()) {
+            loads.incrementAndGet();
+            residents.put(stub, new Access(clock.incrementAndGet(), sheet.getFootprint()));
+            enforceBudget(stub);
+        }
+    }
+
+    //---------//
+    // release //
+    //---------//
+    /**
+     * Notify that processing of provided stub is over for the time being.
+     * <p>
+     * If residency is managed, the sheet is kept in memory within the limits of the memory budget,
+     * otherwise the sheet is immediately swapped out.
+     * The caller must hold the stub processing lock or be the only thread processing this stub.
+     *
+     * @param stub the processed stub
+     */
+    public static void release (SheetStub stub)
+    {
+        if (!isEnabled()) {
+            stub.swapSheet(); // Save sheet & global book info to disk
+
+            return;
+        }
+
+        if (!stub.hasSheet()) {
+            return;
+        }
+
+        final long footprint = stub.getSheet().getFootprint();
+        residents.put(stub, new Access(clock.incrementAndGet(), footprint));
+        keeps.incrementAndGet();
+        logger.debug("{} kept, footprint: {} KB", stub, footprint >> 10);
+
+        enforceBudget();
+    }
+
+    //---------//
+    // removed //
+    //---------//
+    /**
+     * Notify that the sheet of provided stub is no longer in memory.
+     *
+     * @param stub the stub whose sheet has been swapped out or reset
+     */
+    public static void removed (SheetStub stub)
+    {
+        residents.remove(stub);
+    }
+
+    //---------------//
+    // enforceBudget //
+    //---------------//
+    /**
+     * Swap out the least recently used sheets, except the provided one, until the resident
+     * sheets fit in budget.
+     *
+     * @param kept the stub to keep in memory, if any
+     */
+    private static void enforceBudget (SheetStub kept)
+    {
+        for (SheetStub stub : selectVictims(kept)) {
+            try {
+                stub.swapSheet();
+                evictions.incrementAndGet();
+            } finally {
+                stub.getLock().unlock();
+            }
+        }
+    }
+
+    //-----------//
+    // getBudget //
+    //-----------//
+    private static long getBudget ()
+    {
+        final int mb = constants.maxResidentMemory.getValue();
+
+        if (mb > 0) {
+            return ((long) mb) << 20;
+        }
+
+        return (long) (Runtime.getRuntime().maxMemory() * constants.maxMemoryRatio.getValue());
+    }
+
+    //---------------//
+    // selectVictims //
+    //---------------//
+    /**
+     * Select the least recently used sheets to evict, so that the remaining ones fit in budget.
+     * <p>
+     * Each selected stub is removed from residents and returned with its processing lock held,
+     * so that no other thread can select or process it until it is swapped out.
+     * A stub already locked by the current thread is never selected.
+     *
+     * @param kept the stub to keep in memory, if any
+     * @return the stubs to swap out, in eviction order
+     */
+    private static synchronized List<SheetStub> selectVictims (SheetStub kept)
+    {
+        final long budget = getBudget();
+        final List<Entry<SheetStub, Access>> entries = new ArrayList<>(residents.entrySet());
+        Collections.sort(entries, byAccess);
+
+        final List<SheetStub> victims = new ArrayList<>();
+        long total = 0;
+
+        for (Entry<SheetStub, Access> entry : entries) {
+            total += entry.getValue().footprint;
+        }
+
+        for (Entry<SheetStub, Access> entry : entries) {
+            if (total <= budget) {
+                break;
+            }
+
+            final SheetStub stub = entry.getKey();
+
+            if (stub == kept) {
+                continue;
+            }
+
+            final Lock lock = stub.getLock();
+
+            if ((lock instanceof ReentrantLock) && ((ReentrantLock) lock).isHeldByCurrentThread()) {
+                continue; // Sheet being processed by this thread
+            }
+
+            if (!lock.tryLock()) {
+                continue; // Sheet being processed
+            }
+
+            logger.debug("{} evicted, total: {} MB", stub, total >> 20);
+            total -= entry.getValue().footprint;
+            residents.remove(stub);
+            victims.add(stub);
+        }
+
+        return victims;
+    }
+
+    //--------//
+    // Access //
+    //--------//
+    /**
+     * Access information on a resident sheet.
+     */
+    private static class Access
+    {
+
+        /** Logical time of latest access. */
+        final long time;
+
+        /** Estimated footprint in bytes, as of latest load or release. */
+        final long footprint;
+
+        Access (long time,
+                long footprint)
+        {
+            this.time = time;
+            this.footprint = footprint;
+        }
+    }
+
+    //-----------//
+    // Constants //
+    //-----------//
+    private static class Constants
+            extends ConstantSet
+    {
+
+        private final Constant.Boolean useResidency = new Constant.Boolean(
+                true,
+                "Should processed sheets stay in memory within a memory budget, in batch mode?");
+
+        private final Constant.Integer maxResidentMemory = new Constant.Integer(
+                "MegaBytes",
+                0,
+                "Memory budget for resident sheets (0 for a ratio of JVM max memory)");
+
+        private final Constant.Ratio maxMemoryRatio = new Constant.Ratio(
+                0.5,
+                "Ratio of JVM max memory for resident sheets, when no explicit budget");
+    }
+}
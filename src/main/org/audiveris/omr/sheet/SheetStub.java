@@ -105,6 +105,7 @@ import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
  * <li>{@link #isModified}</li>
  * <li>{@link #close}</li>
  * <li>{@link #getLock}</li>
+ * <li>{@link #getStorageLock}</li>
  * <li>{@link #storeSheet}</li>
  * </ul>
  * </dd>
@@ -201,6 +202,9 @@ public class SheetStub
     /** Processing lock. */
     private final Lock lock = new ReentrantLock();
 
+    /** Storage lock, to read or write sheet material on disk. */
+    private final Lock storageLock = new ReentrantLock();
+
     /** Containing book. */
     @Navigable(false)
     private Book book;
@@ -494,6 +498,22 @@ public class SheetStub
         return lock;
     }
 
+    //----------------//
+    // getStorageLock //
+    //----------------//
+    /**
+     * Report the lock that protects sheet material on disk.
+     * <p>
+     * This per-sheet lock allows several sheets of the same book to be read or written
+     * concurrently.
+     *
+     * @return stub storage lock
+     */
+    public Lock getStorageLock ()
+    {
+        return storageLock;
+    }
+
     //--------//
     // getNum //
     //--------//
@@ -585,6 +605,8 @@ public class SheetStub
     {
         Sheet sh = this.sheet;
         if (sh == null) {
+            Sheet loaded = null;
+
             synchronized (this) {
                 sh = this.sheet;
                 // We have to recheck sheet, which may have just been allocated
@@ -593,8 +615,12 @@ public class SheetStub
                         logger.warn("XXXX getSheet called on EDT XXXX");
                     }
 
-                    // Actually load the sheet
-                    if (!isDone(Step.LOAD)) {
+                    // Sheet may still be waiting for background storing
+                    sh = BookParts.reclaim(this);
+
+                    if (sh != null) {
+                        this.sheet = sh;
+                    } else if (!isDone(Step.LOAD)) {
                         // LOAD not yet performed: load from book image file
                         try {
                             this.sheet = sh = new Sheet(this, (BufferedImage) null);
@@ -611,19 +637,24 @@ public class SheetStub
 
                             // Open the book file system
                             try {
-                                book.getLock().lock();
-                                sheetFile = book.openSheetFolder(number).resolve(
-                                        Sheet.getSheetFileName(number));
-
-                                try (InputStream is = Files.newInputStream(
-                                        sheetFile,
-                                        StandardOpenOption.READ)) {
-                                    this.sheet = sh = Sheet.unmarshal(is);
-                                }
+                                storageLock.lock();
+
+                                final Path sheetFolder = book.openSheetFolder(number);
 
-                                sheetFile.getFileSystem().close();
+                                try {
+                                    sheetFile = sheetFolder.resolve(
+                                            Sheet.getSheetFileName(number));
+
+                                    try (InputStream is = Files.newInputStream(
+                                            sheetFile,
+                                            StandardOpenOption.READ)) {
+                                        this.sheet = sh = Sheet.unmarshal(is);
+                                    }
+                                } finally {
+                                    book.closeSheetFolder(sheetFolder);
+                                }
                             } finally {
-                                book.getLock().unlock();
+                                storageLock.unlock();
                             }
 
                             // Complete sheet reload
@@ -641,8 +672,15 @@ public class SheetStub
                             }
                         }
                     }
+
+                    loaded = sh; // (Reset to binary, if any, has already been notified)
                 }
             }
+
+            if (loaded != null) {
+                // Outside of stub monitor, since other sheets may get swapped out
+                SheetResidency.loaded(this, loaded);
+            }
         }
 
         return sh;
@@ -924,6 +962,7 @@ public class SheetStub
 
             doReset();
             sheet = new Sheet(this, binaryTable);
+            SheetResidency.loaded(this, sheet);
             logger.info("Sheet#{} reset to BINARY.", number);
         } catch (Throwable ex) {
             logger.warn("Could not reset to BINARY {}", ex.toString(), ex);
@@ -943,17 +982,30 @@ public class SheetStub
             throws Exception
     {
         if (modified) {
-            final Lock lock = book.getLock();
+            // Parts are sheet-specific, while zip writes rewrite the whole book file
+            final Lock lock = BookParts.useParts() ? storageLock : book.getLock();
             lock.lock();
 
             try {
                 Path bookPath = BookManager.getDefaultSavePath(book);
-                Path root = ZipFileSystem.open(bookPath);
-                book.storeBookInfo(root); // Book info (book.xml)
 
-                Path sheetFolder = root.resolve(INTERNALS_RADIX + getNumber());
-                sheet.store(sheetFolder, null);
-                root.getFileSystem().close();
+                if (BookParts.useParts()) {
+                    // Book file is rewritten only when the whole book is stored
+                    BookParts.storeSheet(book, sheet, bookPath);
+                } else {
+                    book.getFileLock().writeLock().lock();
+
+                    try {
+                        Path root = ZipFileSystem.open(bookPath);
+                        book.storeBookInfo(root); // Book info (book.xml)
+
+                        Path sheetFolder = root.resolve(INTERNALS_RADIX + getNumber());
+                        sheet.store(sheetFolder, null);
+                        root.getFileSystem().close();
+                    } finally {
+                        book.getFileLock().writeLock().unlock();
+                    }
+                }
             } finally {
                 lock.unlock();
             }
@@ -972,13 +1024,22 @@ public class SheetStub
         try {
             if (isModified()) {
                 logger.info("{} storing", this);
-                storeSheet();
+
+                if ((sheet != null) && BookParts.useBackgroundWriter()) {
+                    BookParts.storeLater(sheet, BookManager.getDefaultSavePath(book));
+                } else {
+                    storeSheet();
+                }
             }
 
             if (sheet != null) {
                 logger.info("{} disposed", sheet);
                 sheet = null;
-                Memory.gc(); // Trigger a garbage collection...
+                SheetResidency.removed(this);
+
+                if (!SheetResidency.isEnabled()) {
+                    Memory.gc(); // Trigger a garbage collection...
+                }
             }
 
             if (OMR.gui != null) {
@@ -1139,6 +1200,7 @@ public class SheetStub
         pageRefs.clear();
         invalid = false;
         sheet = null;
+        SheetResidency.removed(this);
 
         if (assembly != null) {
             assembly.reset();
@@ -0,0 +1,360 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                                    S t u b s P i p e l i n e                                   //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.sheet;
+
+import org.audiveris.omr.constant.Constant;
+import org.audiveris.omr.constant.ConstantSet;
+import org.audiveris.omr.log.LogUtil;
+import org.audiveris.omr.step.ProcessingCancellationException;
+import org.audiveris.omr.step.Step;
+import org.audiveris.omr.util.Memory;
+import org.audiveris.omr.util.OmrExecutors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+
+/**
+ * Class {@code StubsPipeline} drives a set of sheet stubs towards a target step, with a
+ * bounded number of sheets in flight.
+ * <p>
+ * It is meant for batch mode only, since processed sheets are released.
+ * <p>
+ * Each stub goes through two stages:
+ * <ol>
+ * <li>The early steps, up to {@link #EARLY_STEP}, mostly bound by image reading and
+ * binarization, are run ahead for a few upcoming stubs.</li>
+ * <li>The remaining steps, mostly CPU-bound, are run for a limited number of stubs at a time.
+ * Each stub is then released to {@link SheetResidency}.</li>
+ * </ol>
+ * So, the early steps of upcoming sheets overlap the late steps of current ones, while the
+ * number of sheets in memory remains bounded.
+ * No stub is loaded ahead when heap occupation is beyond a given ratio, unless nothing else is
+ * in flight.
+ * <p>
+ * Throughput and per-sheet latency (from first submission to completion) are reported at the
+ * end.
+ *
+ * @author Hervé Bitteur
+ */
+class StubsPipeline
+{
+
+    private static final Constants constants = new Constants();
+
+    private static final Logger logger = LoggerFactory.getLogger(StubsPipeline.class);
+
+    /** Latest step of early stage. */
+    public static final Step EARLY_STEP = Step.BINARY;
+
+    /** Target step. */
+    private final Step target;
+
+    /** Should processing be forced?. */
+    private final boolean force;
+
+    /** Count of stubs to process. */
+    private final int count;
+
+    /** Stubs not yet started. */
+    private final Deque<SheetStub> waiting;
+
+    /** Stubs done with early stage, waiting for late stage. */
+    private final Deque<SheetStub> ready = new ArrayDeque<>();
+
+    /** Start time per stub. */
+    private final Map<SheetStub, Long> starts = new HashMap<>();
+
+    /** Maximum count of stubs in late stage. */
+    private final int maxInProgress;
+
+    /** Maximum count of stubs in early stage or ready. */
+    private final int maxAhead;
+
+    /** Completion of both stages. */
+    private CompletionService<Outcome> service;
+
+    /** Count of stubs in early stage. */
+    private int loading;
+
+    /** Count of stubs in late stage. */
+    private int processing;
+
+    /** Cancellation, if any. */
+    private volatile ProcessingCancellationException cancellation;
+
+    /**
+     * Creates a new {@code StubsPipeline} object.
+     *
+     * @param stubs  the stubs to process, in desired order
+     * @param target the step to reach on each stub
+     * @param force  true to force processing
+     */
+    StubsPipeline (List<SheetStub> stubs,
+                   Step target,
+                   boolean force)
+    {
+        this.target = target;
+        this.force = force;
+
+        count = stubs.size();
+        waiting = new ArrayDeque<>(stubs);
+
+        final int inProgress = constants.maxStubsInProgress.getValue();
+        maxInProgress = (inProgress > 0) ? inProgress
+                : Math.max(1, OmrExecutors.getNumberOfCpus() / 2);
+        maxAhead = Math.max(1, constants.maxStubsAhead.getValue());
+    }
+
+    //---------//
+    // process //
+    //---------//
+    /**
+     * Process all stubs, and wait for completion.
+     *
+     * @return true if OK on all stubs
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean process ()
+            throws InterruptedException
+    {
+        final long startTime = System.currentTimeMillis();
+        service = new ExecutorCompletionService<>(OmrExecutors.getBatchExecutor());
+
+        boolean someFailure = false;
+        int done = 0;
+        long sumLatency = 0;
+        long maxLatency = 0;
+
+        admit();
+
+        while ((loading + processing) > 0) {
+            final Outcome outcome;
+
+            try {
+                outcome = service.take().get();
+            } catch (ExecutionException ex) {
+                // Cannot occur, since tasks catch everything
+                logger.warn("Pipeline exception", ex);
+
+                return false;
+            }
+
+            final SheetStub stub = outcome.stub;
+
+            if (outcome.early) {
+                loading--;
+
+                if (outcome.ok) {
+                    ready.add(stub);
+                } else {
+                    someFailure = true;
+                }
+            } else {
+                processing--;
+
+                if (outcome.ok) {
+                    final long latency = System.currentTimeMillis() - starts.get(stub);
+                    done++;
+                    sumLatency += latency;
+                    maxLatency = Math.max(maxLatency, latency);
+                } else {
+                    someFailure = true;
+                }
+            }
+
+            admit();
+        }
+
+        if (cancellation != null) {
+            throw cancellation;
+        }
+
+        final long dur = Math.max(1, System.currentTimeMillis() - startTime);
+        logger.info(
+                "Pipeline {} on {}/{} sheets in {} s, {} sheets/min, latency avg:{} s max:{} s",
+                target,
+                done,
+                count,
+                dur / 1000,
+                String.format("%.1f", (60_000.0 * done) / dur),
+                (done > 0) ? ((sumLatency / done) / 1000) : 0,
+                maxLatency / 1000);
+
+        return !someFailure;
+    }
+
+    //-------//
+    // admit //
+    //-------//
+    /**
+     * Submit as many tasks as allowed by the current window.
+     */
+    private void admit ()
+    {
+        while (cancellation == null) {
+            if ((processing < maxInProgress) && !ready.isEmpty()) {
+                submit(ready.poll(), false);
+            } else if (!waiting.isEmpty() && ((loading + ready.size()) < maxAhead) && hasRoom()) {
+                final SheetStub stub = waiting.poll();
+                starts.put(stub, System.currentTimeMillis());
+
+                if (!force && (target.compareTo(EARLY_STEP) > 0) && !stub.isDone(EARLY_STEP)) {
+                    submit(stub, true);
+                } else {
+                    ready.add(stub);
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    //---------//
+    // hasRoom //
+    //---------//
+    /**
+     * Check whether an additional stub can be loaded.
+     *
+     * @return true if nothing is in flight or if heap occupation is acceptable
+     */
+    private boolean hasRoom ()
+    {
+        if ((loading + processing) == 0) {
+            return true;
+        }
+
+        final double max = Runtime.getRuntime().maxMemory() * constants.maxMemoryRatio.getValue();
+
+        return Memory.occupied() < max;
+    }
+
+    //--------//
+    // submit //
+    //--------//
+    /**
+     * Submit one stage for the provided stub.
+     *
+     * @param stub  the stub to process
+     * @param early true for early stage, false for late stage
+     */
+    private void submit (final SheetStub stub,
+                         final boolean early)
+    {
+        if (early) {
+            loading++;
+        } else {
+            processing++;
+        }
+
+        service.submit(new Callable<Outcome>()
+        {
+            @Override
+            public Outcome call ()
+            {
+                LogUtil.start(stub);
+
+                try {
+                    if (early) {
+                        return new Outcome(stub, true, stub.reachStep(EARLY_STEP, false));
+                    }
+
+                    final boolean ok = stub.reachStep(target, force);
+
+                    if (ok) {
+                        SheetResidency.release(stub);
+                    }
+
+                    return new Outcome(stub, false, ok);
+                } catch (ProcessingCancellationException pce) {
+                    cancellation = pce;
+
+                    return new Outcome(stub, early, false);
+                } catch (Exception ex) {
+                    // Exception (such as timeout) raised on stub
+                    // Let processing continue for the other stubs
+                    logger.warn("Error processing stub {}", ex.toString(), ex);
+
+                    return new Outcome(stub, early, false);
+                } finally {
+                    LogUtil.stopStub();
+                }
+            }
+        });
+    }
+
+    //-----------//
+    // Constants //
+    //-----------//
+    private static class Constants
+            extends ConstantSet
+    {
+
+        private final Constant.Integer maxStubsInProgress = new Constant.Integer(
+                "Stubs",
+                0,
+                "Maximum count of stubs in late steps (0 for half the CPU count)");
+
+        private final Constant.Integer maxStubsAhead = new Constant.Integer(
+                "Stubs",
+                2,
+                "Maximum count of stubs processed ahead through early steps");
+
+        private final Constant.Ratio maxMemoryRatio = new Constant.Ratio(
+                0.8,
+                "Ratio of JVM max memory beyond which no stub is loaded ahead");
+    }
+
+    //---------//
+    // Outcome //
+    //---------//
+    /**
+     * Result of one stage on one stub.
+     */
+    private static class Outcome
+    {
+
+        final SheetStub stub;
+
+        final boolean early;
+
+        final boolean ok;
+
+        Outcome (SheetStub stub,
+                 boolean early,
+                 boolean ok)
+        {
+            this.stub = stub;
+            this.early = early;
+            this.ok = ok;
+        }
+    }
+}
@@ -61,6 +61,7 @@ import org.audiveris.omr.util.Entities;
 import org.audiveris.omr.util.HorizontalSide;
 import static org.audiveris.omr.util.HorizontalSide.*;
 import org.audiveris.omr.util.Navigable;
+import org.audiveris.omr.util.OmrExecutors;
 import org.audiveris.omr.util.Predicate;
 import org.audiveris.omr.util.StopWatch;
 import org.audiveris.omr.util.VerticalSide;
@@ -435,7 +436,17 @@ public class LinesRetriever
                     Orientation.HORIZONTAL,
                     StaffFilament.class);
             factory.dump("LinesRetriever factory");
-            filaments = factory.retrieveFilaments(hLag.getEntities());
+
+            if (constants.useBands.isSet()
+                        && (OmrExecutors.defaultParallelism.getValue() == true)) {
+                // Process overlapping horizontal bands in parallel
+                filaments = factory.retrieveFilaments(
+                        hLag.getEntities(),
+                        params.bandHeight,
+                        params.bandMargin);
+            } else {
+                filaments = factory.retrieveFilaments(hLag.getEntities());
+            }
 
             // Purge curved filaments
             purgeCurvedFilaments();
@@ -1477,6 +1488,18 @@ public class LinesRetriever
                 false,
                 "Should we print out the stop watch?");
 
+        private final Constant.Boolean useBands = new Constant.Boolean(
+                true,
+                "Should we retrieve filaments by horizontal bands, when parallelism is allowed?");
+
+        private final Scale.Fraction bandHeight = new Scale.Fraction(
+                16,
+                "Height of a horizontal band for filaments retrieval");
+
+        private final Scale.Fraction bandMargin = new Scale.Fraction(
+                2,
+                "Band extension above and below for filaments retrieval");
+
         private final Constant.Boolean showTangents = new Constant.Boolean(
                 false,
                 "Should we show filament ending tangents?");
@@ -1545,6 +1568,12 @@ public class LinesRetriever
 
         final int maxStickerConnectionLength;
 
+        /** Height of a band for filaments retrieval */
+        final int bandHeight;
+
+        /** Band extension on each side for filaments retrieval */
+        final int bandMargin;
+
         /**
          * Creates a new Parameters object.
          *
@@ -1572,6 +1601,8 @@ public class LinesRetriever
             maxStickerExtension = (int) Math.ceil(
                     scale.toPixelsDouble(constants.maxStickerExtension));
             minSlope = constants.minSlope.getValue();
+            bandHeight = Math.max(1, scale.toPixels(constants.bandHeight));
+            bandMargin = scale.toPixels(constants.bandMargin);
 
             if (logger.isDebugEnabled()) {
                 new Dumping().dump(this);
@@ -44,6 +44,7 @@ import org.audiveris.omr.sheet.SystemManager;
 import static org.audiveris.omr.sheet.grid.StaffPeak.Attribute.BRACE;
 import org.audiveris.omr.step.StepException;
 import org.audiveris.omr.util.Dumping;
+import org.audiveris.omr.util.ForkedTasks;
 import org.audiveris.omr.util.HorizontalSide;
 import static org.audiveris.omr.util.HorizontalSide.LEFT;
 import static org.audiveris.omr.util.HorizontalSide.RIGHT;
@@ -74,6 +75,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 /**
  * Class {@code PeakGraph} handles the graph of all StaffPeak instances in a sheet,
@@ -806,10 +808,30 @@ public class PeakGraph
      */
     private void findBarPeaks ()
     {
-        // Analysis staff per staff
         for (Staff staff : staffManager.getStaves()) {
-            StaffProjector projector = new StaffProjector(sheet, staff, this);
-            projectors.add(projector);
+            projectors.add(new StaffProjector(sheet, staff, this));
+        }
+
+        // Staff projections are independent, compute them in parallel
+        final List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (final StaffProjector projector : projectors) {
+            tasks.add(new Callable<Void>()
+            {
+                @Override
+                public Void call ()
+                {
+                    projector.computeProjection();
+
+                    return null;
+                }
+            });
+        }
+
+        ForkedTasks.invokeAllUnchecked(tasks);
+
+        // Analysis staff per staff
+        for (StaffProjector projector : projectors) {
             projector.process();
             Graphs.addAllVertices(this, projector.getPeaks());
         }
@@ -23,12 +23,16 @@ package org.audiveris.omr.sheet.grid;
 
 import ij.process.ByteProcessor;
 
+import org.audiveris.omr.constant.Constant;
 import org.audiveris.omr.constant.ConstantSet;
 import org.audiveris.omr.glyph.Grades;
 import org.audiveris.omr.math.AreaUtil;
 import org.audiveris.omr.math.AreaUtil.CoreData;
 import org.audiveris.omr.math.GeoPath;
 import org.audiveris.omr.math.Projection;
+import org.audiveris.omr.run.Orientation;
+import org.audiveris.omr.run.Run;
+import org.audiveris.omr.run.RunTable;
 import org.audiveris.omr.sheet.Picture;
 import org.audiveris.omr.sheet.Scale;
 import org.audiveris.omr.sheet.Scale.InterlineScale;
@@ -63,6 +67,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -147,6 +152,9 @@ public class StaffProjector
     /** Pixel source. */
     private final ByteProcessor pixelFilter;
 
+    /** Vertical runs of binary source, if available. */
+    private final RunTable verticalRuns;
+
     /** Sequence of all blank regions found, whatever their width. */
     private final List<Blank> allBlanks = new ArrayList<>();
 
@@ -186,6 +194,11 @@ public class StaffProjector
         Picture picture = sheet.getPicture();
         pixelFilter = picture.getSource(Picture.SourceKey.BINARY);
 
+        final RunTable binaryTable = picture.getTable(Picture.TableKey.BINARY);
+        verticalRuns = ((binaryTable != null)
+                        && (binaryTable.getOrientation() == Orientation.VERTICAL)) ? binaryTable
+                : null;
+
         scale = sheet.getScale();
         params = new Parameters(scale, staff.getSpecificInterline());
     }
@@ -236,6 +249,39 @@ public class StaffProjector
         }
     }
 
+    //-------------------//
+    // computeProjection //
+    //-------------------//
+    /**
+     * Compute, for each abscissa value, the foreground pixels cumulated between
+     * first line and last line of staff.
+     * <p>
+     * This method only reads sheet data, it can thus be called on all staves in parallel,
+     * before their sequential processing.
+     * If vertical runs of binary source are available, they are clipped to the staff ordinate
+     * range in each column, rather than pixels being read one by one.
+     */
+    public void computeProjection ()
+    {
+        final Projection proj = new Projection.Short(0, sheet.getWidth() - 1);
+        final LineInfo firstLine = staff.getFirstLine();
+        final LineInfo lastLine = staff.getLastLine();
+        final int dx = params.staffAbscissaMargin;
+        final int xMin = xClamp(staff.getAbscissa(LEFT) - dx);
+        final int xMax = xClamp(staff.getAbscissa(RIGHT) + dx);
+        final boolean useRuns = (verticalRuns != null) && constants.useRuns.isSet();
+
+        for (int x = xMin; x <= xMax; x++) {
+            final int yMin = firstLine.yAt(x);
+            final int yMax = lastLine.yAt(x);
+            final int count = useRuns ? runCount(verticalRuns, x, yMin, yMax)
+                    : pixelCount(pixelFilter, x, yMin, yMax);
+            proj.increment(x, count);
+        }
+
+        projection = proj;
+    }
+
     //---------------//
     // findBracePeak //
     //---------------//
@@ -466,7 +512,9 @@ public class StaffProjector
         logger.debug("StaffProjector analyzing staff#{}", staff.getId());
 
         // Cumulate pixels for each abscissa
-        computeProjection();
+        if (projection == null) {
+            computeProjection();
+        }
 
         // Adjust thresholds according to actual line thicknesses in this staff
         computeLineThresholds();
@@ -727,38 +775,6 @@ public class StaffProjector
                 params.chunkThreshold);
     }
 
-    //-------------------//
-    // computeProjection //
-    //-------------------//
-    /**
-     * Compute, for each abscissa value, the foreground pixels cumulated between
-     * first line and last line of staff.
-     */
-    private void computeProjection ()
-    {
-        projection = new Projection.Short(0, sheet.getWidth() - 1);
-
-        final LineInfo firstLine = staff.getFirstLine();
-        final LineInfo lastLine = staff.getLastLine();
-        final int dx = params.staffAbscissaMargin;
-        final int xMin = xClamp(staff.getAbscissa(LEFT) - dx);
-        final int xMax = xClamp(staff.getAbscissa(RIGHT) + dx);
-
-        for (int x = xMin; x <= xMax; x++) {
-            int yMin = firstLine.yAt(x);
-            int yMax = lastLine.yAt(x);
-            short count = 0;
-
-            for (int y = yMin; y <= yMax; y++) {
-                if (pixelFilter.get(x, y) == 0) {
-                    count++;
-                }
-            }
-
-            projection.increment(x, count);
-        }
-    }
-
     //-----------------//
     // createBracePeak //
     //-----------------//
@@ -1010,6 +1026,37 @@ public class StaffProjector
         logger.debug("Staff#{} peaks:{}", staff.getId(), peaks);
     }
 
+    //------------//
+    // pixelCount //
+    //------------//
+    /**
+     * Count foreground pixels in column x, from yMin to yMax, pixel per pixel.
+     * <p>
+     * Ordinates beyond image top or bottom are ignored, as they are by {@link #runCount}.
+     *
+     * @param source binary source
+     * @param x      column abscissa
+     * @param yMin   first ordinate, perhaps above image top
+     * @param yMax   last ordinate, perhaps below image bottom
+     * @return number of foreground pixels
+     */
+    static int pixelCount (ByteProcessor source,
+                           int x,
+                           int yMin,
+                           int yMax)
+    {
+        final int yStop = Math.min(yMax, source.getHeight() - 1);
+        int count = 0;
+
+        for (int y = Math.max(yMin, 0); y <= yStop; y++) {
+            if (source.get(x, y) == 0) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
     //----------------//
     // refinePeakSide //
     //----------------//
@@ -1075,6 +1122,43 @@ public class StaffProjector
         }
     }
 
+    //----------//
+    // runCount //
+    //----------//
+    /**
+     * Count foreground pixels in column x, from yMin to yMax, using vertical runs.
+     *
+     * @param runs vertical runs of binary source
+     * @param x    column abscissa
+     * @param yMin first ordinate, perhaps above image top
+     * @param yMax last ordinate, perhaps below image bottom
+     * @return number of foreground pixels, same as {@link #pixelCount}
+     */
+    static int runCount (RunTable runs,
+                         int x,
+                         int yMin,
+                         int yMax)
+    {
+        int count = 0;
+
+        for (Iterator<Run> it = runs.iterator(x); it.hasNext();) {
+            final Run run = it.next();
+            final int start = run.getStart();
+
+            if (start > yMax) {
+                break;
+            }
+
+            final int stop = run.getStop();
+
+            if (stop >= yMin) {
+                count += ((Math.min(stop, yMax) - Math.max(start, yMin)) + 1);
+            }
+        }
+
+        return count;
+    }
+
     //-------------//
     // selectBlank //
     //-------------//
@@ -1327,6 +1411,10 @@ public class StaffProjector
             extends ConstantSet
     {
 
+        private final Constant.Boolean useRuns = new Constant.Boolean(
+                true,
+                "Should we compute staff projection from vertical runs rather than pixels?");
+
         private final Scale.Fraction staffAbscissaMargin = new Scale.Fraction(
                 15,
                 "Abscissa margin for checks around staff");
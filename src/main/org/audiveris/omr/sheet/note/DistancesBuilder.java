@@ -30,8 +30,10 @@ import org.audiveris.omr.glyph.Glyph;
 import org.audiveris.omr.glyph.GlyphGroup;
 import org.audiveris.omr.image.ChamferDistance;
 import org.audiveris.omr.image.DistanceTable;
+import org.audiveris.omr.image.EuclideanDistance;
 import org.audiveris.omr.run.Orientation;
 import org.audiveris.omr.sheet.Picture;
+import org.audiveris.omr.sheet.Scale;
 import org.audiveris.omr.sheet.Sheet;
 import org.audiveris.omr.sheet.Staff;
 import org.audiveris.omr.sheet.SystemInfo;
@@ -53,6 +55,7 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.SortedMap;
 
@@ -98,7 +101,15 @@ public class DistancesBuilder
         // Compute the distance-to-foreground transform image
         Picture picture = sheet.getPicture();
         ByteProcessor buffer = picture.getSource(Picture.SourceKey.BINARY);
-        table = new ChamferDistance.Short().computeToFore(buffer);
+        long start = System.currentTimeMillis();
+
+        if (constants.useEuclidean.isSet()) {
+            table = computeEuclidean(buffer);
+        } else {
+            table = new ChamferDistance.Short().computeToFore(buffer);
+        }
+
+        logger.debug("Distances computed in {} ms", System.currentTimeMillis() - start);
 
         // "Erase" staff lines, ledgers, stems
         paintLines();
@@ -122,6 +133,56 @@ public class DistancesBuilder
         return table;
     }
 
+    //------------------//
+    // computeEuclidean //
+    //------------------//
+    /**
+     * Compute the exact Euclidean distances, perhaps limited to the vertical bands of systems.
+     * <p>
+     * Outside systems bands, distances are left unknown, since no note head is looked up there.
+     * Within a band, only the foreground pixels of the band are considered.
+     *
+     * @param buffer the binary image
+     * @return the table of distances
+     */
+    private DistanceTable computeEuclidean (ByteProcessor buffer)
+    {
+        final EuclideanDistance transform = new EuclideanDistance();
+
+        if (!constants.restrictToSystems.isSet() || sheet.getSystems().isEmpty()) {
+            return transform.computeToFore(buffer);
+        }
+
+        final int height = buffer.getHeight();
+        final DistanceTable output = new DistanceTable.Short(
+                buffer.getWidth(),
+                height,
+                EuclideanDistance.DEFAULT_NORMALIZER);
+        output.fill(ChamferDistance.VALUE_UNKNOWN);
+
+        // Merge the (overlapping) bands of systems
+        final int margin = sheet.getScale().toPixels(constants.systemMargin);
+        final List<int[]> bands = new ArrayList<>();
+
+        for (SystemInfo system : sheet.getSystems()) {
+            final int yMin = Math.max(0, system.getTop() - margin);
+            final int yMax = Math.min(height - 1, system.getBottom() + margin);
+            final int[] last = bands.isEmpty() ? null : bands.get(bands.size() - 1);
+
+            if ((last != null) && (yMin <= (last[1] + 1))) {
+                last[1] = Math.max(last[1], yMax);
+            } else {
+                bands.add(new int[]{yMin, yMax});
+            }
+        }
+
+        for (int[] band : bands) {
+            transform.computeToFore(buffer, output, band[0], band[1]);
+        }
+
+        return output;
+    }
+
     //------------//
     // paintGlyph //
     //------------//
@@ -195,5 +256,17 @@ public class DistancesBuilder
         private final Constant.Boolean displayTemplates = new Constant.Boolean(
                 false,
                 "Should we display the templates tab?");
+
+        private final Constant.Boolean useEuclidean = new Constant.Boolean(
+                true,
+                "Should we compute exact Euclidean distances rather than chamfer distances?");
+
+        private final Constant.Boolean restrictToSystems = new Constant.Boolean(
+                true,
+                "Should we compute Euclidean distances only within systems bands?");
+
+        private final Scale.Fraction systemMargin = new Scale.Fraction(
+                6.0,
+                "Vertical margin around system for distances computation");
     }
 }
@@ -23,6 +23,7 @@ package org.audiveris.omr.sheet.note;
 
 import org.audiveris.omr.glyph.Glyph;
 import org.audiveris.omr.image.DistanceTable;
+import org.audiveris.omr.image.PackedDistances;
 import org.audiveris.omr.sheet.Sheet;
 import org.audiveris.omr.sheet.SystemInfo;
 import org.audiveris.omr.step.AbstractSystemStep;
@@ -63,7 +64,8 @@ public class HeadsStep
             throws StepException
     {
         final List<Glyph> spots = context.sheetSpots.get(system);
-        new NoteHeadsBuilder(system, context.distanceTable, spots).buildHeads();
+        new NoteHeadsBuilder(system, context.distanceTable, context.packedDistances, spots)
+                .buildHeads();
     }
 
     //----------//
@@ -76,10 +78,13 @@ public class HeadsStep
         // Build proper distance table and make it available for system-level processing
         DistanceTable distances = new DistancesBuilder(sheet).buildDistances();
 
+        // Bit-packed view of the distance table, for faster template matching
+        PackedDistances packed = new PackedDistances(distances);
+
         // Retrieve spots for (black) notes
         Map<SystemInfo, List<Glyph>> sheetSpots = new HeadSpotsBuilder(sheet).getSpots();
 
-        return new Context(distances, sheetSpots);
+        return new Context(distances, packed, sheetSpots);
     }
 
     //---------//
@@ -96,6 +101,11 @@ public class HeadsStep
          */
         public final DistanceTable distanceTable;
 
+        /**
+         * Bit-packed view of distances.
+         */
+        public final PackedDistances packedDistances;
+
         /**
          * Spots per system.
          */
@@ -105,12 +115,15 @@ public class HeadsStep
          * Create a Context.
          *
          * @param distanceTable
+         * @param packedDistances
          * @param sheetSpots
          */
         Context (DistanceTable distanceTable,
+                 PackedDistances packedDistances,
                  Map<SystemInfo, List<Glyph>> sheetSpots)
         {
             this.distanceTable = distanceTable;
+            this.packedDistances = packedDistances;
             this.sheetSpots = sheetSpots;
         }
     }
@@ -33,6 +33,7 @@ import org.audiveris.omr.glyph.ShapeSet;
 import org.audiveris.omr.image.Anchored.Anchor;
 import static org.audiveris.omr.image.Anchored.Anchor.*;
 import org.audiveris.omr.image.DistanceTable;
+import org.audiveris.omr.image.PackedDistances;
 import org.audiveris.omr.image.PixelDistance;
 import org.audiveris.omr.image.ShapeDescriptor;
 import org.audiveris.omr.image.Template;
@@ -63,6 +64,7 @@ import org.audiveris.omr.sig.inter.Inters;
 import org.audiveris.omr.sig.inter.LedgerInter;
 import org.audiveris.omr.sig.relation.HeadStemRelation;
 import org.audiveris.omr.util.Dumping;
+import org.audiveris.omr.util.ForkedTasks;
 import static org.audiveris.omr.util.HorizontalSide.*;
 import org.audiveris.omr.util.Navigable;
 import org.audiveris.omr.util.Predicate;
@@ -82,9 +84,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import org.audiveris.omr.sig.inter.AbstractNoteInter;
 
 /**
@@ -148,6 +150,9 @@ public class NoteHeadsBuilder
     /** The distance table to use. */
     private final DistanceTable distances;
 
+    /** The bit-packed view of distances, if any. */
+    private final PackedDistances packed;
+
     /** The note-oriented spots for this system. */
     private final List<Glyph> systemSpots;
 
@@ -194,14 +199,17 @@ public class NoteHeadsBuilder
      *
      * @param system      the system to process
      * @param distances   the distance table
+     * @param packed      the bit-packed view of distances, or null
      * @param systemSpots spots detected for this system
      */
     public NoteHeadsBuilder (SystemInfo system,
                              DistanceTable distances,
+                             PackedDistances packed,
                              List<Glyph> systemSpots)
     {
         this.system = system;
         this.distances = distances;
+        this.packed = constants.usePackedMatching.isSet() ? packed : null;
         this.systemSpots = systemSpots;
 
         sig = system.getSig();
@@ -694,6 +702,11 @@ public class NoteHeadsBuilder
      * <p>
      * Pay attention to adjust ordinate as precisely as possible in the middle
      * of staff lines or ledger lines.
+     * <p>
+     * Scanners (one per line or ledger, and direction) are created in sequence and then run as
+     * forked tasks.
+     * Scanners only propose head candidates, their glyphs and SIG vertices are created after
+     * all scanners have completed, in scanners order, so that ids do not depend on scheduling.
      *
      * @param staff    the staff to process
      * @param useSeeds should we stick to stem seeds or not?
@@ -702,7 +715,7 @@ public class NoteHeadsBuilder
     private List<Inter> processStaff (Staff staff,
                                       boolean useSeeds)
     {
-        List<Inter> ch = new ArrayList<>(); // Created heads
+        List<Scanner> scanners = new ArrayList<>();
 
         // Use all staff lines
         int pitch = -5; // Current pitch
@@ -712,14 +725,14 @@ public class NoteHeadsBuilder
             LineAdapter adapter = new StaffLineAdapter(staff, line);
 
             // Look above line
-            ch.addAll(new Scanner(adapter, prevAdapter, -1, pitch++, useSeeds).lookup());
+            scanners.add(new Scanner(adapter, prevAdapter, -1, pitch++, useSeeds));
 
             // Look exactly on line
-            ch.addAll(new Scanner(adapter, null, 0, pitch++, useSeeds).lookup());
+            scanners.add(new Scanner(adapter, null, 0, pitch++, useSeeds));
 
             // For the last line only, look just below line
             if (pitch == 5) {
-                ch.addAll(new Scanner(adapter, null, 1, pitch++, useSeeds).lookup());
+                scanners.add(new Scanner(adapter, null, 1, pitch++, useSeeds));
             }
 
             prevAdapter = adapter;
@@ -744,11 +757,37 @@ public class NoteHeadsBuilder
                     Glyph glyph = ledger.getGlyph();
                     LineAdapter adapter = new LedgerAdapter(staff, p, glyph);
                     // Look right on ledger
-                    ch.addAll(new Scanner(adapter, null, 0, pitch, useSeeds).lookup());
+                    scanners.add(new Scanner(adapter, null, 0, pitch, useSeeds));
 
                     // Look just further from staff
                     int pitch2 = pitch + dir;
-                    ch.addAll(new Scanner(adapter, null, dir, pitch2, useSeeds).lookup());
+                    scanners.add(new Scanner(adapter, null, dir, pitch2, useSeeds));
+                }
+            }
+        }
+
+        List<Callable<List<HeadInter>>> tasks = new ArrayList<>();
+
+        for (final Scanner scanner : scanners) {
+            tasks.add(new Callable<List<HeadInter>>()
+            {
+                @Override
+                public List<HeadInter> call ()
+                {
+                    return scanner.lookup();
+                }
+            });
+        }
+
+        List<Inter> ch = new ArrayList<>(); // Created heads
+
+        for (List<HeadInter> heads : ForkedTasks.invokeAllUnchecked(tasks)) {
+            for (HeadInter inter : heads) {
+                Glyph glyph = inter.retrieveGlyph(image);
+
+                if (glyph != null) {
+                    sig.addVertex(inter);
+                    ch.add(inter);
                 }
             }
         }
@@ -910,6 +949,9 @@ public class NoteHeadsBuilder
 
         private List<HeadInter> inters = new ArrayList<>();
 
+        /** Counters for this scanner only. */
+        private final Perf perf = new Perf();
+
         /** Offsets tried around a given ordinate. */
         private final int[] yOffsets;
 
@@ -978,7 +1020,10 @@ public class NoteHeadsBuilder
 
         public List<HeadInter> lookup ()
         {
-            return useSeeds ? lookupSeeds() : lookupRange();
+            final List<HeadInter> list = useSeeds ? lookupSeeds() : lookupRange();
+            (useSeeds ? seedsPerf : rangePerf).include(perf);
+
+            return list;
         }
 
         //-------------//
@@ -1053,48 +1098,79 @@ public class NoteHeadsBuilder
         //------//
         // eval //
         //------//
+        /**
+         * Evaluate the provided shape at provided location.
+         *
+         * @param shape       the shape to evaluate
+         * @param x           pivot abscissa
+         * @param y           pivot ordinate
+         * @param anchor      precise anchor
+         * @param maxDistance distance beyond which evaluation can be abandoned
+         * @return the location with its distance (perhaps Template.ABANDONED), or null if the
+         *         location is not relevant
+         */
         private PixelDistance eval (Shape shape,
                                     int x,
                                     int y,
-                                    Anchor anchor)
+                                    Anchor anchor,
+                                    double maxDistance)
         {
             final ShapeDescriptor desc = catalog.getDescriptor(shape);
             final Rectangle symBox = desc.getSymbolBoundsAt(x, y, anchor);
 
             // Skip if frozen barline/connector is too close
             if (barInvolved(symBox)) {
-                if (useSeeds) {
-                    seedsPerf.bars++;
-                } else {
-                    rangePerf.bars++;
-                }
+                perf.bars++;
 
                 return null;
             }
 
             // Skip if location already used by really good object (beam, etc)
             if (overlap(symBox, competitors)) {
-                if (useSeeds) {
-                    seedsPerf.overlaps++;
-                } else {
-                    rangePerf.overlaps++;
-                }
+                perf.overlaps++;
 
                 return null;
             }
 
             // Then try (all variants for) the shape and keep the best dist
-            double dist = desc.evaluate(x, y, anchor, distances);
+            double dist = (packed != null) ? desc.evaluate(x, y, anchor, packed, maxDistance)
+                    : desc.evaluate(x, y, anchor, distances, maxDistance);
 
-            if (useSeeds) {
-                seedsPerf.evals++;
-            } else {
-                rangePerf.evals++;
+            perf.evals++;
+
+            if (dist == Template.ABANDONED) {
+                perf.cutoffs++;
             }
 
             return new PixelDistance(x, y, dist);
         }
 
+        //-------//
+        // bound //
+        //-------//
+        /**
+         * Report the distance beyond which an evaluation can be abandoned.
+         * <p>
+         * The very first location tried for a shape must be fully evaluated, since its exact
+         * distance is checked against the really bad distance.
+         * Any other location is of interest only if it beats both the maximum low distance and the
+         * best location found so far.
+         *
+         * @param first   true for the very first location tried
+         * @param bestLoc best location so far, if any
+         * @return the maximum distance of interest
+         */
+        private double bound (boolean first,
+                              PixelDistance bestLoc)
+        {
+            if (first || !constants.useEarlyTermination.isSet()) {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            return (bestLoc != null) ? Math.min(params.maxDistanceLow, bestLoc.d)
+                    : params.maxDistanceLow;
+        }
+
         //-----------------//
         // evalBlackAsVoid //
         //-----------------//
@@ -1112,7 +1188,9 @@ public class NoteHeadsBuilder
                                        Anchor anchor)
         {
             final ShapeDescriptor desc = catalog.getDescriptor(Shape.NOTEHEAD_VOID);
-            final double holeWhiteRatio = desc.evaluateHole(x, y, anchor, distances);
+            final double holeWhiteRatio = (packed != null)
+                    ? desc.evaluateHole(x, y, anchor, packed)
+                    : desc.evaluateHole(x, y, anchor, distances);
 
             if (holeWhiteRatio >= constants.minHoleWhiteRatio.getValue()) {
                 return Shape.NOTEHEAD_VOID;
@@ -1260,7 +1338,12 @@ public class NoteHeadsBuilder
 
                     for (int yOffset : yOffsets) {
                         final int y = y0 + yOffset;
-                        PixelDistance loc = eval(shape, x0, y, MIDDLE_LEFT);
+                        PixelDistance loc = eval(
+                                shape,
+                                x0,
+                                y,
+                                MIDDLE_LEFT,
+                                bound(y == y0, bestLoc));
 
                         if ((loc != null) && (loc.d <= params.maxDistanceLow)) {
                             if ((bestLoc == null) || (bestLoc.d > loc.d)) {
@@ -1270,7 +1353,7 @@ public class NoteHeadsBuilder
                             // This is the very first (best guess) location tried.
                             // If eval is really bad, stop immediately
                             if ((loc == null) || (loc.d >= params.reallyBadDistance)) {
-                                rangePerf.abandons++;
+                                perf.abandons++;
 
                                 continue ShapeLoop;
                             }
@@ -1304,16 +1387,6 @@ public class NoteHeadsBuilder
             inters = aggregateMatches(inters);
             // Check conflict with seed-based instances
             inters = filterSeedConflicts(inters, competitors);
-            for (Iterator<HeadInter> it = inters.iterator(); it.hasNext();) {
-                HeadInter inter = it.next();
-                Glyph glyph = inter.retrieveGlyph(image);
-
-                if (glyph != null) {
-                    sig.addVertex(inter);
-                } else {
-                    it.remove();
-                }
-            }
             return inters;
         }
 
@@ -1356,7 +1429,12 @@ public class NoteHeadsBuilder
 
                             for (int xOffset : xOffsets) {
                                 final int x = x0 + xOffset;
-                                PixelDistance loc = eval(shape, x, y, anchor);
+                                PixelDistance loc = eval(
+                                        shape,
+                                        x,
+                                        y,
+                                        anchor,
+                                        bound((x == x0) && (y == y0), bestLoc));
 
                                 if ((loc != null) && (loc.d <= params.maxDistanceLow)) {
                                     if ((bestLoc == null) || (bestLoc.d > loc.d)) {
@@ -1366,7 +1444,7 @@ public class NoteHeadsBuilder
                                     // This is the very first (best guess) location tried.
                                     // If eval is really bad, stop immediately
                                     if ((loc == null) || (loc.d >= params.reallyBadDistance)) {
-                                        seedsPerf.abandons++;
+                                        perf.abandons++;
 
                                         continue ShapeLoop;
                                     }
@@ -1392,12 +1470,7 @@ public class NoteHeadsBuilder
                                     pitch);
 
                             if (inter != null) {
-                                Glyph glyph = inter.retrieveGlyph(image);
-
-                                if (glyph != null) {
-                                    sig.addVertex(inter);
-                                    inters.add(inter);
-                                }
+                                inters.add(inter);
                             }
                         }
                     }
@@ -1547,6 +1620,14 @@ public class NoteHeadsBuilder
                 false,
                 "Should we allow staff attachments for created areas?");
 
+        private final Constant.Boolean usePackedMatching = new Constant.Boolean(
+                true,
+                "Should we use bit-packed template matching?");
+
+        private final Constant.Boolean useEarlyTermination = new Constant.Boolean(
+                true,
+                "Should we abandon template evaluations that cannot be accepted?");
+
         private final Scale.Fraction maxTemplateDx = new Scale.Fraction(
                 0.375,
                 "Maximum dx between similar template instances");
@@ -1692,15 +1773,32 @@ public class NoteHeadsBuilder
 
         int abandons;
 
+        int cutoffs;
+
+        /**
+         * Add the counters of another Perf instance.
+         *
+         * @param that the other instance
+         */
+        synchronized void include (Perf that)
+        {
+            bars += that.bars;
+            overlaps += that.overlaps;
+            evals += that.evals;
+            abandons += that.abandons;
+            cutoffs += that.cutoffs;
+        }
+
         @Override
-        public String toString ()
+        public synchronized String toString ()
         {
             return String.format(
-                    "%7d bars, %7d overlaps, %7d evals, %7d abandons",
+                    "%7d bars, %7d overlaps, %7d evals, %7d abandons, %7d cutoffs",
                     bars,
                     overlaps,
                     evals,
-                    abandons);
+                    abandons,
+                    cutoffs);
         }
     }
 
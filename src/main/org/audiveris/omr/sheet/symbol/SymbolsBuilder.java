@@ -40,6 +40,7 @@ import org.audiveris.omr.sheet.SystemInfo;
 import org.audiveris.omr.sig.inter.Inter;
 import org.audiveris.omr.sig.inter.SmallChordInter;
 import org.audiveris.omr.util.Dumping;
+import org.audiveris.omr.util.ForkedTasks;
 import org.audiveris.omr.util.Navigable;
 import org.audiveris.omr.util.StopWatch;
 
@@ -58,6 +59,7 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Class {@code SymbolsBuilder} is in charge, at system level, of retrieving all
@@ -125,13 +127,14 @@ public class SymbolsBuilder
      * - getSymbolsGlyphs()                             // Retrieve all glyphs usable for symbols
      * - buildLinks()                                   // Build graph with distances
      * - processClusters():                             // Group connected glyphs into clusters
-     *    + FOREACH cluster of connected glyphs:
+     *    + FOREACH cluster of connected glyphs:        // (clusters are processed in parallel)
      *       + cluster.decompose()                      // Decompose cluster into all subsets
      *       + FOREACH subset process(subset):
      *          - build compound glyph                  // Build one compound glyph per subset
      *          - evaluateGlyph(compound)               // Run shape classifier on compound
-     *          - FOREACH acceptable evaluation
-     *             + symbolFactory.create(eval, glyph)  // Create inter(s) related to evaluation
+     *    + FOREACH cluster, FOREACH evaluated glyph    // (in sequence, in clusters order)
+     *       + register glyph
+     *       + symbolFactory.create(eval, glyph)        // Create inter(s) related to evaluation
      * </pre>
      *
      * @param optionalsMap the optional (weak) glyphs per system
@@ -168,22 +171,20 @@ public class SymbolsBuilder
     // evaluateGlyph //
     //---------------//
     /**
-     * Evaluate a provided glyph and create all acceptable inter instances.
+     * Evaluate a provided glyph and record it, with its acceptable evaluation if any.
+     * <p>
+     * The glyph is not registered here, this is left to the sequential creation phase.
      *
-     * @param glyph the glyph to evaluate
+     * @param glyph      the glyph to evaluate
+     * @param candidates (output) the candidates to populate
      */
-    private void evaluateGlyph (Glyph glyph)
+    private void evaluateGlyph (Glyph glyph,
+                                List<Candidate> candidates)
     {
-        if (glyph.getId() == 0) {
-            glyph = sheet.getGlyphIndex().registerOriginal(glyph);
-        }
-
+        final Candidate candidate = new Candidate(glyph);
+        candidates.add(candidate);
         logger.debug("evaluateGlyph on {}", glyph);
 
-        if (glyph.isVip()) {
-            logger.info("VIP evaluateGlyph on {}", glyph);
-        }
-
         final Point center = glyph.getCenter();
         final Staff closestStaff = system.getClosestStaff(center); // Just an indication!
 
@@ -219,11 +220,8 @@ public class SymbolsBuilder
             Evaluation eval = evals[0];
 
             ///if (evals2.length > 0 && eval.shape == evals2[0].shape) {
-            try {
-                factory.create(eval, glyph, closestStaff);
-            } catch (Exception ex) {
-                logger.warn("Error in glyph evaluation " + ex, ex);
-            }
+            candidate.eval = eval;
+            candidate.staff = closestStaff;
 
             ///}
         }
@@ -300,15 +298,65 @@ public class SymbolsBuilder
         return false;
     }
 
+    //----------------//
+    // processCluster //
+    //----------------//
+    /**
+     * Process one cluster of connected glyphs.
+     *
+     * @param set         the glyphs of the cluster
+     * @param systemGraph the graph of candidate glyphs, with their mutual distances
+     * @return the candidates found in this cluster
+     */
+    private List<Candidate> processCluster (Collection<Glyph> set,
+                                            SimpleGraph<Glyph, GlyphLink> systemGraph)
+    {
+        final List<Candidate> candidates = new ArrayList<>();
+        final int maxPartCount = constants.maxPartCount.getValue();
+        final int setSize = set.size();
+        logger.debug("set size: {}", setSize);
+
+        if (setSize > 1) {
+            if (setSize > maxPartCount) {
+                List<Glyph> list = new ArrayList<>(set);
+                Collections.sort(list, Glyphs.byReverseWeight);
+                set = list.subList(0, maxPartCount);
+                logger.info("Symbol parts shrunk from {} to {}", setSize, maxPartCount);
+            }
+
+            // Use just the subgraph for this (sub)set
+            final SimpleGraph<Glyph, GlyphLink> subGraph;
+            subGraph = GlyphCluster.getSubGraph(set, systemGraph, true);
+            new GlyphCluster(new SymbolAdapter(subGraph, candidates), GlyphGroup.SYMBOL)
+                    .decompose();
+        } else {
+            // The set is just an isolated glyph, to be evaluated directly
+            final Glyph glyph = set.iterator().next();
+
+            if (classifier.isBigEnough(glyph, sheet.getInterline())) {
+                evaluateGlyph(glyph, candidates);
+            }
+        }
+
+        return candidates;
+    }
+
     //-----------------//
     // processClusters //
     //-----------------//
     /**
      * Process all clusters of connected glyphs, based on the glyphs graph.
+     * <p>
+     * Clusters are decomposed and evaluated as forked tasks, then glyphs are registered and inters
+     * are created in sequence, in clusters order, which is the order of a sequential processing.
+     * <p>
+     * Deferring inter creation does not modify evaluations: the CHECKED condition (see
+     * {@link org.audiveris.omr.glyph.ShapeChecker}) looks at glyph geometry and system staves
+     * only, never at the inters present in SIG.
      *
      * @param systemGraph the graph of candidate glyphs, with their mutual distances
      */
-    private void processClusters (SimpleGraph<Glyph, GlyphLink> systemGraph)
+    private void processClusters (final SimpleGraph<Glyph, GlyphLink> systemGraph)
     {
         // Retrieve all the clusters of glyphs (sets of connected glyphs)
         final ConnectivityInspector<Glyph, GlyphLink> inspector = new ConnectivityInspector<>(
@@ -316,31 +364,37 @@ public class SymbolsBuilder
         final List<Set<Glyph>> sets = inspector.connectedSets();
         logger.debug("symbols sets: {}", sets.size());
 
-        final int interline = sheet.getInterline();
-        final int maxPartCount = constants.maxPartCount.getValue();
+        final List<Callable<List<Candidate>>> tasks = new ArrayList<>();
 
-        for (Collection<Glyph> set : sets) {
-            final int setSize = set.size();
-            logger.debug("set size: {}", setSize);
+        for (final Set<Glyph> set : sets) {
+            tasks.add(new Callable<List<Candidate>>()
+            {
+                @Override
+                public List<Candidate> call ()
+                {
+                    return processCluster(set, systemGraph);
+                }
+            });
+        }
 
-            if (setSize > 1) {
-                if (setSize > maxPartCount) {
-                    List<Glyph> list = new ArrayList<>(set);
-                    Collections.sort(list, Glyphs.byReverseWeight);
-                    set = list.subList(0, maxPartCount);
-                    logger.info("Symbol parts shrunk from {} to {}", setSize, maxPartCount);
+        for (List<Candidate> candidates : ForkedTasks.invokeAllUnchecked(tasks)) {
+            for (Candidate candidate : candidates) {
+                Glyph glyph = candidate.glyph;
+
+                if (glyph.getId() == 0) {
+                    glyph = sheet.getGlyphIndex().registerOriginal(glyph);
                 }
 
-                // Use just the subgraph for this (sub)set
-                final SimpleGraph<Glyph, GlyphLink> subGraph;
-                subGraph = GlyphCluster.getSubGraph(set, systemGraph, true);
-                new GlyphCluster(new SymbolAdapter(subGraph), GlyphGroup.SYMBOL).decompose();
-            } else {
-                // The set is just an isolated glyph, to be evaluated directly
-                final Glyph glyph = set.iterator().next();
+                if (glyph.isVip()) {
+                    logger.info("VIP evaluateGlyph on {} {}", glyph, candidate.eval);
+                }
 
-                if (classifier.isBigEnough(glyph, interline)) {
-                    evaluateGlyph(glyph);
+                if (candidate.eval != null) {
+                    try {
+                        factory.create(candidate.eval, glyph, candidate.staff);
+                    } catch (Exception ex) {
+                        logger.warn("Error in glyph evaluation " + ex, ex);
+                    }
                 }
             }
         }
@@ -374,16 +428,21 @@ public class SymbolsBuilder
 
         private final Scale scale = sheet.getScale();
 
-        SymbolAdapter (SimpleGraph<Glyph, GlyphLink> graph)
+        /** Candidates found in cluster. */
+        private final List<Candidate> candidates;
+
+        SymbolAdapter (SimpleGraph<Glyph, GlyphLink> graph,
+                       List<Candidate> candidates)
         {
             super(graph);
+            this.candidates = candidates;
         }
 
         @Override
         public void evaluateGlyph (Glyph glyph,
                                    Set<Glyph> parts)
         {
-            SymbolsBuilder.this.evaluateGlyph(glyph);
+            SymbolsBuilder.this.evaluateGlyph(glyph, candidates);
         }
 
         @Override
@@ -411,6 +470,30 @@ public class SymbolsBuilder
         }
     }
 
+    //-----------//
+    // Candidate //
+    //-----------//
+    /**
+     * Evaluated glyph, with its acceptable evaluation if any, for which inter(s) are to be
+     * created.
+     */
+    private static class Candidate
+    {
+
+        final Glyph glyph;
+
+        /** Acceptable evaluation, if any. */
+        Evaluation eval;
+
+        /** Closest staff, if eval is not null. */
+        Staff staff;
+
+        Candidate (Glyph glyph)
+        {
+            this.glyph = glyph;
+        }
+    }
+
     //-----------//
     // Constants //
     //-----------//
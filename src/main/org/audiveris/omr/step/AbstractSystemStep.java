@@ -23,16 +23,15 @@ package org.audiveris.omr.step;
 
 import org.audiveris.omr.Main;
 import org.audiveris.omr.OMR;
-import org.audiveris.omr.log.LogUtil;
 import org.audiveris.omr.sheet.Sheet;
 import org.audiveris.omr.sheet.SystemInfo;
-import org.audiveris.omr.util.OmrExecutors;
+import org.audiveris.omr.util.ForkedTasks;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 /**
@@ -160,6 +159,9 @@ public abstract class AbstractSystemStep<C>
     //---------------//
     /**
      * Launch the system processing (perhaps in parallel, one task per system)
+     * <p>
+     * In parallel, systems are processed on the shared fork/join pool, where system tasks may
+     * fork finer subtasks.
      *
      * @param systems the systems to process
      * @param sheet   the containing sheet
@@ -169,7 +171,7 @@ public abstract class AbstractSystemStep<C>
     {
         try {
             final boolean parallel = Main.processSystemsInParallel();
-            final Collection<Callable<Void>> tasks = new ArrayList<>();
+            final List<Callable<Void>> tasks = new ArrayList<>();
 
             for (final SystemInfo system : sheet.getSystems()) {
                 tasks.add(new Callable<Void>()
@@ -178,13 +180,8 @@ public abstract class AbstractSystemStep<C>
                     public Void call ()
                             throws Exception
                     {
-                        // If run on a separate thread (case of parallel), we have to set/unset log
-                        // If not, let's not unset log (it may be needed in following epilog)
+                        // Log context is propagated by ForkedTasks (case of parallel)
                         try {
-                            if (parallel) {
-                                LogUtil.start(sheet.getStub());
-                            }
-
                             logger.debug(
                                     "{} doSystem #{}",
                                     AbstractSystemStep.this,
@@ -193,10 +190,6 @@ public abstract class AbstractSystemStep<C>
                             doSystem(system, context);
                         } catch (StepException ex) {
                             logger.warn(system.getLogPrefix() + ex, ex);
-                        } finally {
-                            if (parallel) {
-                                LogUtil.stopStub();
-                            }
                         }
 
                         return null;
@@ -207,7 +200,7 @@ public abstract class AbstractSystemStep<C>
             // Process all systems
             if (parallel) {
                 // In parallel
-                OmrExecutors.getLowExecutor().invokeAll(tasks);
+                ForkedTasks.invokeAll(tasks);
             } else {
                 // In sequence
                 for (Callable<Void> task : tasks) {
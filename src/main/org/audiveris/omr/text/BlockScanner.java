@@ -86,7 +86,7 @@ public class BlockScanner
                                       int id)
     {
         return OcrUtil.scan(
-                buffer.getBufferedImage(),
+                buffer,
                 constants.whiteMarginAdded.getValue(),
                 OCR.LayoutMode.SINGLE_BLOCK,
                 language,
@@ -21,6 +21,8 @@
 // </editor-fold>
 package org.audiveris.omr.text;
 
+import ij.process.ByteProcessor;
+
 import java.awt.Point;
 import java.awt.image.BufferedImage;
 import java.util.List;
@@ -89,6 +91,32 @@ public interface OCR
                               LayoutMode layoutMode,
                               String label);
 
+    /**
+     * Launch the recognition of the provided binary buffer, whose language is specified.
+     * <p>
+     * The buffer pixels are handed over to the OCR engine directly, without any intermediate
+     * image encoding.
+     *
+     * @param interline    typical interline value
+     * @param buffer       the provided buffer (pixels darker than middle gray are foreground)
+     * @param margin       amount of white pixels to add around the buffer (can be zero)
+     * @param topLeft      absolute coordinates of the buffer top left corner, or null
+     * @param languageCode language specification or null
+     * @param layoutMode   how the image layout should be analyzed
+     * @param label        an optional label related to the buffer, null otherwise.
+     *                     This is meant for keeping track of the temporary image files.
+     * @return a list of TextLine instances, or null.
+     *         The coordinates of any returned TextLine are absolute coordinates thanks to the
+     *         topLeft parameter.
+     */
+    List<TextLine> recognize (int interline,
+                              ByteProcessor buffer,
+                              int margin,
+                              Point topLeft,
+                              String languageCode,
+                              LayoutMode layoutMode,
+                              String label);
+
     /**
      * Exception used to signal that no OCR is actually available.
      */
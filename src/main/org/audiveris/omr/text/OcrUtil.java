@@ -21,6 +21,8 @@
 // </editor-fold>
 package org.audiveris.omr.text;
 
+import ij.process.ByteProcessor;
+
 import org.audiveris.omr.text.OCR.LayoutMode;
 import org.audiveris.omr.text.tesseract.TesseractOCR;
 
@@ -59,6 +61,40 @@ public abstract class OcrUtil
         return ocr;
     }
 
+    //------//
+    // scan //
+    //------//
+    /**
+     * Scan the provided binary buffer for lines of text.
+     * <p>
+     * As opposed to {@link #scan(BufferedImage, int, LayoutMode, String, int, String)}, the buffer
+     * pixels are handed to the OCR engine without being drawn into a new image.
+     *
+     * @param buffer     the provided buffer
+     * @param margin     amount of white pixels added around the buffer (can be zero)
+     * @param layoutMode MULTI_BLOCK or SINGLE_BLOCK
+     * @param language   language specification
+     * @param interline  scaling interline
+     * @param label      some label meant for debugging
+     * @return the raw lines of text found, with coordinates relative to buffer origin
+     */
+    public static List<TextLine> scan (ByteProcessor buffer,
+                                       int margin,
+                                       LayoutMode layoutMode,
+                                       String language,
+                                       int interline,
+                                       String label)
+    {
+        return ocr.recognize(
+                interline,
+                buffer,
+                margin,
+                new Point(0, 0),
+                language,
+                layoutMode,
+                label);
+    }
+
     //------//
     // scan //
     //------//
@@ -107,4 +143,15 @@ public abstract class OcrUtil
 
         return ocr.recognize(interline, bi, origin, language, layoutMode, label);
     }
+
+    //----------//
+    // shutdown //
+    //----------//
+    /**
+     * Release OCR resources, at application exit.
+     */
+    public static void shutdown ()
+    {
+        TesseractOCR.getInstance().shutdown();
+    }
 }
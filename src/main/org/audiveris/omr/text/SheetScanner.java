@@ -31,6 +31,7 @@ import org.audiveris.omr.glyph.GlyphFactory;
 import org.audiveris.omr.image.ImageUtil;
 import org.audiveris.omr.image.ShapeDescriptor;
 import org.audiveris.omr.image.Template;
+import org.audiveris.omr.log.LogUtil;
 import org.audiveris.omr.run.Orientation;
 import org.audiveris.omr.run.RunTable;
 import org.audiveris.omr.run.RunTableFactory;
@@ -48,7 +49,9 @@ import org.audiveris.omr.sig.SIGraph;
 import org.audiveris.omr.sig.inter.HeadInter;
 import org.audiveris.omr.sig.inter.Inter;
 import org.audiveris.omr.sig.inter.LedgerInter;
+import org.audiveris.omr.step.ProcessingCancellationException;
 import org.audiveris.omr.ui.BoardsPane;
+import org.audiveris.omr.util.OmrExecutors;
 import org.audiveris.omr.util.StopWatch;
 import org.audiveris.omr.util.param.Param;
 
@@ -63,7 +66,12 @@ import java.awt.Stroke;
 import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Class {@code SheetScanner} runs OCR on the whole sheet, where good inters and
@@ -72,6 +80,12 @@ import java.util.List;
  * Tesseract is used in MULTI_BLOCK layout mode, meaning that the sheet main contain several blocks
  * of text.
  * <p>
+ * By default, the sheet is split into horizontal bands, one per system (or group of systems side
+ * by side), cut along the emptiest row of each inter-system gap.
+ * These bands are recognized concurrently and their lines translated back to sheet coordinates.
+ * The {@code splitSheet} constant allows to get back to a single whole-sheet recognition,
+ * and the {@code compareModes} constant to run both modes and log their differences.
+ * <p>
  * The raw OCR output will later be processed at system level by dedicated TextBuilder instances.
  *
  * @author Hervé Bitteur
@@ -126,7 +140,7 @@ public class SheetScanner
             // Get clean page image
             watch.start("getCleanImage");
 
-            final BufferedImage image = getCleanImage(); // This also sets buffer member
+            getCleanImage(); // This sets buffer member, sharing pixels with the clean image
 
             // Perform OCR on whole image
             watch.start("OCR recognize");
@@ -135,13 +149,15 @@ public class SheetScanner
             final String language = textParam.getValue();
             logger.debug("scanSheet lan:{} on {}", language, sheet);
 
-            return OcrUtil.scan(
-                    image,
-                    constants.whiteMarginAdded.getValue(),
-                    OCR.LayoutMode.MULTI_BLOCK,
-                    language,
-                    sheet.getScale().getInterline(),
-                    sheet.getId());
+            if (constants.compareModes.isSet()) {
+                final List<TextLine> wholeLines = scanWhole(language);
+                final List<TextLine> splitLines = scanBands(language);
+                compareModes(wholeLines, splitLines);
+
+                return constants.splitSheet.isSet() ? splitLines : wholeLines;
+            }
+
+            return constants.splitSheet.isSet() ? scanBands(language) : scanWhole(language);
         } finally {
             if (constants.printWatch.isSet()) {
                 watch.print();
@@ -149,6 +165,229 @@ public class SheetScanner
         }
     }
 
+    //--------------//
+    // compareModes //
+    //--------------//
+    /**
+     * Log how the lines found in split mode match the lines found in whole-sheet mode.
+     * A line matches if there is a line with same value and intersecting bounds in the other mode.
+     *
+     * @param wholeLines lines from whole-sheet recognition
+     * @param splitLines lines from per-band recognition
+     */
+    private void compareModes (List<TextLine> wholeLines,
+                               List<TextLine> splitLines)
+    {
+        int matched = 0;
+
+        for (TextLine line : wholeLines) {
+            for (TextLine other : splitLines) {
+                if (line.getValue().equals(other.getValue())
+                    && line.getBounds().intersects(other.getBounds())) {
+                    matched++;
+
+                    break;
+                }
+            }
+        }
+
+        logger.info(
+                "{} OCR whole lines:{} split lines:{} whole lines matched in split:{}",
+                sheet.getId(),
+                wholeLines.size(),
+                splitLines.size(),
+                matched);
+
+        if (logger.isDebugEnabled()) {
+            for (TextLine line : wholeLines) {
+                logger.debug("whole {}", line);
+            }
+
+            for (TextLine line : splitLines) {
+                logger.debug("split {}", line);
+            }
+        }
+    }
+
+    //----------//
+    // getBands //
+    //----------//
+    /**
+     * Compute the horizontal bands, as ordinate limits, to split the sheet buffer.
+     * <p>
+     * Systems are browsed from top to bottom, systems overlapping vertically being kept in the
+     * same band.
+     * Between two bands, the cut is made on the row with the fewest black pixels, in the central
+     * half of the inter-system gap, so that a text line lying in the gap is not split.
+     *
+     * @return the sequence of band limits, from 0 to buffer height
+     */
+    private List<Integer> getBands ()
+    {
+        final List<SystemInfo> systems = new ArrayList<>(sheet.getSystems());
+        Collections.sort(systems, SystemInfo.byId);
+
+        final List<Integer> limits = new ArrayList<>();
+        limits.add(0);
+
+        int bottom = -1;
+
+        for (SystemInfo system : systems) {
+            if ((bottom != -1) && (system.getTop() > bottom)) {
+                final int gap = system.getTop() - bottom;
+                limits.add(emptiestRow(bottom + (gap / 4), system.getTop() - (gap / 4)));
+            }
+
+            bottom = Math.max(bottom, system.getBottom());
+        }
+
+        limits.add(buffer.getHeight());
+
+        return limits;
+    }
+
+    //-------------//
+    // emptiestRow //
+    //-------------//
+    /**
+     * Report the row with fewest black pixels within the provided ordinate range.
+     *
+     * @param y1 first row
+     * @param y2 last row
+     * @return the emptiest row
+     */
+    private int emptiestRow (int y1,
+                             int y2)
+    {
+        final int width = buffer.getWidth();
+        final byte[] pixels = (byte[]) buffer.getPixels();
+        int bestY = (y1 + y2) / 2;
+        int bestCount = Integer.MAX_VALUE;
+
+        for (int y = Math.max(0, y1); y <= Math.min(buffer.getHeight() - 1, y2); y++) {
+            final int base = y * width;
+            int count = 0;
+
+            for (int x = 0; x < width; x++) {
+                if ((pixels[base + x] & 0xFF) < 128) {
+                    count++;
+                }
+            }
+
+            if (count < bestCount) {
+                bestCount = count;
+                bestY = y;
+
+                if (count == 0) {
+                    break;
+                }
+            }
+        }
+
+        return bestY;
+    }
+
+    //-----------//
+    // scanBands //
+    //-----------//
+    /**
+     * Split the buffer into horizontal bands and recognize them concurrently.
+     *
+     * @param language language specification
+     * @return the lines found, in sheet coordinates
+     */
+    private List<TextLine> scanBands (final String language)
+    {
+        final List<Integer> limits = getBands();
+        final int width = buffer.getWidth();
+        final byte[] pixels = (byte[]) buffer.getPixels();
+        final List<Callable<List<TextLine>>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < (limits.size() - 1); i++) {
+            final int y1 = limits.get(i);
+            final int y2 = limits.get(i + 1);
+
+            if (y2 <= y1) {
+                continue;
+            }
+
+            final String label = sheet.getId() + "-band" + (i + 1);
+            tasks.add(new Callable<List<TextLine>>()
+            {
+                @Override
+                public List<TextLine> call ()
+                        throws Exception
+                {
+                    try {
+                        LogUtil.start(sheet.getStub());
+
+                        // Rows are contiguous in buffer, so band is a simple array range
+                        final ByteProcessor band = new ByteProcessor(
+                                width,
+                                y2 - y1,
+                                Arrays.copyOfRange(pixels, y1 * width, y2 * width));
+                        final List<TextLine> lines = OcrUtil.scan(
+                                band,
+                                constants.whiteMarginAdded.getValue(),
+                                OCR.LayoutMode.MULTI_BLOCK,
+                                language,
+                                sheet.getScale().getInterline(),
+                                label);
+
+                        if (lines == null) {
+                            return Collections.emptyList();
+                        }
+
+                        for (TextLine line : lines) {
+                            line.translate(0, y1);
+                        }
+
+                        return lines;
+                    } finally {
+                        LogUtil.stopStub();
+                    }
+                }
+            });
+        }
+
+        final List<TextLine> allLines = new ArrayList<>();
+
+        try {
+            for (Future<List<TextLine>> future : OmrExecutors.getLowExecutor().invokeAll(tasks)) {
+                allLines.addAll(future.get());
+            }
+        } catch (InterruptedException ex) {
+            logger.warn("scanBands got interrupted for {}", sheet);
+            throw new ProcessingCancellationException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+
+        return allLines;
+    }
+
+    //-----------//
+    // scanWhole //
+    //-----------//
+    /**
+     * Recognize the whole sheet buffer at once.
+     *
+     * @param language language specification
+     * @return the lines found, in sheet coordinates
+     */
+    private List<TextLine> scanWhole (String language)
+    {
+        final List<TextLine> lines = OcrUtil.scan(
+                buffer,
+                constants.whiteMarginAdded.getValue(),
+                OCR.LayoutMode.MULTI_BLOCK,
+                language,
+                sheet.getScale().getInterline(),
+                sheet.getId());
+
+        return (lines != null) ? lines : new ArrayList<TextLine>();
+    }
+
     //---------------//
     // getCleanImage //
     //---------------//
@@ -205,6 +444,14 @@ public class SheetScanner
                 false,
                 "Should we store texts buffer on disk?");
 
+        private final Constant.Boolean splitSheet = new Constant.Boolean(
+                true,
+                "Should we split sheet into system bands recognized in parallel?");
+
+        private final Constant.Boolean compareModes = new Constant.Boolean(
+                false,
+                "Should we run both whole-sheet and split OCR, and log their differences?");
+
         private final Scale.Fraction staffHorizontalMargin = new Scale.Fraction(
                 0.25,
                 "Horizontal margin around staff core area");
@@ -21,6 +21,8 @@
 // </editor-fold>
 package org.audiveris.omr.text.tesseract;
 
+import ij.process.ByteProcessor;
+
 import org.audiveris.omr.WellKnowns;
 import org.audiveris.omr.constant.Constant;
 import org.audiveris.omr.constant.ConstantSet;
@@ -82,6 +84,9 @@ public class TesseractOCR
     /** To assign a serial number to each image processing order. */
     private final AtomicInteger serial = new AtomicInteger(0);
 
+    /** Pool of initialized engines, lazily allocated. */
+    private volatile TesseractPool pool;
+
     /**
      * Creates the TesseractOCR singleton.
      */
@@ -142,6 +147,27 @@ public class TesseractOCR
         return OCR_FOLDER;
     }
 
+    //---------//
+    // getPool //
+    //---------//
+    /**
+     * Report the pool of Tesseract engines.
+     *
+     * @return the engines pool
+     */
+    public TesseractPool getPool ()
+    {
+        if (pool == null) {
+            synchronized (this) {
+                if (pool == null) {
+                    pool = new TesseractPool(getOcrFolder());
+                }
+            }
+        }
+
+        return pool;
+    }
+
     //----------//
     // identify //
     //----------//
@@ -191,44 +217,51 @@ public class TesseractOCR
                     bufferedImage);
 
             // Process the order
-            List<TextLine> lines = order.process();
-
-            // Post-processing
-            if (lines != null) {
-                final int maxDashWidth = (int) Math.rint(
-                        interline * constants.maxDashWidth.getValue());
-
-                for (TextLine line : lines) {
-                    for (TextWord word : line.getWords()) {
-                        boolean updated = false;
-
-                        for (TextChar ch : word.getChars()) {
-                            String charValue = ch.getValue();
+            return postProcess(order.process(), interline, topLeft);
+        } catch (IOException ex) {
+            logger.warn("Could not create OCR order", ex);
 
-                            // Chars: Fix long "—" vs short "-"
-                            if (charValue.equals("—") && (ch.getBounds().width <= maxDashWidth)) {
-                                ch.setValue("-");
-                                updated = true;
-                            }
-                        }
+            return null;
+        } catch (UnsatisfiedLinkError ex) {
+            final String msg = "OCR link error";
+            logger.warn(msg);
+            throw new UnavailableOcrException(msg, ex);
+        }
+    }
 
-                        if (updated) {
-                            word.checkValue(); // So that word value is consistent with its chars
-                        }
-                    }
+    //-----------//
+    // recognize //
+    //-----------//
+    @Override
+    public List<TextLine> recognize (int interline,
+                                     ByteProcessor buffer,
+                                     int margin,
+                                     Point topLeft,
+                                     String languageCode,
+                                     LayoutMode layoutMode,
+                                     String label)
+    {
+        // Make sure we have an OCR engine available
+        if (!isAvailable()) {
+            return null;
+        }
 
-                    // Translate relative coordinates to absolute ones?
-                    if (topLeft != null) {
-                        line.translate(topLeft.x, topLeft.y);
-                    }
-                }
-            }
+        try {
+            // Allocate a processing order, directly on buffer pixels
+            TesseractOrder order = new TesseractOrder(
+                    label,
+                    serial.incrementAndGet(),
+                    constants.keepImages.isSet(),
+                    languageCode,
+                    getMode(layoutMode),
+                    buffer,
+                    margin);
 
-            return lines;
-        } catch (IOException ex) {
-            logger.warn("Could not create OCR order", ex);
+            // Process the order, margin shifting the coordinates
+            final Point origin = (topLeft != null) ? new Point(topLeft) : new Point(0, 0);
+            origin.translate(-margin, -margin);
 
-            return null;
+            return postProcess(order.process(), interline, origin);
         } catch (UnsatisfiedLinkError ex) {
             final String msg = "OCR link error";
             logger.warn(msg);
@@ -236,6 +269,19 @@ public class TesseractOCR
         }
     }
 
+    //----------//
+    // shutdown //
+    //----------//
+    /**
+     * End the pooled Tesseract engines, if any.
+     */
+    public void shutdown ()
+    {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
     //---------------//
     // findOcrFolder //
     //---------------//
@@ -305,6 +351,54 @@ public class TesseractOCR
         }
     }
 
+    //-------------//
+    // postProcess //
+    //-------------//
+    /**
+     * Fix OCR raw lines and translate them to absolute coordinates.
+     *
+     * @param lines     the raw lines, perhaps null
+     * @param interline scaling interline
+     * @param topLeft   absolute coordinates of image top left corner, or null
+     * @return the lines, perhaps null
+     */
+    private List<TextLine> postProcess (List<TextLine> lines,
+                                        int interline,
+                                        Point topLeft)
+    {
+        if (lines != null) {
+            final int maxDashWidth = (int) Math.rint(
+                    interline * constants.maxDashWidth.getValue());
+
+            for (TextLine line : lines) {
+                for (TextWord word : line.getWords()) {
+                    boolean updated = false;
+
+                    for (TextChar ch : word.getChars()) {
+                        String charValue = ch.getValue();
+
+                        // Chars: Fix long "—" vs short "-"
+                        if (charValue.equals("—") && (ch.getBounds().width <= maxDashWidth)) {
+                            ch.setValue("-");
+                            updated = true;
+                        }
+                    }
+
+                    if (updated) {
+                        word.checkValue(); // So that word value is consistent with its chars
+                    }
+                }
+
+                // Translate relative coordinates to absolute ones?
+                if (topLeft != null) {
+                    line.translate(topLeft.x, topLeft.y);
+                }
+            }
+        }
+
+        return lines;
+    }
+
     //------------------//
     // scanOcrLocations //
     //------------------//
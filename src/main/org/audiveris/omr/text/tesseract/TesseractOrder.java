@@ -21,6 +21,8 @@
 // </editor-fold>
 package org.audiveris.omr.text.tesseract;
 
+import ij.process.ByteProcessor;
+
 import org.audiveris.omr.WellKnowns;
 import org.audiveris.omr.text.FontInfo;
 import org.audiveris.omr.text.OcrUtil;
@@ -47,6 +49,7 @@ import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -95,7 +98,10 @@ public class TesseractOrder
     /** Desired handling of layout. */
     private final int segMode;
 
-    /** The dedicated API. */
+    /** The pooled engine, if any. */
+    private TesseractPool.Engine engine;
+
+    /** The engine API. */
     private TessBaseAPI api;
 
     /** The image being processed. */
@@ -143,11 +149,58 @@ public class TesseractOrder
         }
     }
 
+    //----------------//
+    // TesseractOrder //
+    //----------------//
+    /**
+     * Creates a new TesseractOrder object directly on a binary buffer.
+     * <p>
+     * The PIX image is allocated in native memory and populated row by row from the buffer
+     * pixels, with no intermediate image encoding.
+     *
+     * @param label     A debugging label (such as sheet name or glyph id)
+     * @param serial    A unique id for this order instance
+     * @param keepImage True to keep a disk copy of the image
+     * @param lang      The language specification
+     * @param segMode   The desired page segmentation mode
+     * @param buffer    The buffer to process
+     * @param margin    The amount of white pixels to add around the buffer
+     * @throws UnsatisfiedLinkError When bridge to C++ could not be loaded
+     * @throws RuntimeException     When PIX image failed
+     */
+    public TesseractOrder (String label,
+                           int serial,
+                           boolean keepImage,
+                           String lang,
+                           int segMode,
+                           ByteProcessor buffer,
+                           int margin)
+            throws UnsatisfiedLinkError
+    {
+        this.label = label;
+        this.serial = serial;
+        this.keepImage = keepImage;
+        this.lang = lang;
+        this.segMode = segMode;
+
+        image = toPix(buffer, margin);
+
+        if (image == null) {
+            logger.warn("Invalid image {}", label);
+            throw new RuntimeException("Invalid image");
+        }
+
+        // Should we keep a local copy of this image on disk?
+        if (keepImage) {
+            keepPix();
+        }
+    }
+
     //---------//
     // process //
     //---------//
     /**
-     * Actually allocate a Tesseract API and recognize the image.
+     * Check out a pooled Tesseract engine and recognize the image.
      *
      * @return the sequence of lines found
      */
@@ -158,16 +211,15 @@ public class TesseractOrder
         }
 
         try {
-            final Path ocrFolder = TesseractOCR.getInstance().getOcrFolder();
-            api = new TessBaseAPI();
-
-            // Init API with proper language
-            if (api.Init(ocrFolder.toString(), lang) != 0) {
-                logger.warn("Could not initialize Tesseract with lang {}", lang);
+            // Get an engine already initialized with proper language
+            engine = TesseractOCR.getInstance().getPool().acquire(lang, segMode);
 
+            if (engine == null) {
                 return finish(null);
             }
 
+            api = engine.api;
+
             // Set API image
             api.SetImage(image);
 
@@ -194,6 +246,20 @@ public class TesseractOrder
             }
 
             throw new RuntimeException(ex);
+        } catch (InterruptedException ex) {
+            logger.warn("Interrupted while waiting for a Tesseract engine");
+            Thread.currentThread().interrupt();
+
+            return finish(null);
+        } catch (RuntimeException ex) {
+            // Engine state is unknown, don't give it back to the pool
+            if (engine != null) {
+                TesseractOCR.getInstance().getPool().release(engine, false);
+                engine = null;
+            }
+
+            finish(null);
+            throw ex;
         }
     }
 
@@ -201,19 +267,22 @@ public class TesseractOrder
     // finish //
     //--------//
     /**
-     * Convenient way to cleanup Tesseract resources while ending the current processing
+     * Convenient way to cleanup Tesseract resources while ending the current processing.
+     * The engine, if any, is given back to the pool for reuse.
      *
      * @param lines the lines found, if any
      * @return the lines found, if nay
      */
     private List<TextLine> finish (List<TextLine> lines)
     {
-        if (image != null) {
-            pixDestroy(image);
+        if (engine != null) {
+            TesseractOCR.getInstance().getPool().release(engine, true);
+            engine = null;
+            api = null;
         }
 
-        if (api != null) {
-            api.End();
+        if (image != null) {
+            pixDestroy(image);
         }
 
         return lines;
@@ -392,6 +461,84 @@ public class TesseractOrder
         }
     }
 
+    //---------//
+    // keepPix //
+    //---------//
+    /**
+     * Save a disk copy of the PIX image, in TIFF format.
+     */
+    private void keepPix ()
+    {
+        try {
+            // Make sure the TEMP directory exists
+            if (!Files.exists(WellKnowns.TEMP_FOLDER)) {
+                Files.createDirectories(WellKnowns.TEMP_FOLDER);
+            }
+
+            String name = String.format("%03d-", serial) + ((label != null) ? label : "");
+            Path path = WellKnowns.TEMP_FOLDER.resolve(name + ".tif");
+
+            if (pixWrite(path.toString(), image, IFF_TIFF_G4) != 0) {
+                logger.warn("Could not write to {}", path);
+            }
+        } catch (IOException ex) {
+            logger.warn("Could not create {}", WellKnowns.TEMP_FOLDER, ex);
+        }
+    }
+
+    //-------//
+    // toPix //
+    //-------//
+    /**
+     * Build a 1-bit PIX image out of the provided buffer.
+     * <p>
+     * In a 1 bpp PIX, a bit set to 1 is a black pixel, and each row is a sequence of 32-bit words,
+     * whose most significant bit is the leftmost pixel.
+     * A newly created PIX being all white, only black pixels need to be set.
+     *
+     * @param buffer the source buffer (pixels darker than middle gray are considered black)
+     * @param margin white margin to add around buffer
+     * @return the PIX image, or null
+     */
+    private static PIX toPix (ByteProcessor buffer,
+                              int margin)
+    {
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        final PIX pix = pixCreate(width + (2 * margin), height + (2 * margin), 1);
+
+        if (pix == null) {
+            return null;
+        }
+
+        final int wpl = pixGetWpl(pix);
+        final IntPointer data = pixGetData(pix);
+        final byte[] pixels = (byte[]) buffer.getPixels();
+        final int[] row = new int[wpl];
+
+        for (int y = 0; y < height; y++) {
+            final int base = y * width;
+            boolean empty = true;
+            Arrays.fill(row, 0);
+
+            for (int x = 0; x < width; x++) {
+                if ((pixels[base + x] & 0xFF) < 128) {
+                    final int px = x + margin;
+                    row[px >>> 5] |= (0x80000000 >>> (px & 31));
+                    empty = false;
+                }
+            }
+
+            if (!empty) {
+                data.position((long) (y + margin) * wpl).put(row, 0, wpl);
+            }
+        }
+
+        data.position(0);
+
+        return pix;
+    }
+
     //--------------//
     // toTiffBuffer //
     //--------------//
@@ -0,0 +1,322 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                                   T e s s e r a c t P o o l                                    //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.text.tesseract;
+
+import org.audiveris.omr.constant.Constant;
+import org.audiveris.omr.constant.ConstantSet;
+
+import org.bytedeco.javacpp.tesseract.TessBaseAPI;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Class {@code TesseractPool} is a bounded pool of initialized Tesseract engines, keyed by
+ * language specification and page segmentation mode.
+ * <p>
+ * Initializing a {@link TessBaseAPI} with its language data is expensive (typically several
+ * hundreds of milliseconds), so engines are kept initialized and reused from one OCR order to the
+ * next.
+ * The total number of engines (idle or in use) is bounded by the {@code poolSize} constant, which
+ * also limits the number of OCR orders in flight.
+ * An engine idle for more than {@code maxIdleSeconds} is ended (this is checked on each acquire and
+ * release), as well as the least recently used idle engine when room is needed for an engine of a
+ * different key.
+ * All idle engines are ended on {@link #shutdown}, after which released engines are no longer
+ * pooled.
+ *
+ * @author Hervé Bitteur
+ */
+public class TesseractPool
+{
+
+    private static final Constants constants = new Constants();
+
+    private static final Logger logger = LoggerFactory.getLogger(TesseractPool.class);
+
+    /** Folder with Tesseract data. */
+    private final Path ocrFolder;
+
+    /** Permits for engines in use. */
+    private final Semaphore permits;
+
+    /** Idle engines, per key, most recently used first. */
+    private final Map<String, Deque<Engine>> idles = new HashMap<>();
+
+    /** Total number of idle engines. */
+    private int idleCount;
+
+    /** Set when pool has been shut down. */
+    private boolean closed;
+
+    /**
+     * Creates a new {@code TesseractPool} object.
+     *
+     * @param ocrFolder folder with Tesseract data
+     */
+    public TesseractPool (Path ocrFolder)
+    {
+        this.ocrFolder = ocrFolder;
+        permits = new Semaphore(Math.max(1, constants.poolSize.getValue()), true);
+    }
+
+    //---------//
+    // acquire //
+    //---------//
+    /**
+     * Check out an engine initialized for the provided language and segmentation mode,
+     * waiting for one to become available if the pool is exhausted.
+     * <p>
+     * Each successful acquire must be balanced by a {@link #release(Engine, boolean)}.
+     *
+     * @param lang    language specification
+     * @param segMode page segmentation mode
+     * @return the engine ready to use, or null if initialization failed
+     * @throws InterruptedException if interrupted while waiting for an engine
+     */
+    public Engine acquire (String lang,
+                           int segMode)
+            throws InterruptedException
+    {
+        final String key = lang + "/" + segMode;
+        permits.acquire();
+
+        try {
+            // Reuse an idle engine for the same key if any
+            synchronized (this) {
+                evictIdles(System.currentTimeMillis() - (1000L * constants.maxIdleSeconds
+                        .getValue()));
+
+                final Deque<Engine> deque = idles.get(key);
+
+                if ((deque != null) && !deque.isEmpty()) {
+                    idleCount--;
+
+                    return deque.removeFirst();
+                }
+
+                // Make room, since our permit may be held by an idle engine of a different key
+                if ((idleCount + 1 + inUseCount()) > maxCount()) {
+                    evictOldest();
+                }
+            }
+
+            // Initialize a brand new engine
+            final TessBaseAPI api = new TessBaseAPI();
+
+            if (api.Init(ocrFolder.toString(), lang) != 0) {
+                logger.warn("Could not initialize Tesseract with lang {}", lang);
+                api.End();
+                permits.release();
+
+                return null;
+            }
+
+            api.SetPageSegMode(segMode);
+            logger.debug("New Tesseract engine {}", key);
+
+            return new Engine(key, api);
+        } catch (RuntimeException | Error ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    //---------//
+    // release //
+    //---------//
+    /**
+     * Give back an engine previously acquired.
+     *
+     * @param engine   the engine to give back
+     * @param reusable false if engine state is doubtful and engine must be ended
+     */
+    public void release (Engine engine,
+                         boolean reusable)
+    {
+        try {
+            if (reusable) {
+                engine.api.Clear(); // Free image and recognition results
+                engine.lastUse = System.currentTimeMillis();
+
+                synchronized (this) {
+                    if (!closed) {
+                        Deque<Engine> deque = idles.get(engine.key);
+
+                        if (deque == null) {
+                            idles.put(engine.key, deque = new ArrayDeque<>());
+                        }
+
+                        deque.addFirst(engine);
+                        idleCount++;
+                        evictIdles(engine.lastUse - (1000L * constants.maxIdleSeconds.getValue()));
+
+                        // Total of engines, our engine being now counted as idle
+                        while ((idleCount > 0) && ((idleCount + inUseCount()) > maxCount())) {
+                            evictOldest();
+                        }
+
+                        return;
+                    }
+                }
+            }
+
+            engine.api.End();
+        } finally {
+            permits.release();
+        }
+    }
+
+    //----------//
+    // shutdown //
+    //----------//
+    /**
+     * End all idle engines, engines still in use will be ended on release.
+     */
+    public synchronized void shutdown ()
+    {
+        closed = true;
+        evictIdles(Long.MAX_VALUE);
+    }
+
+    //------------//
+    // evictIdles //
+    //------------//
+    /**
+     * End every idle engine last used before the provided time.
+     *
+     * @param limit time limit
+     */
+    private void evictIdles (long limit)
+    {
+        for (Deque<Engine> deque : idles.values()) {
+            for (Iterator<Engine> it = deque.descendingIterator(); it.hasNext();) {
+                final Engine engine = it.next();
+
+                if (engine.lastUse < limit) {
+                    logger.debug("Ending idle Tesseract engine {}", engine.key);
+                    engine.api.End();
+                    it.remove();
+                    idleCount--;
+                }
+            }
+        }
+    }
+
+    //-------------//
+    // evictOldest //
+    //-------------//
+    /**
+     * End the least recently used idle engine, whatever its key.
+     */
+    private void evictOldest ()
+    {
+        Deque<Engine> oldestDeque = null;
+
+        for (Deque<Engine> deque : idles.values()) {
+            if (!deque.isEmpty()) {
+                if ((oldestDeque == null) || (deque.getLast().lastUse < oldestDeque.getLast()
+                        .lastUse)) {
+                    oldestDeque = deque;
+                }
+            }
+        }
+
+        if (oldestDeque != null) {
+            final Engine engine = oldestDeque.removeLast();
+            logger.debug("Ending Tesseract engine {} to make room", engine.key);
+            engine.api.End();
+            idleCount--;
+        }
+    }
+
+    //------------//
+    // inUseCount //
+    //------------//
+    /**
+     * Report the number of engines currently checked out, not counting the caller.
+     */
+    private int inUseCount ()
+    {
+        return maxCount() - permits.availablePermits() - 1;
+    }
+
+    //----------//
+    // maxCount //
+    //----------//
+    private int maxCount ()
+    {
+        return Math.max(1, constants.poolSize.getValue());
+    }
+
+    //--------//
+    // Engine //
+    //--------//
+    /**
+     * An initialized Tesseract engine, as handled by the pool.
+     */
+    public static class Engine
+    {
+
+        /** Language and segmentation mode. */
+        private final String key;
+
+        /** The initialized Tesseract API. */
+        public final TessBaseAPI api;
+
+        /** Time of last release. */
+        private long lastUse;
+
+        Engine (String key,
+                TessBaseAPI api)
+        {
+            this.key = key;
+            this.api = api;
+        }
+    }
+
+    //-----------//
+    // Constants //
+    //-----------//
+    private static class Constants
+            extends ConstantSet
+    {
+
+        private final Constant.Integer poolSize = new Constant.Integer(
+                "engines",
+                4,
+                "Maximum number of Tesseract engines (idle or in use)");
+
+        private final Constant.Integer maxIdleSeconds = new Constant.Integer(
+                "seconds",
+                300,
+                "Maximum idle time before a pooled Tesseract engine is ended");
+    }
+}
@@ -797,6 +797,9 @@ public class MainGui
             }
 
             logger.debug("{} book(s) closed", count);
+
+            // End OCR engines
+            OcrUtil.shutdown();
         }
     }
 }
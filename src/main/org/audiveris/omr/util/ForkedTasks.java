@@ -0,0 +1,225 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                                      F o r k e d T a s k s                                     //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.util;
+
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Class {@code ForkedTasks} runs a collection of tasks on the shared fork/join pool, see
+ * {@link OmrExecutors#getForkJoinPool()}.
+ * <p>
+ * Tasks can themselves fork finer subtasks through this same class: a thread waiting for its
+ * subtasks steals pending work rather than blocking, so that nested calls neither deadlock nor
+ * leave cores idle.
+ * <p>
+ * The logging context of the calling thread (book and sheet, see
+ * {@link org.audiveris.omr.log.LogUtil}) is propagated to every task, and the previous context of
+ * the executing thread is restored afterwards.
+ * <p>
+ * Without parallelism allowed (see {@link OmrExecutors#defaultParallelism}), tasks are simply run
+ * in sequence by the calling thread.
+ *
+ * @author Hervé Bitteur
+ */
+public abstract class ForkedTasks
+{
+
+    /** Not meant to be instantiated. */
+    private ForkedTasks ()
+    {
+    }
+
+    //-----------//
+    // invokeAll //
+    //-----------//
+    /**
+     * Run all provided tasks, and wait for their completion.
+     *
+     * @param <T>   type of task result
+     * @param tasks the tasks to run
+     * @return the tasks results, in tasks order
+     * @throws Exception the first exception raised by a task, if any
+     */
+    public static <T> List<T> invokeAll (List<? extends Callable<T>> tasks)
+            throws Exception
+    {
+        final List<T> results = new ArrayList<>(tasks.size());
+
+        if ((tasks.size() < 2) || !OmrExecutors.defaultParallelism.getValue()) {
+            // In sequence
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+
+            return results;
+        }
+
+        final Map<String, String> context = MDC.getCopyOfContextMap();
+        final List<LoggedTask<T>> forks = new ArrayList<>(tasks.size());
+
+        for (Callable<T> task : tasks) {
+            forks.add(new LoggedTask<>(task, context));
+        }
+
+        try {
+            if (ForkJoinTask.inForkJoinPool()) {
+                // Already within the pool: fork subtasks and help while waiting
+                ForkJoinTask.invokeAll(forks);
+            } else {
+                OmrExecutors.getForkJoinPool().invoke(new RecursiveTask<Void>()
+                {
+                    @Override
+                    protected Void compute ()
+                    {
+                        ForkJoinTask.invokeAll(forks);
+
+                        return null;
+                    }
+                });
+            }
+        } catch (TaskException ex) {
+            throw unwrap(ex);
+        }
+
+        for (LoggedTask<T> fork : forks) {
+            results.add(fork.getRawResult());
+        }
+
+        return results;
+    }
+
+    //--------------------//
+    // invokeAllUnchecked //
+    //--------------------//
+    /**
+     * Run all provided tasks, and wait for their completion, for callers that don't expect
+     * checked exceptions from their tasks.
+     * <p>
+     * A runtime exception raised by a task is rethrown as is, a checked exception is wrapped
+     * into a RuntimeException.
+     *
+     * @param <T>   type of task result
+     * @param tasks the tasks to run
+     * @return the tasks results, in tasks order
+     */
+    public static <T> List<T> invokeAllUnchecked (List<? extends Callable<T>> tasks)
+    {
+        try {
+            return invokeAll(tasks);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    //--------//
+    // unwrap //
+    //--------//
+    /**
+     * Retrieve the original exception raised by a task.
+     * (The fork/join framework may have wrapped the exception again when crossing threads)
+     */
+    private static Exception unwrap (TaskException ex)
+    {
+        Throwable cause = ex.getCause();
+
+        while (cause instanceof TaskException) {
+            cause = cause.getCause();
+        }
+
+        return (cause instanceof Exception) ? (Exception) cause : ex;
+    }
+
+    //------------//
+    // LoggedTask //
+    //------------//
+    /**
+     * Fork/join wrapper of a callable, run within the logging context of its creator.
+     *
+     * @param <T> type of result
+     */
+    private static class LoggedTask<T>
+            extends RecursiveTask<T>
+    {
+
+        private final Callable<T> callable;
+
+        private final Map<String, String> context;
+
+        LoggedTask (Callable<T> callable,
+                    Map<String, String> context)
+        {
+            this.callable = callable;
+            this.context = context;
+        }
+
+        @Override
+        protected T compute ()
+        {
+            final Map<String, String> previous = MDC.getCopyOfContextMap();
+            setContext(context);
+
+            try {
+                return callable.call();
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new TaskException(ex);
+            } finally {
+                setContext(previous);
+            }
+        }
+
+        private static void setContext (Map<String, String> map)
+        {
+            if (map != null) {
+                MDC.setContextMap(map);
+            } else {
+                MDC.clear();
+            }
+        }
+    }
+
+    //---------------//
+    // TaskException //
+    //---------------//
+    /**
+     * Unchecked carrier of a checked exception raised by a task.
+     */
+    private static class TaskException
+            extends RuntimeException
+    {
+
+        TaskException (Throwable cause)
+        {
+            super(cause);
+        }
+    }
+}
@@ -33,7 +33,13 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -43,8 +49,30 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <ul>
  * <li>lowExecutor: a fixed nb (#cpu+1) of threads with low priority</li>
  * <li>highExecutor: a fixed nb (#cpu+1) of threads with high priority</li>
- * <li>cachedLowExecutor: a varying nb of threads with low priority</li>
+ * <li>cachedLowExecutor: a varying nb of threads with low priority, for background tasks</li>
+ * <li>batchExecutor: a bounded nb of threads with low priority, for whole books and sheets</li>
+ * <li>nestedBatchExecutor: a bounded nb of threads with low priority, for tasks submitted to
+ * batchExecutor from one of its own threads</li>
+ * <li>forkJoinPool: a work-stealing pool (#cpu threads) with low priority, for systems and finer
+ * tasks, see {@link ForkedTasks}</li>
+ * <li>writerExecutor: a single thread for background storing of sheets</li>
  * </ul>
+ * <p>
+ * Low, high and batch pools are {@link BoundedExecutor} instances:
+ * <ul>
+ * <li>Each pool thread carries a nesting marker.
+ * A task submitted to the batch pool by a batch thread (typically sheets of a book being
+ * processed as a batch task) is handed over to the nested batch pool.
+ * A task submitted by a thread of the same pool otherwise (low, high or nested batch pool) is
+ * run directly by the submitting thread.
+ * Hence, nested calls to invokeAll cannot starve a pool and deadlock.</li>
+ * <li>When its queue is full, a task is run by the submitting thread as well (and counted as
+ * rejected), which slows down the submitter.</li>
+ * <li>Batch pools apply memory-based admission on worker side: before starting a task, a worker
+ * waits (for a limited time) while heap occupation is too high and another task of the pool is
+ * running. Submitters are never blocked and no garbage collection is forced.</li>
+ * </ul>
+ * See {@link #getMetrics()}.
  *
  * @author Hervé Bitteur
  */
@@ -68,8 +96,23 @@ public class OmrExecutors
 
     private static final Pool cachedLows = new CachedLows();
 
-    /** To handle all the pools as a whole. */
-    private static final Collection<Pool> allPools = Arrays.asList(cachedLows, lows, highs);
+    private static final Pool nestedBatches = new NestedBatches();
+
+    private static final Pool batches = new Batches();
+
+    private static final Pool forkJoins = new ForkJoins();
+
+    private static final Pool writers = new Writers();
+
+    /** To handle all the pools as a whole. (writers last, to store what others produced) */
+    private static final Collection<Pool> allPools = Arrays.asList(
+            batches,
+            nestedBatches,
+            forkJoins,
+            cachedLows,
+            lows,
+            highs,
+            writers);
 
     /** To prevent parallel creation of pools when closing. */
     private static volatile boolean creationAllowed = true;
@@ -90,6 +133,19 @@ public class OmrExecutors
     {
     }
 
+    //------------------//
+    // getBatchExecutor //
+    //------------------//
+    /**
+     * Return the (single) bounded pool for whole-book and whole-sheet processing.
+     *
+     * @return the batch pool, allocated if needed
+     */
+    public static ExecutorService getBatchExecutor ()
+    {
+        return batches.getPool();
+    }
+
     //----------------------//
     // getCachedLowExecutor //
     //----------------------//
@@ -103,6 +159,19 @@ public class OmrExecutors
         return cachedLows.getPool();
     }
 
+    //-----------------//
+    // getForkJoinPool //
+    //-----------------//
+    /**
+     * Return the (single) work-stealing pool, meant for {@link ForkedTasks}.
+     *
+     * @return the fork/join pool, allocated if needed
+     */
+    public static ForkJoinPool getForkJoinPool ()
+    {
+        return (ForkJoinPool) forkJoins.getPool();
+    }
+
     //-----------------//
     // getHighExecutor //
     //-----------------//
@@ -129,6 +198,61 @@ public class OmrExecutors
         return lows.getPool();
     }
 
+    //-------------------//
+    // getWriterExecutor //
+    //-------------------//
+    /**
+     * Return the (single) pool with one thread dedicated to background storing.
+     * <p>
+     * Being single-threaded, this pool processes its tasks in submission order.
+     *
+     * @return the writer pool, allocated if needed
+     */
+    public static ExecutorService getWriterExecutor ()
+    {
+        return writers.getPool();
+    }
+
+    //------------//
+    // getMetrics //
+    //------------//
+    /**
+     * Report the current metrics of all active pools.
+     *
+     * @return for each active pool: active threads, queue depth, completed, rejected, inlined and
+     *         delayed tasks
+     */
+    public static String getMetrics ()
+    {
+        final StringBuilder sb = new StringBuilder();
+
+        for (Pool pool : allPools) {
+            final ExecutorService service = pool.pool;
+
+            if (service instanceof ThreadPoolExecutor) {
+                final ThreadPoolExecutor tpe = (ThreadPoolExecutor) service;
+
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+
+                sb.append(pool.getName()).append('{').append("active:").append(
+                        tpe.getActiveCount()).append(" queued:").append(tpe.getQueue().size())
+                        .append(" completed:").append(tpe.getCompletedTaskCount());
+
+                if (tpe instanceof BoundedExecutor) {
+                    final BoundedExecutor be = (BoundedExecutor) tpe;
+                    sb.append(" rejected:").append(be.rejected.get()).append(" inlined:").append(
+                            be.inlined.get()).append(" delayed:").append(be.delayed.get());
+                }
+
+                sb.append('}');
+            }
+        }
+
+        return sb.toString();
+    }
+
     //-----------------//
     // getNumberOfCpus //
     //-----------------//
@@ -170,6 +294,10 @@ public class OmrExecutors
         // No creation of pools from now on!
         creationAllowed = false;
 
+        if (constants.printMetrics.isSet()) {
+            logger.info("Pools: {}", getMetrics());
+        }
+
         for (Pool pool : allPools) {
             if (pool.isActive()) {
                 if (!pool.close()) {
@@ -297,6 +425,219 @@ public class OmrExecutors
                 "seconds",
                 60,
                 "Time to wait for terminating tasks");
+
+        private final Constant.Boolean printMetrics = new Constant.Boolean(
+                false,
+                "Should we print out pools metrics on shutdown?");
+
+        private final Constant.Integer batchThreads = new Constant.Integer(
+                "threads",
+                0,
+                "Maximum number of threads in batch pool (0 for CPU count)");
+
+        private final Constant.Integer batchQueueSize = new Constant.Integer(
+                "tasks",
+                64,
+                "Maximum number of tasks waiting in batch pool queue");
+
+        private final Constant.Ratio admissionMemoryRatio = new Constant.Ratio(
+                0.85,
+                "Ratio of JVM max memory beyond which batch tasks wait (0 for no limit)");
+
+        private final Constant.Integer admissionMaxDelay = new Constant.Integer(
+                "seconds",
+                30,
+                "Maximum wait of a batch task for lack of memory");
+    }
+
+    //-----------------//
+    // BoundedExecutor //
+    //-----------------//
+    /**
+     * Thread pool with a fixed number of threads and a bounded queue.
+     * <p>
+     * To avoid deadlocks, tasks submitted from within the pool are handed over to the nested pool
+     * if any, otherwise they are run by the submitting thread.
+     * Tasks rejected for a full queue are run by the submitting thread as well.
+     */
+    private static class BoundedExecutor
+            extends ThreadPoolExecutor
+    {
+
+        /** Nesting marker: pool the current thread belongs to, if any. */
+        private static final ThreadLocal<BoundedExecutor> owner = new ThreadLocal<>();
+
+        /** Pool for tasks submitted from within this pool, if any. */
+        private final BoundedExecutor nested;
+
+        /** Should workers check for memory before starting a task?. */
+        private final boolean memoryAdmission;
+
+        /** Number of tasks currently running. */
+        private final AtomicInteger running = new AtomicInteger();
+
+        /** Number of tasks run by submitter because of full queue. */
+        final AtomicInteger rejected = new AtomicInteger();
+
+        /** Number of nested tasks run by submitter because of saturated pool. */
+        final AtomicInteger inlined = new AtomicInteger();
+
+        /** Number of tasks delayed for lack of memory. */
+        final AtomicInteger delayed = new AtomicInteger();
+
+        BoundedExecutor (final String name,
+                         int threads,
+                         int queueSize,
+                         int priority,
+                         boolean memoryAdmission,
+                         BoundedExecutor nested)
+        {
+            super(
+                    threads,
+                    threads,
+                    0L,
+                    TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(queueSize),
+                    new Factory(name, priority, 0));
+            this.memoryAdmission = memoryAdmission;
+            this.nested = nested;
+            setRejectedExecutionHandler(new RejectedExecutionHandler()
+            {
+                @Override
+                public void rejectedExecution (Runnable r,
+                                               ThreadPoolExecutor executor)
+                {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Pool " + name + " shut down");
+                    }
+
+                    rejected.incrementAndGet();
+                    r.run();
+                }
+            });
+        }
+
+        @Override
+        public void execute (Runnable command)
+        {
+            final BoundedExecutor current = owner.get();
+
+            if (current != null) {
+                if ((current == this) && (nested != null)) {
+                    nested.execute(command);
+
+                    return;
+                }
+
+                if ((current == this) || ((nested != null) && (current == nested))) {
+                    // Nested submission, run by the submitting thread
+                    inlined.incrementAndGet();
+                    command.run();
+
+                    return;
+                }
+            }
+
+            super.execute(command);
+        }
+
+        @Override
+        protected void afterExecute (Runnable r,
+                                     Throwable t)
+        {
+            super.afterExecute(r, t);
+
+            synchronized (running) {
+                running.decrementAndGet();
+                running.notifyAll();
+            }
+        }
+
+        @Override
+        protected void beforeExecute (Thread t,
+                                      Runnable r)
+        {
+            owner.set(this);
+
+            if (memoryAdmission) {
+                admit();
+            }
+
+            running.incrementAndGet();
+            super.beforeExecute(t, r);
+        }
+
+        /**
+         * Make the current worker wait, while memory is short and another task is running.
+         * <p>
+         * The worker is woken up each time a running task completes, and waits no longer than
+         * admissionMaxDelay.
+         */
+        private void admit ()
+        {
+            final double ratio = constants.admissionMemoryRatio.getValue();
+
+            if (ratio <= 0) {
+                return;
+            }
+
+            final long limit = (long) (Runtime.getRuntime().maxMemory() * ratio);
+
+            if (Memory.occupied() <= limit) {
+                return;
+            }
+
+            final long end = System.currentTimeMillis()
+                             + (1000L * constants.admissionMaxDelay.getValue());
+
+            synchronized (running) {
+                if (running.get() == 0) {
+                    return;
+                }
+
+                delayed.incrementAndGet();
+
+                try {
+                    long delay;
+
+                    while ((Memory.occupied() > limit) && (running.get() > 0)
+                                   && ((delay = end - System.currentTimeMillis()) > 0)) {
+                        running.wait(delay);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    //---------//
+    // Batches //
+    //---------//
+    /** Bounded pool with low priority, for books and sheets. */
+    private static class Batches
+            extends Pool
+    {
+
+        @Override
+        public String getName ()
+        {
+            return "batch";
+        }
+
+        @Override
+        protected ExecutorService createPool ()
+        {
+            final int threads = constants.batchThreads.getValue();
+
+            return new BoundedExecutor(
+                    getName(),
+                    defaultParallelism.getValue() ? ((threads > 0) ? threads : cpuCount) : 1,
+                    constants.batchQueueSize.getValue(),
+                    Thread.MIN_PRIORITY,
+                    true,
+                    (BoundedExecutor) nestedBatches.getPool());
+        }
     }
 
     //------------//
@@ -413,6 +754,45 @@ public class OmrExecutors
         }
     }
 
+    //-----------//
+    // ForkJoins //
+    //-----------//
+    /** Work-stealing pool with low priority. */
+    private static class ForkJoins
+            extends Pool
+    {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+        @Override
+        public String getName ()
+        {
+            return "forkJoin";
+        }
+
+        @Override
+        protected ExecutorService createPool ()
+        {
+            return new ForkJoinPool(
+                    defaultParallelism.getValue() ? cpuCount : 1,
+                    new ForkJoinPool.ForkJoinWorkerThreadFactory()
+            {
+                @Override
+                public ForkJoinWorkerThread newThread (ForkJoinPool pool)
+                {
+                    final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory
+                            .newThread(pool);
+                    t.setName(getName() + "-thread-" + threadNumber.incrementAndGet());
+                    t.setPriority(Thread.MIN_PRIORITY);
+
+                    return t;
+                }
+            },
+                    null,
+                    false);
+        }
+    }
+
     //-------//
     // Highs //
     //-------//
@@ -430,9 +810,13 @@ public class OmrExecutors
         @Override
         protected ExecutorService createPool ()
         {
-            return Executors.newFixedThreadPool(
+            return new BoundedExecutor(
+                    getName(),
                     defaultParallelism.getValue() ? (cpuCount + 1) : 1,
-                    new Factory(getName(), Thread.NORM_PRIORITY, 0));
+                    Integer.MAX_VALUE,
+                    Thread.NORM_PRIORITY,
+                    false,
+                    null);
         }
     }
 
@@ -453,9 +837,64 @@ public class OmrExecutors
         @Override
         protected ExecutorService createPool ()
         {
-            return Executors.newFixedThreadPool(
+            return new BoundedExecutor(
+                    getName(),
                     defaultParallelism.getValue() ? (cpuCount + 1) : 1,
-                    new Factory(getName(), Thread.MIN_PRIORITY, 0));
+                    Integer.MAX_VALUE,
+                    Thread.MIN_PRIORITY,
+                    false,
+                    null);
+        }
+    }
+
+    //---------------//
+    // NestedBatches //
+    //---------------//
+    /** Bounded pool with low priority, for tasks submitted from within the batch pool. */
+    private static class NestedBatches
+            extends Pool
+    {
+
+        @Override
+        public String getName ()
+        {
+            return "nestedBatch";
+        }
+
+        @Override
+        protected ExecutorService createPool ()
+        {
+            final int threads = constants.batchThreads.getValue();
+
+            return new BoundedExecutor(
+                    getName(),
+                    defaultParallelism.getValue() ? ((threads > 0) ? threads : cpuCount) : 1,
+                    constants.batchQueueSize.getValue(),
+                    Thread.MIN_PRIORITY,
+                    true,
+                    null);
+        }
+    }
+
+    //---------//
+    // Writers //
+    //---------//
+    /** Single-thread pool for background storing. */
+    private static class Writers
+            extends Pool
+    {
+
+        @Override
+        public String getName ()
+        {
+            return "writer";
+        }
+
+        @Override
+        protected ExecutorService createPool ()
+        {
+            return Executors.newSingleThreadExecutor(
+                    new Factory(getName(), Thread.NORM_PRIORITY, 0));
         }
     }
 }
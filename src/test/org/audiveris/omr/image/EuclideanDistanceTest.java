@@ -0,0 +1,178 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                           E u c l i d e a n D i s t a n c e T e s t                            //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.image;
+
+import ij.process.ByteProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+
+/**
+ * Compare the Euclidean distance transform with a brute force computation and with the
+ * chamfer distance transform.
+ *
+ * @author Hervé Bitteur
+ */
+public class EuclideanDistanceTest
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(EuclideanDistanceTest.class);
+
+    private final Random random = new Random(456);
+
+    /**
+     * Creates a new EuclideanDistanceTest object.
+     */
+    public EuclideanDistanceTest ()
+    {
+    }
+
+    /**
+     * Euclidean transform must be exact (up to rounding).
+     */
+    @Test
+    public void testExact ()
+    {
+        ByteProcessor input = createImage(73, 41, 0.02);
+        DistanceTable table = new EuclideanDistance().computeToFore(input);
+
+        for (int y = 0; y < input.getHeight(); y++) {
+            for (int x = 0; x < input.getWidth(); x++) {
+                double d = bruteForce(input, x, y, 0, input.getHeight() - 1);
+                int expected = (int) Math.rint(EuclideanDistance.DEFAULT_NORMALIZER * d);
+                assertEquals(expected, table.getValue(x, y));
+            }
+        }
+    }
+
+    /**
+     * Euclidean transform restricted to a band.
+     */
+    @Test
+    public void testBand ()
+    {
+        ByteProcessor input = createImage(50, 60, 0.01);
+        DistanceTable table = new DistanceTable.Short(50, 60, 3);
+        table.fill(ChamferDistance.VALUE_UNKNOWN);
+        new EuclideanDistance().computeToFore(input, table, 20, 39);
+
+        for (int y = 0; y < 60; y++) {
+            for (int x = 0; x < 50; x++) {
+                if ((y < 20) || (y > 39)) {
+                    assertEquals(ChamferDistance.VALUE_UNKNOWN, table.getValue(x, y));
+                } else {
+                    double d = bruteForce(input, x, y, 20, 39);
+                    int expected = (d == Double.MAX_VALUE) ? ChamferDistance.VALUE_UNKNOWN
+                            : (int) Math.rint(3 * d);
+                    assertEquals(expected, table.getValue(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Empty image leads to unknown distances, as with chamfer.
+     */
+    @Test
+    public void testEmpty ()
+    {
+        ByteProcessor input = createImage(20, 10, 0);
+        DistanceTable table = new EuclideanDistance().computeToFore(input);
+
+        for (int i = 0; i < (20 * 10); i++) {
+            assertEquals(ChamferDistance.VALUE_UNKNOWN, table.getValue(i));
+        }
+    }
+
+    /**
+     * Compare with chamfer: same foreground, and chamfer distances within the known error of
+     * the 3-4 mask (about 8%) around exact distances.
+     */
+    @Test
+    public void testVersusChamfer ()
+    {
+        final int width = 80;
+        final int height = 60;
+        ByteProcessor input = createImage(width, height, 0.01);
+        DistanceTable chamfer = new ChamferDistance.Short().computeToFore(input);
+        DistanceTable euclid = new EuclideanDistance().computeToFore(input);
+        double maxRatio = 0;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int c = chamfer.getValue(x, y);
+                int e = euclid.getValue(x, y);
+                assertEquals(c == 0, e == 0);
+
+                if (e > 0) {
+                    double d = bruteForce(input, x, y, 0, height - 1);
+                    double ratio = Math.abs((c / (double) chamfer.getNormalizer()) - d) / d;
+                    maxRatio = Math.max(maxRatio, ratio);
+                }
+            }
+        }
+
+        logger.debug("max relative gap of chamfer: {}", maxRatio);
+        assertTrue(maxRatio < 0.09);
+    }
+
+    private double bruteForce (ByteProcessor input,
+                               int x,
+                               int y,
+                               int yMin,
+                               int yMax)
+    {
+        double best = Double.MAX_VALUE;
+
+        for (int j = yMin; j <= yMax; j++) {
+            for (int i = 0; i < input.getWidth(); i++) {
+                if (input.get(i, j) == 0) {
+                    best = Math.min(best, Math.hypot(i - x, j - y));
+                }
+            }
+        }
+
+        return best;
+    }
+
+    private ByteProcessor createImage (int width,
+                                       int height,
+                                       double density)
+    {
+        ByteProcessor img = new ByteProcessor(width, height);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.set(x, y, (random.nextDouble() < density) ? 0 : 255);
+            }
+        }
+
+        return img;
+    }
+}
@@ -0,0 +1,181 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                             P a c k e d D i s t a n c e s T e s t                              //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.image;
+
+import org.audiveris.omr.glyph.Shape;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Check that packed template matching gives the same results as the classic one.
+ *
+ * @author Hervé Bitteur
+ */
+public class PackedDistancesTest
+{
+
+    private static final double EPSILON = 1e-9;
+
+    private final Random random = new Random(123);
+
+    /**
+     * Creates a new PackedDistancesTest object.
+     */
+    public PackedDistancesTest ()
+    {
+    }
+
+    /**
+     * Test of window extraction, against single location values.
+     */
+    @Test
+    public void testWindow ()
+    {
+        DistanceTable table = createTable(150, 20);
+        PackedDistances packed = new PackedDistances(table);
+
+        for (int y = -2; y < 22; y++) {
+            for (int x = -70; x < 160; x += 3) {
+                long fore = packed.getFore(x, y, 64);
+                long known = packed.getKnown(x, y, 64);
+
+                for (int i = 0; i < 64; i++) {
+                    int nx = x + i;
+                    boolean inside = (nx >= 0) && (nx < 150) && (y >= 0) && (y < 20);
+                    int val = inside ? table.getValue(nx, y) : ChamferDistance.VALUE_UNKNOWN;
+
+                    assertEquals(val == 0, ((fore >>> i) & 1) != 0);
+                    assertEquals(val != ChamferDistance.VALUE_UNKNOWN, ((known >>> i) & 1) != 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of evaluate and evaluateHole methods, packed vs classic.
+     */
+    @Test
+    public void testEvaluate ()
+    {
+        DistanceTable table = createTable(200, 60);
+        PackedDistances packed = new PackedDistances(table);
+
+        for (int width : new int[]{5, 17, 63, 64, 65}) {
+            Template template = createTemplate(width, 15);
+
+            for (int y = -10; y < 70; y += 7) {
+                for (int x = -width; x < 210; x += 5) {
+                    assertEquals(
+                            template.evaluate(x, y, null, table),
+                            template.evaluate(x, y, null, packed),
+                            EPSILON);
+                    assertEquals(
+                            template.evaluateHole(x, y, null, table),
+                            template.evaluateHole(x, y, null, packed),
+                            EPSILON);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of bounded evaluations: an evaluation is abandoned only if it would exceed its bound,
+     * otherwise it gives the exact distance.
+     */
+    @Test
+    public void testEarlyTermination ()
+    {
+        DistanceTable table = createTable(120, 40);
+        PackedDistances packed = new PackedDistances(table);
+
+        for (int width : new int[]{9, 40, 70}) {
+            Template template = createTemplate(width, 12);
+
+            for (double bound : new double[]{0.1, 0.4, 0.6}) {
+                for (int y = -5; y < 45; y += 3) {
+                    for (int x = -width; x < 125; x += 4) {
+                        double exact = template.evaluate(x, y, null, table);
+                        double classic = template.evaluate(x, y, null, table, bound);
+                        double fast = template.evaluate(x, y, null, packed, bound);
+
+                        for (double dist : new double[]{classic, fast}) {
+                            if (dist == Template.ABANDONED) {
+                                assertTrue(exact > bound);
+                            } else {
+                                assertEquals(exact, dist, EPSILON);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private DistanceTable createTable (int width,
+                                       int height)
+    {
+        DistanceTable table = new DistanceTable.Integer(width, height, 3);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = random.nextInt(10);
+                int val = (r < 4) ? 0 : ((r < 5) ? ChamferDistance.VALUE_UNKNOWN : r);
+                table.setValue(x, y, val);
+            }
+        }
+
+        return table;
+    }
+
+    private Template createTemplate (int width,
+                                     int height)
+    {
+        List<PixelDistance> keyPoints = new ArrayList<>();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = random.nextInt(4);
+
+                if (r > 0) {
+                    keyPoints.add(new PixelDistance(x, y, r - 2));
+                }
+            }
+        }
+
+        return new Template(
+                Shape.NOTEHEAD_BLACK,
+                64,
+                null,
+                width,
+                height,
+                keyPoints,
+                new Rectangle(0, 0, width, height));
+    }
+}
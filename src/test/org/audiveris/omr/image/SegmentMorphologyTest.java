@@ -0,0 +1,177 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                           S e g m e n t M o r p h o l o g y T e s t                            //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.image;
+
+import ij.process.ByteProcessor;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compare segment-based morphology with a per-pixel computation over the structure element,
+ * using the same conventions as legacy {@link MorphoProcessor} code.
+ *
+ * @author Hervé Bitteur
+ */
+public class SegmentMorphologyTest
+{
+
+    private final Random random = new Random(789);
+
+    /**
+     * Creates a new SegmentMorphologyTest object.
+     */
+    public SegmentMorphologyTest ()
+    {
+    }
+
+    /**
+     * Dilation, erosion, closing and opening, for various structure elements and image sizes.
+     */
+    @Test
+    public void testIdentical ()
+    {
+        for (StructureElement se : createElements()) {
+            for (int[] dims : new int[][]{{37, 23}, {5, 4}, {1, 9}, {64, 50}}) {
+                ByteProcessor img = createImage(dims[0], dims[1]);
+                byte[] pixels = (byte[]) img.getPixels();
+                SegmentMorphology morpho = new SegmentMorphology(se);
+
+                ByteProcessor dilated = copy(img);
+                morpho.dilate(dilated);
+                assertArrayEquals(reference(se, img, true), (byte[]) dilated.getPixels());
+
+                ByteProcessor eroded = copy(img);
+                morpho.erode(eroded);
+                assertArrayEquals(reference(se, img, false), (byte[]) eroded.getPixels());
+
+                ByteProcessor closed = copy(img);
+                morpho.close(closed);
+                ByteProcessor expClosed = copy(img);
+                setPixels(expClosed, reference(se, expClosed, true));
+                setPixels(expClosed, reference(se, expClosed, false));
+                assertArrayEquals((byte[]) expClosed.getPixels(), (byte[]) closed.getPixels());
+
+                ByteProcessor opened = copy(img);
+                morpho.open(opened);
+                ByteProcessor expOpened = copy(img);
+                setPixels(expOpened, reference(se, expOpened, false));
+                setPixels(expOpened, reference(se, expOpened, true));
+                assertArrayEquals((byte[]) expOpened.getPixels(), (byte[]) opened.getPixels());
+
+                // Input must be left unchanged by copies
+                assertArrayEquals(pixels, (byte[]) img.getPixels());
+            }
+        }
+    }
+
+    private ByteProcessor copy (ByteProcessor img)
+    {
+        ByteProcessor dup = new ByteProcessor(img.getWidth(), img.getHeight());
+        setPixels(dup, (byte[]) img.getPixels());
+
+        return dup;
+    }
+
+    private List<StructureElement> createElements ()
+    {
+        List<StructureElement> list = new ArrayList<>();
+
+        for (float radius : new float[]{0.5f, 1.5f, 2.5f, 3f, 6f}) {
+            list.add(new StructureElement(MorphoConstants.CIRCLE, 1, radius, new int[]{0, 0}));
+        }
+
+        list.add(new StructureElement(MorphoConstants.CIRCLE, 1, 5f, new int[]{1, 0}));
+        list.add(new StructureElement(MorphoConstants.HLINE, 1, 4f, new int[]{0, 0}));
+        list.add(new StructureElement(MorphoConstants.VLINE, 1, 3f, new int[]{0, 0}));
+        list.add(new StructureElement(MorphoConstants.DIAMOND, 1, 3f, new int[]{0, 0}));
+
+        // Non-convex element, with several segments per row
+        list.add(
+                new StructureElement(
+                        new int[]{
+                            255, 0, 255, 0, 255, //
+                            0, 0, 0, 0, 0, //
+                            255, 255, 0, 255, 0, //
+                            0, 0, 0, 0, 255},
+                        5));
+
+        return list;
+    }
+
+    private ByteProcessor createImage (int width,
+                                       int height)
+    {
+        ByteProcessor img = new ByteProcessor(width, height);
+        byte[] pixels = (byte[]) img.getPixels();
+
+        for (int i = 0; i < pixels.length; i++) {
+            int r = random.nextInt(3);
+            pixels[i] = (byte) ((r == 0) ? random.nextInt(256) : ((r == 1) ? 0 : 255));
+        }
+
+        return img;
+    }
+
+    /**
+     * Per-pixel dilation or erosion, with pixels out of image considered as 0 for dilation
+     * and as 255 for erosion.
+     */
+    private byte[] reference (StructureElement se,
+                              ByteProcessor img,
+                              boolean dilation)
+    {
+        final int width = img.getWidth();
+        final int height = img.getHeight();
+        final byte[] pixels = (byte[]) img.getPixels();
+        final byte[] out = new byte[pixels.length];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int val = dilation ? 0 : 255;
+
+                for (int[] v : se.getVect()) {
+                    int ny = y + v[0];
+                    int nx = x + v[1];
+                    boolean inside = (nx >= 0) && (nx < width) && (ny >= 0) && (ny < height);
+                    int k = inside ? (pixels[(ny * width) + nx] & 0xFF) : val;
+                    val = dilation ? Math.max(val, k) : Math.min(val, k);
+                }
+
+                out[(y * width) + x] = (byte) val;
+            }
+        }
+
+        return out;
+    }
+
+    private void setPixels (ByteProcessor img,
+                            byte[] pixels)
+    {
+        System.arraycopy(pixels, 0, (byte[]) img.getPixels(), 0, pixels.length);
+    }
+}
@@ -0,0 +1,85 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                             I n t e g e r F u n c t i o n T e s t                              //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.math;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Unit test for IntegerFunction merging.
+ *
+ * @author Hervé Bitteur
+ */
+public class IntegerFunctionTest
+{
+
+    /**
+     * Creates a new IntegerFunctionTest object.
+     */
+    public IntegerFunctionTest ()
+    {
+    }
+
+    /**
+     * Partial functions merged must equal the function populated at once.
+     */
+    @Test
+    public void testInclude ()
+    {
+        Random random = new Random(17);
+        IntegerFunction whole = new IntegerFunction(3, 40);
+        IntegerFunction merged = new IntegerFunction(3, 40);
+        IntegerFunction[] parts = new IntegerFunction[4];
+
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new IntegerFunction(3, 40);
+        }
+
+        for (int n = 0; n < 1000; n++) {
+            int x = 3 + random.nextInt(38);
+            whole.addValue(x, 1);
+            parts[n % parts.length].addValue(x, 1);
+        }
+
+        for (IntegerFunction part : parts) {
+            merged.include(part);
+        }
+
+        for (int x = 3; x <= 40; x++) {
+            assertEquals(whole.getValue(x), merged.getValue(x));
+        }
+
+        assertEquals(1000, merged.getArea());
+    }
+
+    /**
+     * Functions on different domains cannot be merged.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncludeIncompatible ()
+    {
+        new IntegerFunction(0, 10).include(new IntegerFunction(0, 11));
+    }
+}
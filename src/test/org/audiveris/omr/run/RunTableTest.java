@@ -32,6 +32,18 @@ import org.junit.Test;
 
 import java.awt.Dimension;
 import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
  *
@@ -406,6 +418,55 @@ public class RunTableTest
         removed.dumpSequences();
     }
 
+    /**
+     * Test of writeBinary and readBinary methods, of class RunTable.
+     */
+    @Test
+    public void testReadWriteBinary ()
+            throws IOException
+    {
+        System.out.println("\n+++ readWriteBinary");
+
+        for (RunTable instance : new RunTable[]{
+            createHorizontalInstance(), createVerticalInstance()}) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            instance.writeBinary(new DataOutputStream(bos));
+
+            ByteBuffer buffer = ByteBuffer.wrap(bos.toByteArray());
+            RunTable result = RunTable.readBinary(buffer);
+            assertEquals(instance, result);
+            assertEquals(instance.getTotalRunCount(), result.getTotalRunCount());
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    /**
+     * Test of writeXml / readXml methods, of class RunTable.
+     */
+    @Test
+    public void testReadWriteXml ()
+            throws XMLStreamException
+    {
+        System.out.println("\n+++ readWriteXml");
+
+        for (RunTable instance : new RunTable[]{
+            createHorizontalInstance(), createVerticalInstance()}) {
+            StringWriter sw = new StringWriter();
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(sw);
+            instance.writeXml(writer);
+            writer.close();
+            System.out.println(sw);
+
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(
+                    new StringReader(sw.toString()));
+            reader.nextTag();
+
+            RunTable result = RunTable.readXml(reader);
+            assertEquals(instance, result);
+            assertEquals(instance.getTotalRunCount(), result.getTotalRunCount());
+        }
+    }
+
     /**
      * Test of removeRun method, of class RunTable.
      */
@@ -0,0 +1,99 @@
+//------------------------------------------------------------------------------------------------//
+//                                                                                                //
+//                              S t a f f P r o j e c t o r T e s t                               //
+//                                                                                                //
+//------------------------------------------------------------------------------------------------//
+// <editor-fold defaultstate="collapsed" desc="hdr">
+//
+//  Copyright © Audiveris 2018. All rights reserved.
+//
+//  This program is free software: you can redistribute it and/or modify it under the terms of the
+//  GNU Affero General Public License as published by the Free Software Foundation, either version
+//  3 of the License, or (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+//  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//  See the GNU Affero General Public License for more details.
+//
+//  You should have received a copy of the GNU Affero General Public License along with this
+//  program.  If not, see <http://www.gnu.org/licenses/>.
+//------------------------------------------------------------------------------------------------//
+// </editor-fold>
+package org.audiveris.omr.sheet.grid;
+
+import ij.process.ByteProcessor;
+
+import static org.audiveris.omr.run.Orientation.*;
+import org.audiveris.omr.run.RunTable;
+import org.audiveris.omr.run.RunTableFactory;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Check that staff projection is the same, whether computed from vertical runs or from
+ * pixels, notably for staves whose lines go beyond image top or bottom.
+ *
+ * @author Hervé Bitteur
+ */
+public class StaffProjectorTest
+{
+    //~ Static fields/initializers -----------------------------------------------------------------
+
+    private static final int WIDTH = 50;
+
+    private static final int HEIGHT = 40;
+
+    //~ Methods ------------------------------------------------------------------------------------
+    /**
+     * Compare runCount and pixelCount, for every column, on ordinate ranges that start or stop
+     * around image top and bottom edges.
+     */
+    @Test
+    public void testRunCountVersusPixelCount ()
+    {
+        final ByteProcessor source = createSource();
+        final RunTable runs = new RunTableFactory(VERTICAL).createTable(source);
+
+        for (int x = 0; x < WIDTH; x++) {
+            for (int yMin = -3; yMin <= 3; yMin++) {
+                for (int yMax = HEIGHT - 4; yMax <= (HEIGHT + 2); yMax++) {
+                    assertEquals(
+                            "x:" + x + " yMin:" + yMin + " yMax:" + yMax,
+                            StaffProjector.pixelCount(source, x, yMin, yMax),
+                            StaffProjector.runCount(runs, x, yMin, yMax));
+                }
+            }
+
+            // Short ranges, entirely near top and near bottom
+            for (int y = -3; y <= 3; y++) {
+                assertEquals(
+                        StaffProjector.pixelCount(source, x, y, y + 4),
+                        StaffProjector.runCount(runs, x, y, y + 4));
+                assertEquals(
+                        StaffProjector.pixelCount(source, x, HEIGHT - 5 + y, HEIGHT - 1 + y),
+                        StaffProjector.runCount(runs, x, HEIGHT - 5 + y, HEIGHT - 1 + y));
+            }
+        }
+    }
+
+    /**
+     * Build a binary source, with foreground pixels touching top and bottom rows.
+     */
+    private ByteProcessor createSource ()
+    {
+        final ByteProcessor source = new ByteProcessor(WIDTH, HEIGHT);
+        final Random random = new Random(123);
+
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                final boolean edge = (y < 3) || (y >= (HEIGHT - 3));
+                final boolean fore = edge ? ((x % 3) != 0) : random.nextBoolean();
+                source.set(x, y, fore ? 0 : 255);
+            }
+        }
+
+        return source;
+    }
+}